@@ -1,5 +1,8 @@
 package org.theko.logger;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -7,13 +10,21 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+import org.theko.logger.out.LogJournal;
+
 /**
  * AsyncLogger extends DefaultLogger to handle logging asynchronously.
  * Log entries are created synchronously and added to a queue for asynchronous processing.
+ * The processor drains the queue in batches, so outputs can write several entries at once.
+ * With a {@link LogJournal}, queued entries survive a crash of the process and are replayed on the next start.
  */
 public class AsyncLogger extends DefaultLogger {
+    // Maximum number of queued entries handed to the outputs at once
+    private static final int MAX_BATCH_SIZE = 256;
+
     private final BlockingQueue<LogEntry> logQueue;
     private final ExecutorService executor;
+    private volatile LogJournal journal;
 
     /**
      * Consumer that will be triggered whenever a log entry is processed.
@@ -47,15 +58,13 @@ public class AsyncLogger extends DefaultLogger {
      */
     private void startLogProcessor() {
         executor.submit(() -> {
+            List<LogEntry> batch = new ArrayList<>(MAX_BATCH_SIZE);
             try {
                 while (!Thread.currentThread().isInterrupted()) {
-                    LogEntry log = logQueue.take(); // Block until a log is available
-                    if (loggerOutput != null) {
-                        loggerOutput.processToOut(log);
-                    }
-                    if (onLogProcessed != null) {
-                        onLogProcessed.accept(log);
-                    }
+                    batch.add(logQueue.take()); // Block until a log is available
+                    logQueue.drainTo(batch, MAX_BATCH_SIZE - 1); // Then take whatever else is queued
+                    processBatch(batch);
+                    batch.clear();
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt(); // Handle graceful shutdown
@@ -63,6 +72,30 @@ public class AsyncLogger extends DefaultLogger {
         });
     }
 
+    /**
+     * Outputs a batch of drained log entries and notifies the consumer for each of them.
+     *
+     * @param batch The log entries, in queue order.
+     */
+    private void processBatch(List<LogEntry> batch) {
+        LoggerOutput loggerOutput = this.loggerOutput;
+        LogJournal journal = this.journal;
+        if (loggerOutput != null) {
+            loggerOutput.processBatch(batch);
+            if (journal != null) {
+                loggerOutput.flush(); // Entries still in an output's buffer would be lost in a crash
+            }
+        }
+        if (journal != null) {
+            journal.commit(batch.size());
+        }
+        if (onLogProcessed != null) {
+            for (LogEntry log : batch) {
+                onLogProcessed.accept(log);
+            }
+        }
+    }
+
     /**
      * Logs a message at a specified log level asynchronously.
      *
@@ -73,9 +106,7 @@ public class AsyncLogger extends DefaultLogger {
      */
     @Override
     public LogEntry log(LogLevel level, String message, int stackTraceOffset) {
-        LogEntry log = createLogEntry(level, message, stackTraceOffset);
-        logQueue.offer(log); // Add log to the processing queue
-        return log;
+        return log(level, message, EMPTY_TAGS, stackTraceOffset + 1);
     }
 
     /**
@@ -89,8 +120,17 @@ public class AsyncLogger extends DefaultLogger {
      */
     @Override
     public LogEntry log(LogLevel level, String message, String[] tags, int stackTraceOffset) {
-        LogEntry log = createLogEntry(level, message, tags, stackTraceOffset+1);
-        logQueue.offer(log); // Add log to the processing queue
+        LogEntry log = createLogEntry(level, message, tags, stackTraceOffset);
+        LogJournal journal = this.journal;
+        if (journal == null) {
+            logQueue.offer(log); // Add log to the processing queue
+            return log;
+        }
+        // Records are committed by count, so the journal and the queue must see the same order
+        synchronized (journal) {
+            journal.append(log);
+            logQueue.offer(log);
+        }
         return log;
     }
 
@@ -100,14 +140,10 @@ public class AsyncLogger extends DefaultLogger {
      * @throws InterruptedException If the thread is interrupted while waiting.
      */
     public void drain() throws InterruptedException {
-        while (!logQueue.isEmpty()) {
-            LogEntry log = logQueue.take(); // Block until a log is available
-            if (loggerOutput != null) {
-                loggerOutput.processToOut(log);
-            }
-            if (onLogProcessed != null) {
-                onLogProcessed.accept(log);
-            }
+        List<LogEntry> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (logQueue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+            processBatch(batch);
+            batch.clear();
         }
     }
 
@@ -124,6 +160,31 @@ public class AsyncLogger extends DefaultLogger {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        LoggerOutput loggerOutput = this.loggerOutput;
+        if (loggerOutput != null) {
+            loggerOutput.flushRepeated(); // Summarize the repeats the processor held back
+        }
+        // Entries still queued stay uncommitted and are replayed on the next start
+        LogJournal journal = this.journal;
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace(); // Log the error to standard output
+            }
+        }
+    }
+
+    /**
+     * Sets the journal that queued entries are appended to before they are queued.
+     * It must be set before anything is logged, as the processor commits records by count.
+     * Outputs are flushed before each commit, so buffered and compressed outputs write smaller chunks.
+     * The journal is closed on {@link #shutdown()}.
+     *
+     * @param journal The journal, or null to queue entries in memory only.
+     */
+    public void setJournal(LogJournal journal) {
+        this.journal = journal;
     }
 
     /**
@@ -0,0 +1,197 @@
+package org.theko.logger;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable map of context values, such as a request or tenant id, carried by log entries.
+ * <p>
+ * Changing a map returns a new one and leaves the old one as it was, so taking a snapshot of a context
+ * is copying a reference: entries keep the context they were logged with, however it changes later.
+ * Contexts hold a few keys, so they are kept as sorted arrays copied on change rather than as a tree.
+ */
+public final class ContextMap implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String[] NONE = new String[0];
+
+    /** The map without values. */
+    public static final ContextMap EMPTY = new ContextMap(NONE, NONE);
+
+    private final String[] keys; // Sorted
+    private final String[] values;
+
+    private ContextMap(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Returns a map with the given values.
+     *
+     * @param values The values by key.
+     * @return The map.
+     */
+    public static ContextMap of(Map<String, String> values) {
+        ContextMap map = EMPTY;
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            map = map.with(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key The key.
+     * @return The value, or null if the key has none.
+     */
+    public String get(String key) {
+        int index = Arrays.binarySearch(keys, key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    /**
+     * Returns a map with a value set.
+     *
+     * @param key   The key.
+     * @param value The value, or null to remove the key.
+     * @return The changed map; this one is left as it was.
+     */
+    public ContextMap with(String key, String value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Context key cannot be null.");
+        }
+        if (value == null) {
+            return without(key);
+        }
+        int index = Arrays.binarySearch(keys, key);
+        if (index >= 0) {
+            if (value.equals(values[index])) {
+                return this;
+            }
+            String[] newValues = values.clone();
+            newValues[index] = value;
+            return new ContextMap(keys, newValues);
+        }
+        int insert = -index - 1;
+        String[] newKeys = new String[keys.length + 1];
+        String[] newValues = new String[keys.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, insert);
+        System.arraycopy(values, 0, newValues, 0, insert);
+        newKeys[insert] = key;
+        newValues[insert] = value;
+        System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+        System.arraycopy(values, insert, newValues, insert + 1, keys.length - insert);
+        return new ContextMap(newKeys, newValues);
+    }
+
+    /**
+     * Returns a map without a key.
+     *
+     * @param key The key.
+     * @return The changed map; this one is left as it was.
+     */
+    public ContextMap without(String key) {
+        int index = key != null ? Arrays.binarySearch(keys, key) : -1;
+        if (index < 0) {
+            return this;
+        }
+        if (keys.length == 1) {
+            return EMPTY;
+        }
+        String[] newKeys = new String[keys.length - 1];
+        String[] newValues = new String[keys.length - 1];
+        System.arraycopy(keys, 0, newKeys, 0, index);
+        System.arraycopy(values, 0, newValues, 0, index);
+        System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+        System.arraycopy(values, index + 1, newValues, index, keys.length - index - 1);
+        return new ContextMap(newKeys, newValues);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * Returns a key by position, so encoders can walk the map without allocating.
+     *
+     * @param index The position, in key order.
+     * @return The key.
+     */
+    public String keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Returns a value by position.
+     *
+     * @param index The position, in key order.
+     * @return The value of the key at that position.
+     */
+    public String valueAt(int index) {
+        return values[index];
+    }
+
+    /**
+     * Hands every key and value to the consumer, in key order.
+     *
+     * @param consumer Receives the keys and values.
+     */
+    public void forEach(BiConsumer<String, String> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            consumer.accept(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Returns the values as a map, in key order.
+     *
+     * @return An unmodifiable map.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        forEach(map::put);
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ContextMap)) {
+            return false;
+        }
+        ContextMap other = (ContextMap) o;
+        return Arrays.equals(keys, other.keys) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(keys) + Arrays.hashCode(values);
+    }
+
+    /**
+     * Returns the values as "key=value" pairs separated by ", ", as the "{ctx}" placeholder writes them.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(keys[i]).append('=').append(values[i]);
+        }
+        return builder.toString();
+    }
+
+    private Object readResolve() {
+        return keys.length == 0 ? EMPTY : this;
+    }
+}
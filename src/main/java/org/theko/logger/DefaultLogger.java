@@ -9,11 +9,9 @@ import java.util.function.Consumer;
  * Logs can also be processed by a consumer function once created.
  */
 public class DefaultLogger extends ExtendedLogger {
-    // Logger output handler to display logs
-    protected LoggerOutput loggerOutput;
+    // Logger output handler to display logs, swapped as a whole when the configuration is reloaded
+    protected volatile LoggerOutput loggerOutput;
 
-    private static final String[] EMPTY_TAGS = new String[]{""};
-    
     // A consumer that can handle the log entry after it's created
     protected Consumer<LogEntry> onLogCreated;
 
@@ -48,6 +46,7 @@ public class DefaultLogger extends ExtendedLogger {
         LogEntry log = super.log(level, message, tags, stackTraceOffset + 1);
         
         // If loggerOutput is set, process the log entry to output
+        LoggerOutput loggerOutput = this.loggerOutput;
         if (loggerOutput != null) {
             loggerOutput.processToOut(log);
         }
@@ -1,7 +1,5 @@
 package org.theko.logger;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import org.json.JSONArray;
@@ -21,6 +19,9 @@ public class ExtendedLogger implements Logger {
     // Class name for identifying stack trace information
     protected static final String className = ExtendedLogger.class.getName();
 
+    // Shared by the calls without tags, so they allocate none
+    protected static final String[] EMPTY_TAGS = new String[0];
+
     /**
      * Logs a message at the specified log level, including details of an exception if provided.
      * 
@@ -54,7 +55,7 @@ public class ExtendedLogger implements Logger {
      * @return The log entry created.
      */
     public LogEntry log(LogLevel level, String message, Throwable e, int stackTraceOffset) {
-        return this.log(level, message, e, new String[0], stackTraceOffset + 1);
+        return this.log(level, message, e, EMPTY_TAGS, stackTraceOffset + 1);
     }
 
     /**
@@ -90,7 +91,7 @@ public class ExtendedLogger implements Logger {
      * @return The log entry created.
      */
     public LogEntry log(LogLevel level, String message, int stackTraceOffset) {
-        return this.log(level, message, new String[0], stackTraceOffset + 1);
+        return this.log(level, message, EMPTY_TAGS, stackTraceOffset + 1);
     }
 
     /**
@@ -116,15 +117,13 @@ public class ExtendedLogger implements Logger {
             }
         }
 
-        // Ensure tags are not null
-        List<String> tagList = (tags != null) ? new ArrayList<>(Arrays.asList(tags)) : new ArrayList<>();
-
         LogEntry log = new LogEntry(
                 level,
                 System.currentTimeMillis(),
                 new CallerInfo(callerElement, Thread.currentThread().getName()),
                 message,
-                tagList
+                TagSet.of(tags), // Interned, without copying the tags into a list
+                LogContext.current() // Taken on the logging thread, so asynchronous loggers keep it
         );
 
         logs.add(log);
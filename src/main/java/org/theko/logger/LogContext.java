@@ -0,0 +1,218 @@
+package org.theko.logger;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * The context of the current thread, such as a request or tenant id, that every entry logged on it carries.
+ * Patterns write a value with "{ctx:key}", or all of them with "{ctx}", and JSON outputs under "context".
+ * <p>
+ * The context is a {@link ContextMap}, so an entry takes it as a reference when it is created, on the thread
+ * that logs it; an {@link AsyncLogger} writes it later on its own thread unchanged. Values are usually set
+ * for a piece of work and restored afterwards:
+ * <pre>
+ * try (LogContext.Scope scope = LogContext.with("requestId", id)) {
+ *     handle(request);
+ * }
+ * </pre>
+ * Work handed to other threads keeps the context with {@link #wrap(Runnable)}.
+ * <p>
+ * The library targets Java 11, which has no scoped values. On Java 21 and later, a {@code ScopedValue}
+ * can supply the context instead of the thread-local one, see {@link #setProvider(Supplier)}.
+ */
+public final class LogContext {
+    private static final ThreadLocal<Local> CURRENT = ThreadLocal.withInitial(() -> Local.EMPTY);
+    private static volatile Supplier<ContextMap> provider;
+
+    private LogContext() {
+    }
+
+    /**
+     * Returns the context of the current thread, as logged entries take it.
+     *
+     * @return The context; it does not change when the context of the thread does.
+     */
+    public static ContextMap current() {
+        ContextMap bound = bound();
+        Local local = CURRENT.get();
+        if (local.bound == bound) {
+            return local.context;
+        }
+        return bound != null ? bound : local.outside.context; // Changed under a binding that has ended
+    }
+
+    /**
+     * Returns a value of the context of the current thread.
+     *
+     * @param key The key.
+     * @return The value, or null if the key has none.
+     */
+    public static String get(String key) {
+        return current().get(key);
+    }
+
+    /**
+     * Sets a value of the context of the current thread.
+     *
+     * @param key   The key.
+     * @param value The value, or null to remove the key.
+     */
+    public static void put(String key, String value) {
+        update(current().with(key, value));
+    }
+
+    /**
+     * Removes a value from the context of the current thread.
+     *
+     * @param key The key.
+     */
+    public static void remove(String key) {
+        update(current().without(key));
+    }
+
+    /**
+     * Removes all values from the context of the current thread.
+     */
+    public static void clear() {
+        update(ContextMap.EMPTY);
+    }
+
+    /**
+     * Replaces the context of the current thread, such as with one taken by {@link #current()} on another thread.
+     *
+     * @param context The context.
+     */
+    public static void set(ContextMap context) {
+        if (context == null) {
+            throw new IllegalArgumentException("Context cannot be null.");
+        }
+        update(context);
+    }
+
+    /**
+     * Sets a value until the returned scope is closed, which restores the context as it was.
+     *
+     * @param key   The key.
+     * @param value The value, or null to remove the key meanwhile.
+     * @return The scope, to be closed on the same thread.
+     */
+    public static Scope with(String key, String value) {
+        return with(current().with(key, value));
+    }
+
+    /**
+     * Replaces the context until the returned scope is closed, which restores the context as it was.
+     *
+     * @param context The context.
+     * @return The scope, to be closed on the same thread.
+     */
+    public static Scope with(ContextMap context) {
+        if (context == null) {
+            throw new IllegalArgumentException("Context cannot be null.");
+        }
+        Local previous = CURRENT.get();
+        update(context);
+        return new Scope(previous);
+    }
+
+    /**
+     * Returns a task that runs with the context of the current thread, on whatever thread runs it.
+     *
+     * @param task The task.
+     * @return The task with the context.
+     */
+    public static Runnable wrap(Runnable task) {
+        ContextMap context = current();
+        return () -> {
+            Scope scope = with(context);
+            try {
+                task.run();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * Returns a task that runs with the context of the current thread, on whatever thread runs it.
+     *
+     * @param <T>  The result type.
+     * @param task The task.
+     * @return The task with the context.
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        ContextMap context = current();
+        return () -> {
+            Scope scope = with(context);
+            try {
+                return task.call();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * Sets where the context comes from instead of the thread-local one, whenever it supplies one.
+     * On Java 21 and later, this binds the context to a {@code ScopedValue}, which virtual threads and
+     * structured concurrency inherit:
+     * <pre>
+     * static final ScopedValue&lt;ContextMap&gt; CONTEXT = ScopedValue.newInstance();
+     *
+     * LogContext.setProvider(() -&gt; CONTEXT.orElse(null));
+     * ScopedValue.where(CONTEXT, ContextMap.EMPTY.with("requestId", id)).run(() -&gt; handle(request));
+     * </pre>
+     * Values put, removed or scoped while it supplies a context change that context for the current thread,
+     * until it supplies another one; then the thread-local context applies again once it supplies none.
+     *
+     * @param provider Supplies the context, or null when there is none; null to use the thread-local one only.
+     */
+    public static void setProvider(Supplier<ContextMap> provider) {
+        LogContext.provider = provider;
+    }
+
+    private static ContextMap bound() {
+        Supplier<ContextMap> provider = LogContext.provider;
+        return provider != null ? provider.get() : null;
+    }
+
+    private static void update(ContextMap context) {
+        ContextMap bound = bound();
+        Local local = CURRENT.get();
+        CURRENT.set(bound == null ? new Local(null, context, null)
+                : new Local(bound, context, local.bound == null ? local : local.outside));
+    }
+
+    /**
+     * The context of a thread, and the context the provider supplied when it was changed.
+     */
+    private static final class Local {
+        static final Local EMPTY = new Local(null, ContextMap.EMPTY, null);
+
+        final ContextMap bound; // Null if the provider supplied none
+        final ContextMap context;
+        final Local outside; // The thread-local context, kept while changed under a binding
+
+        Local(ContextMap bound, ContextMap context, Local outside) {
+            this.bound = bound;
+            this.context = context;
+            this.outside = outside;
+        }
+    }
+
+    /**
+     * A change of the context that is undone when closed.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Local previous;
+
+        private Scope(Local previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -18,7 +18,8 @@ public class LogEntry implements Serializable {
     private final long time;  // Timestamp of when the log entry was created
     private final CallerInfo caller;  // Information about the caller (class, method, etc.)
     private final String message;  // The log message
-    private final List<String> tags;  // Tags associated with the log entry for categorization or filtering
+    private final List<String> tags;  // Tags for categorization or filtering, a TagSet unless deserialized from an older version
+    private final ContextMap context;  // Thread context when the entry was created, null if deserialized from an older version
 
     /**
      * Constructs a LogEntry with all the required details.
@@ -28,8 +29,9 @@ public class LogEntry implements Serializable {
      * @param caller  The caller information for the log entry.
      * @param message The log message.
      * @param tags    A list of tags associated with the log entry.
+     * @param context The thread context of the log entry.
      */
-    public LogEntry(LogLevel level, long time, CallerInfo caller, String message, List<String> tags) {
+    public LogEntry(LogLevel level, long time, CallerInfo caller, String message, List<String> tags, ContextMap context) {
         if (level == LogLevel.NONE) {
             throw new IllegalArgumentException("Log level cannot be NONE.");
         }
@@ -38,7 +40,21 @@ public class LogEntry implements Serializable {
         this.time = time;
         this.caller = caller;
         this.message = message;
-        this.tags = tags;
+        this.tags = TagSet.copyOf(tags);
+        this.context = context != null ? context : ContextMap.EMPTY;
+    }
+
+    /**
+     * Constructs a LogEntry without a thread context.
+     * 
+     * @param level   The log level for the entry.
+     * @param time    The time when the log entry was created.
+     * @param caller  The caller information for the log entry.
+     * @param message The log message.
+     * @param tags    A list of tags associated with the log entry.
+     */
+    public LogEntry(LogLevel level, long time, CallerInfo caller, String message, List<String> tags) {
+        this(level, time, caller, message, tags, ContextMap.EMPTY);
     }
 
     /**
@@ -50,7 +66,7 @@ public class LogEntry implements Serializable {
      * @param message The log message.
      */
     public LogEntry(LogLevel level, long time, CallerInfo caller, String message) {
-        this(level, time, caller, message, new ArrayList<>());
+        this(level, time, caller, message, TagSet.EMPTY);
     }
 
     /**
@@ -122,12 +138,30 @@ public class LogEntry implements Serializable {
     /**
      * Retrieves the list of tags associated with the log entry.
      * 
-     * @return A list of tags.
+     * @return An unmodifiable list of tags.
      */
     public List<String> getTags() {
         return tags;
     }
 
+    /**
+     * Retrieves the tags as interned ids.
+     *
+     * @return The tag set.
+     */
+    public TagSet getTagSet() {
+        return tags instanceof TagSet ? (TagSet) tags : TagSet.copyOf(tags);
+    }
+
+    /**
+     * Retrieves the thread context the log entry was created with, see {@link LogContext}.
+     *
+     * @return The context, empty if there was none.
+     */
+    public ContextMap getContext() {
+        return context != null ? context : ContextMap.EMPTY;
+    }
+
     /**
      * Retrieves the tags as an array.
      * 
@@ -139,6 +173,8 @@ public class LogEntry implements Serializable {
 
     /**
      * Converts the log entry to a JSON object representation.
+     * For writing entries to streams, prefer {@link org.theko.logger.encode.JsonLogEncoder},
+     * which produces the same layout without building intermediate objects.
      * 
      * @return A JSONObject containing the log entry details.
      */
@@ -151,13 +187,19 @@ public class LogEntry implements Serializable {
         json.put("message", message);
 
         JSONArray tagsArray = new JSONArray();
-        if (tags == null || tags.size() == 0) {
-            for (int i = 0; i < tags.size(); i++) {
-                tagsArray.put(tags.get(i));
+        if (tags != null) {
+            for (String tag : tags) {
+                tagsArray.put(tag);
             }
         }
 
         json.put("tags", tagsArray);
+
+        if (context != null && !context.isEmpty()) {
+            JSONObject contextJson = new JSONObject();
+            context.forEach(contextJson::put);
+            json.put("context", contextJson);
+        }
         
         // If caller information is available, add those details as well
         if (caller != null) {
@@ -185,14 +227,54 @@ public class LogEntry implements Serializable {
             json.put("caller", callerJson);
         }
         
-        // Add tags if they exist
-        if (!tags.isEmpty()) {
-            json.put("tags", tags);
-        }
-        
         return json;
     }
 
+    /**
+     * Creates a log entry from a JSON object in the layout of {@link #getJSONObject()}.
+     *
+     * @param json The JSON object to read.
+     * @return The log entry.
+     * @throws org.json.JSONException If a required field is missing or has the wrong type.
+     */
+    public static LogEntry fromJSONObject(JSONObject json) {
+        LogLevel level = LogLevel.fromString(json.getString("level"));
+        long time = json.getLong("time");
+        String message = json.isNull("message") ? null : json.getString("message");
+
+        List<String> tags = new ArrayList<>();
+        JSONArray tagsArray = json.optJSONArray("tags");
+        if (tagsArray != null) {
+            for (int i = 0; i < tagsArray.length(); i++) {
+                tags.add(tagsArray.optString(i, null));
+            }
+        }
+
+        ContextMap context = ContextMap.EMPTY;
+        JSONObject contextJson = json.optJSONObject("context");
+        if (contextJson != null) {
+            for (String key : contextJson.keySet()) {
+                context = context.with(key, contextJson.optString(key, null));
+            }
+        }
+
+        CallerInfo caller = null;
+        JSONObject callerJson = json.optJSONObject("caller");
+        if (callerJson != null) {
+            caller = new CallerInfo(
+                    callerJson.optString("className", null),
+                    callerJson.optString("methodName", null),
+                    callerJson.optBoolean("nativeMethod"),
+                    callerJson.optString("moduleName", null),
+                    callerJson.optString("moduleVersion", null),
+                    callerJson.optString("classLoaderName", null),
+                    callerJson.optString("threadName", null),
+                    callerJson.optString("fileName", null),
+                    callerJson.optInt("lineNumber"));
+        }
+        return new LogEntry(level, time, caller, message, tags, context);
+    }
+
     private static boolean checkString(String s) {
         return s != null && !s.isEmpty();
     }
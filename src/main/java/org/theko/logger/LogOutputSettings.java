@@ -5,6 +5,10 @@ import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.theko.logger.encode.JsonLogEncoder;
+import org.theko.logger.encode.LogEncoder;
+import org.theko.logger.filter.LogFilter;
+
 /**
  * Class representing the settings for logging output.
  */
@@ -13,7 +17,9 @@ public class LogOutputSettings {
     protected OutputStream os;
     protected Map<LogLevel, String> patternsMap;
     protected LogLevel preferredLevel;
-    protected boolean isJsonOutput = false;
+    protected LogEncoder encoder;  // Encoder used instead of the pattern, if set
+    protected LogLevel flushLevel;  // Entries at or above this level are flushed immediately
+    protected volatile LogFilter filter;  // Checked after the level, if set
     //protected Rotation rotationSettings;
 
     /**
@@ -138,12 +144,68 @@ public class LogOutputSettings {
         return patternsMap.get(level);
     }
 
+    /**
+     * Marks this output as a JSON output, writing one object per line.
+     *
+     * @param b true to write entries as JSON, false to use the patterns
+     */
     public void setAsJsonOutput(boolean b) {
-        this.isJsonOutput = b;
+        this.encoder = b ? JsonLogEncoder.LINE_DELIMITED : null;
     }
 
     public boolean isJsonOutput() {
-        return isJsonOutput;
+        return encoder instanceof JsonLogEncoder;
+    }
+
+    /**
+     * Sets the encoder used to serialize entries for this output.
+     * When an encoder is set, the patterns are ignored.
+     *
+     * @param encoder the encoder, or null to use the patterns
+     */
+    public void setEncoder(LogEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    public LogEncoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * Sets the level at or above which the output stream is flushed right after an entry is written.
+     * Useful for buffered outputs, so that errors reach the disk without waiting for the buffer.
+     *
+     * @param flushLevel the flush level, or null to never flush per entry
+     */
+    public void setFlushLevel(LogLevel flushLevel) {
+        this.flushLevel = flushLevel;
+    }
+
+    public LogLevel getFlushLevel() {
+        return flushLevel;
+    }
+
+    /**
+     * Checks whether an entry of the given level requires an immediate flush.
+     *
+     * @param level the level of the written entry
+     * @return true if the output stream should be flushed
+     */
+    public boolean shouldFlush(LogLevel level) {
+        return flushLevel != null && level.ordinal() >= flushLevel.ordinal();
+    }
+
+    /**
+     * Sets the filter that entries accepted by the level must also pass, such as a rate limit or sampling.
+     *
+     * @param filter the filter, or null to write every entry the level accepts
+     */
+    public void setFilter(LogFilter filter) {
+        this.filter = filter;
+    }
+
+    public LogFilter getFilter() {
+        return filter;
     }
 
     /**
@@ -0,0 +1,419 @@
+package org.theko.logger;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses lines written with {@link LoggerOutput.Formatter} patterns back into log entries.
+ * <p>
+ * Each pattern is compiled into a regular expression once. A line is matched against the patterns
+ * of all levels, and a match is accepted only if the parsed level uses that pattern. ANSI colors
+ * of "{colored}" patterns are stripped before matching. Patterns are expected to write one entry
+ * per line; lines of a multi-line message do not match and are left to the caller as continuation lines.
+ * <p>
+ * Time formats without a date, such as "HH:mm:ss:SSS", are resolved against a reference time,
+ * see {@link #setReferenceTime(long)}. Parsed values that the formatter wrote as "null" become null.
+ * Instances are not thread-safe.
+ */
+public class LogPatternParser {
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{([^}]+)}");
+    private static final Pattern ANSI_PATTERN = Pattern.compile("\u001B\\[[0-9;]*m");
+    private static final long HALF_DAY = TimeUnit.HOURS.toMillis(12);
+
+    /** A pattern compiled into a regular expression, with the placeholder of every group. */
+    private static final class CompiledPattern {
+        final Pattern regex;
+        final String[] fields;
+        final SimpleDateFormat[] timeFormats; // Per field, for "{time format}" placeholders
+        final boolean[] dateless;
+        final List<LogLevel> levels;
+
+        CompiledPattern(Pattern regex, List<String> fields, List<LogLevel> levels) {
+            this.regex = regex;
+            this.fields = fields.toArray(new String[0]);
+            this.timeFormats = new SimpleDateFormat[this.fields.length];
+            this.dateless = new boolean[this.fields.length];
+            this.levels = levels;
+            for (int i = 0; i < this.fields.length; i++) {
+                if (this.fields[i].startsWith("time ")) {
+                    String format = this.fields[i].substring(5).trim();
+                    timeFormats[i] = new SimpleDateFormat(format);
+                    dateless[i] = !format.matches(".*[yYMLdD].*");
+                }
+            }
+        }
+    }
+
+    private final List<CompiledPattern> patterns = new ArrayList<>();
+    private long referenceTime = System.currentTimeMillis();
+
+    /**
+     * Constructs a parser for a single pattern used for all levels.
+     *
+     * @param pattern The pattern the lines were written with.
+     */
+    public LogPatternParser(String pattern) {
+        this(LogOutputSettings.getMapFromSinglePattern(pattern));
+    }
+
+    /**
+     * Constructs a parser for per-level patterns.
+     *
+     * @param patternsMap The patterns the lines were written with, by level.
+     */
+    public LogPatternParser(Map<LogLevel, String> patternsMap) {
+        if (patternsMap == null) {
+            throw new IllegalArgumentException("Patterns map cannot be null.");
+        }
+        Map<String, List<LogLevel>> levelsByPattern = new LinkedHashMap<>();
+        for (LogLevel level : LogLevel.values()) {
+            String pattern = patternsMap.get(level);
+            if (pattern != null && level != LogLevel.NONE) {
+                levelsByPattern.computeIfAbsent(pattern, p -> new ArrayList<>()).add(level);
+            }
+        }
+        for (Map.Entry<String, List<LogLevel>> entry : levelsByPattern.entrySet()) {
+            patterns.add(compile(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Constructs a parser for the patterns of an output.
+     *
+     * @param output The output whose lines are parsed.
+     * @return The parser.
+     */
+    public static LogPatternParser forOutput(LogOutputSettings output) {
+        return new LogPatternParser(output.getPatternsMap());
+    }
+
+    /**
+     * Sets the time that date-less time formats are resolved against. The parsed time of day is placed
+     * on the reference day, or on the next day if that keeps it from going back by more than half a day.
+     * The reference then follows the parsed entries, so a scan in file order crosses midnight correctly.
+     * It is also the time of entries whose pattern has no time at all.
+     *
+     * @param referenceTime The reference time in milliseconds, usually the creation time of the file.
+     */
+    public void setReferenceTime(long referenceTime) {
+        this.referenceTime = referenceTime;
+    }
+
+    public long getReferenceTime() {
+        return referenceTime;
+    }
+
+    /**
+     * Parses a single line.
+     *
+     * @param line The line, without the line terminator.
+     * @return The log entry, or null if the line does not match any pattern.
+     */
+    public LogEntry parse(String line) {
+        if (line == null) {
+            return null;
+        }
+        if (line.indexOf('\u001B') >= 0) {
+            line = ANSI_PATTERN.matcher(line).replaceAll("");
+        }
+        for (CompiledPattern pattern : patterns) {
+            Matcher matcher = pattern.regex.matcher(line);
+            if (matcher.matches()) {
+                LogEntry entry = toEntry(pattern, matcher);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private LogEntry toEntry(CompiledPattern pattern, Matcher matcher) {
+        LogLevel level = pattern.levels.get(0);
+        long time = referenceTime;
+        String message = null;
+        List<String> tags = new ArrayList<>();
+        ContextMap context = ContextMap.EMPTY;
+        String className = null, fullClassName = null, packageName = null, methodName = null;
+        String moduleName = null, moduleVersion = null, classLoaderName = null, threadName = null, fileName = null;
+        boolean nativeMethod = false;
+        int lineNumber = 0;
+        boolean hasCaller = false;
+
+        for (int i = 0; i < pattern.fields.length; i++) {
+            String field = pattern.fields[i];
+            String value = matcher.group(i + 1);
+            if (pattern.timeFormats[i] != null) {
+                Long parsed = parseTime(pattern, i, value);
+                if (parsed == null) {
+                    return null;
+                }
+                time = parsed;
+                continue;
+            }
+            if (field.startsWith("ctx:")) {
+                if (!value.isEmpty()) {
+                    context = context.with(field.substring(4), value);
+                }
+                continue;
+            }
+            switch (field) {
+                case "level":
+                    try {
+                        level = LogLevel.fromString(value);
+                    } catch (IllegalArgumentException e) {
+                        return null;
+                    }
+                    if (!pattern.levels.contains(level)) {
+                        return null; // Written with the pattern of another level
+                    }
+                    break;
+                case "time":
+                    try {
+                        time = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    break;
+                case "message":
+                    message = nullable(value);
+                    break;
+                case "tags":
+                    if (!value.isEmpty()) {
+                        tags.addAll(Arrays.asList(value.split(", ")));
+                    }
+                    break;
+                case "ctx":
+                    for (String pair : value.isEmpty() ? new String[0] : value.split(", ")) {
+                        int separator = pair.indexOf('=');
+                        if (separator > 0) {
+                            context = context.with(pair.substring(0, separator), pair.substring(separator + 1));
+                        }
+                    }
+                    break;
+                case "class":
+                    className = nullable(value);
+                    hasCaller = true;
+                    break;
+                case "fullClass":
+                    fullClassName = nullable(value);
+                    hasCaller = true;
+                    break;
+                case "package":
+                    packageName = value.isEmpty() ? null : value;
+                    hasCaller = true;
+                    break;
+                case "method":
+                    methodName = nullable(value);
+                    hasCaller = true;
+                    break;
+                case "nativeMethod":
+                    nativeMethod = Boolean.parseBoolean(value);
+                    hasCaller = true;
+                    break;
+                case "module":
+                    moduleName = nullable(value);
+                    hasCaller = true;
+                    break;
+                case "moduleVersion":
+                    moduleVersion = nullable(value);
+                    hasCaller = true;
+                    break;
+                case "classLoader":
+                    classLoaderName = nullable(value);
+                    hasCaller = true;
+                    break;
+                case "thread":
+                    threadName = nullable(value);
+                    hasCaller = true;
+                    break;
+                case "file":
+                    fileName = nullable(value);
+                    hasCaller = true;
+                    break;
+                case "lineNumber":
+                    try {
+                        lineNumber = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    hasCaller = true;
+                    break;
+            }
+        }
+
+        CallerInfo caller = null;
+        if (hasCaller) {
+            if (fullClassName == null && className != null && packageName != null) {
+                fullClassName = packageName + "." + className;
+            }
+            caller = new CallerInfo(fullClassName != null ? fullClassName : className, methodName, nativeMethod,
+                    moduleName, moduleVersion, classLoaderName, threadName, fileName, lineNumber);
+        }
+        return new LogEntry(level, time, caller, message, tags, context);
+    }
+
+    private Long parseTime(CompiledPattern pattern, int field, String value) {
+        Date date;
+        try {
+            date = pattern.timeFormats[field].parse(value);
+        } catch (ParseException e) {
+            return null;
+        }
+        if (!pattern.dateless[field]) {
+            referenceTime = date.getTime();
+            return referenceTime;
+        }
+        Calendar timeOfDay = Calendar.getInstance();
+        timeOfDay.setTime(date);
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(referenceTime);
+        day.set(Calendar.HOUR_OF_DAY, timeOfDay.get(Calendar.HOUR_OF_DAY));
+        day.set(Calendar.MINUTE, timeOfDay.get(Calendar.MINUTE));
+        day.set(Calendar.SECOND, timeOfDay.get(Calendar.SECOND));
+        day.set(Calendar.MILLISECOND, timeOfDay.get(Calendar.MILLISECOND));
+        if (day.getTimeInMillis() < referenceTime - HALF_DAY) {
+            day.add(Calendar.DATE, 1); // Crossed midnight
+        }
+        referenceTime = day.getTimeInMillis();
+        return referenceTime;
+    }
+
+    private static String nullable(String value) {
+        return value.equals("null") ? null : value;
+    }
+
+    /**
+     * Compiles a pattern into a regular expression with one group per placeholder.
+     * Placeholders the formatter does not know produce no text, so they match nothing.
+     */
+    private static CompiledPattern compile(String pattern, List<LogLevel> levels) {
+        if (pattern.startsWith("{colored}")) {
+            pattern = pattern.substring("{colored}".length());
+        }
+        pattern = pattern.replaceAll("[\r\n]+$", "");
+
+        StringBuilder regex = new StringBuilder();
+        List<String> fields = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(pattern);
+        int lastMatchEnd = 0;
+        while (matcher.find()) {
+            appendLiteral(regex, pattern.substring(lastMatchEnd, matcher.start()));
+            String placeholder = matcher.group(1);
+            String fieldRegex = placeholderRegex(placeholder);
+            if (fieldRegex != null) {
+                regex.append('(').append(fieldRegex).append(')');
+                fields.add(placeholder);
+            }
+            lastMatchEnd = matcher.end();
+        }
+        appendLiteral(regex, pattern.substring(lastMatchEnd));
+        return new CompiledPattern(Pattern.compile(regex.toString()), fields, levels);
+    }
+
+    private static void appendLiteral(StringBuilder regex, String literal) {
+        if (!literal.isEmpty()) {
+            regex.append(Pattern.quote(literal));
+        }
+    }
+
+    private static String placeholderRegex(String placeholder) {
+        if (placeholder.startsWith("time ")) {
+            return timeRegex(placeholder.substring(5).trim());
+        }
+        if (placeholder.startsWith("ctx:")) {
+            return ".*?";
+        }
+        switch (placeholder) {
+            case "level":
+                return "[A-Z]+";
+            case "time":
+            case "lineNumber":
+                return "-?\\d+";
+            case "nativeMethod":
+                return "true|false";
+            case "message":
+                return ".*";
+            case "class":
+            case "fullClass":
+            case "package":
+            case "method":
+            case "module":
+            case "moduleVersion":
+            case "classLoader":
+            case "thread":
+            case "file":
+            case "tags":
+            case "ctx":
+                return ".*?";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Translates a {@link SimpleDateFormat} pattern into a regular expression, so the time
+     * can be told apart from the text around it. The matched text is parsed with the format itself.
+     */
+    private static String timeRegex(String format) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i);
+            if (c == '\'') {
+                int end = format.indexOf('\'', i + 1);
+                if (end == i + 1) {
+                    regex.append('\''); // Escaped quote
+                    i += 2;
+                    continue;
+                }
+                if (end < 0) {
+                    end = format.length();
+                }
+                appendLiteral(regex, format.substring(i + 1, end));
+                i = end + 1;
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                int run = i;
+                while (run < format.length() && format.charAt(run) == c) {
+                    run++;
+                }
+                regex.append(timeFieldRegex(c, run - i));
+                i = run;
+            } else {
+                appendLiteral(regex, String.valueOf(c));
+                i++;
+            }
+        }
+        return regex.toString();
+    }
+
+    private static String timeFieldRegex(char letter, int count) {
+        switch (letter) {
+            case 'G':
+            case 'E':
+            case 'a':
+                return "\\p{L}+";
+            case 'M':
+            case 'L':
+                return count >= 3 ? "\\p{L}+\\.?" : "\\d{" + count + ",}";
+            case 'z':
+                return "\\S+";
+            case 'Z':
+                return "[+-]\\d{4}";
+            case 'X':
+                return "(?:Z|[+-]\\d{2}(?::?\\d{2})?)";
+            default:
+                return count > 1 ? "\\d{" + count + ",}" : "\\d+";
+        }
+    }
+}
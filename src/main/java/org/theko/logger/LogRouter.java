@@ -0,0 +1,412 @@
+package org.theko.logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.theko.logger.filter.LogFilter;
+
+/**
+ * Routes log entries to outputs according to rules for classes, methods and tags,
+ * as configured in the "specific" section.
+ * <p>
+ * A rule matches a call site (a class, a package with "name.*", or a "class.method") or a tag, and can
+ * restrict the outputs an entry goes to, change the level they accept it from, override their patterns,
+ * and filter the entries, for example with a rate limit.
+ * When several rules match, tag rules apply first, then class rules, then method rules, each overriding
+ * what the previous set; entries no rule matches go to every output as usual.
+ * <p>
+ * Rules are evaluated once per call site and set of matched tags; the resulting {@link Route} is cached,
+ * so routing an entry costs one lookup.
+ */
+public class LogRouter {
+    /** Routes past this are evaluated on every call rather than cached, as call sites with varying tags could fill it. */
+    private static final int MAX_CACHED_ROUTES = 4096;
+
+    private final List<Rule> rules;
+    private final Set<String> ruleTags = new HashSet<>();
+    private volatile Binding binding = new Binding(Collections.emptyList());
+
+    /**
+     * Constructs a router from its rules.
+     *
+     * @param rules The rules, in configuration order.
+     */
+    public LogRouter(List<Rule> rules) {
+        if (rules == null) {
+            throw new IllegalArgumentException("Rules cannot be null.");
+        }
+        List<Rule> sorted = new ArrayList<>(rules);
+        sorted.sort(Comparator.comparingInt(Rule::specificity)); // Stable, so configuration order is kept
+        this.rules = Collections.unmodifiableList(sorted);
+        for (Rule rule : sorted) {
+            if (rule.tag != null) {
+                ruleTags.add(rule.tag);
+            }
+        }
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Sets the outputs that routes refer to and drops the cached routes.
+     * Called by {@link LoggerOutput} whenever its outputs change.
+     *
+     * @param outputs The outputs, in output order.
+     */
+    public void bind(List<LogOutputSettings> outputs) {
+        this.binding = new Binding(new ArrayList<>(outputs)); // Routes still being evaluated go to the old cache
+    }
+
+    /**
+     * Returns the route of an entry.
+     *
+     * @param entry The entry to route.
+     * @return The outputs the entry goes to, with the level and patterns each applies.
+     */
+    public Route route(LogEntry entry) {
+        CallerInfo caller = entry.getCallerInfo();
+        String className = caller != null ? caller.getClassName() : null;
+        String methodName = caller != null ? caller.getMethodName() : null;
+        RouteKey key = new RouteKey(className, methodName, matchedTags(entry.getTags()));
+        Binding binding = this.binding;
+        Route route = binding.routes.get(key);
+        if (route == null) {
+            if (binding.routes.size() >= MAX_CACHED_ROUTES) {
+                return evaluate(binding, key); // The call sites already cached keep their routes
+            }
+            route = binding.routes.computeIfAbsent(key, k -> evaluate(binding, k));
+        }
+        return route;
+    }
+
+    /**
+     * Returns the tags of an entry that rules refer to, so call sites only get one route per relevant tag set.
+     */
+    private List<String> matchedTags(List<String> tags) {
+        if (ruleTags.isEmpty() || tags == null || tags.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> matched = null;
+        for (String tag : tags) {
+            if (ruleTags.contains(tag)) {
+                if (matched == null) {
+                    matched = new ArrayList<>(2);
+                }
+                if (!matched.contains(tag)) {
+                    matched.add(tag);
+                }
+            }
+        }
+        if (matched == null) {
+            return Collections.emptyList();
+        }
+        Collections.sort(matched);
+        return matched;
+    }
+
+    private Route evaluate(Binding binding, RouteKey key) {
+        List<String> outputNames = null;
+        LogLevel level = null;
+        Map<LogLevel, String> patterns = null;
+        LogFilter filter = null;
+        boolean matched = false;
+        for (Rule rule : rules) {
+            if (!rule.matches(key.className, key.methodName, key.tags)) {
+                continue;
+            }
+            matched = true;
+            if (rule.outputs != null) {
+                outputNames = rule.outputs;
+            }
+            if (rule.level != null) {
+                level = rule.level;
+            }
+            if (rule.patterns != null) {
+                if (patterns == null) {
+                    patterns = new EnumMap<>(LogLevel.class);
+                }
+                patterns.putAll(rule.patterns);
+            }
+            if (rule.filter != null) {
+                filter = rule.filter;
+            }
+        }
+        if (!matched) {
+            return binding.defaultRoute;
+        }
+        List<Target> targets = new ArrayList<>();
+        for (LogOutputSettings output : binding.outputs) {
+            if (outputNames == null || outputNames.contains(output.getName())) {
+                targets.add(new Target(output, level, patterns, filter));
+            }
+        }
+        return new Route(targets.toArray(new Target[0]));
+    }
+
+    /**
+     * A routing rule. It matches entries of a call site, of a tag, or of both if both are set.
+     */
+    public static class Rule {
+        private final String className;
+        private final String methodName;
+        private final String tag;
+        private LogLevel level;
+        private Map<LogLevel, String> patterns;
+        private List<String> outputs;
+        private LogFilter filter;
+
+        /**
+         * Constructs a rule.
+         *
+         * @param classPattern  A class name, a package as "name.*", or null for any class.
+         * @param methodPattern A method as "class.method", or null for any method.
+         * @param tag           A tag, or null for any tags.
+         */
+        public Rule(String classPattern, String methodPattern, String tag) {
+            if (methodPattern != null) {
+                int dot = methodPattern.lastIndexOf('.');
+                if (dot <= 0 || dot == methodPattern.length() - 1) {
+                    throw new IllegalArgumentException("Method must be given as class.method: " + methodPattern);
+                }
+                if (classPattern != null && !classPattern.equals(methodPattern.substring(0, dot))) {
+                    throw new IllegalArgumentException("Method " + methodPattern + " is not in class " + classPattern);
+                }
+                classPattern = methodPattern.substring(0, dot);
+                this.methodName = methodPattern.substring(dot + 1);
+            } else {
+                this.methodName = null;
+            }
+            if (classPattern == null && tag == null) {
+                throw new IllegalArgumentException("Rule must match a class, a method or a tag.");
+            }
+            this.className = classPattern;
+            this.tag = tag;
+        }
+
+        /**
+         * Sets the level that the routed outputs accept entries from, instead of their own.
+         *
+         * @param level The level, or null to keep the outputs' levels.
+         * @return This rule.
+         */
+        public Rule setLevel(LogLevel level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Sets the patterns that override those of the routed outputs, per level.
+         *
+         * @param patterns The patterns; levels without one keep the outputs' patterns.
+         * @return This rule.
+         */
+        public Rule setPatterns(Map<LogLevel, String> patterns) {
+            this.patterns = patterns == null || patterns.isEmpty() ? null : new EnumMap<>(patterns);
+            return this;
+        }
+
+        /**
+         * Restricts the outputs matched entries go to.
+         *
+         * @param outputs The output names, or null for all outputs.
+         * @return This rule.
+         */
+        public Rule setOutputs(List<String> outputs) {
+            this.outputs = outputs == null ? null : Collections.unmodifiableList(new ArrayList<>(outputs));
+            return this;
+        }
+
+        /**
+         * Sets the filter matched entries must pass, instead of the outputs' own filters.
+         *
+         * @param filter The filter, or null to keep the outputs' filters.
+         * @return This rule.
+         */
+        public Rule setFilter(LogFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public LogLevel getLevel() {
+            return level;
+        }
+
+        public List<String> getOutputs() {
+            return outputs;
+        }
+
+        public LogFilter getFilter() {
+            return filter;
+        }
+
+        private int specificity() {
+            return methodName != null ? 2 : className != null ? 1 : 0;
+        }
+
+        private boolean matches(String callerClass, String callerMethod, List<String> tags) {
+            if (tag != null && !tags.contains(tag)) {
+                return false;
+            }
+            if (className != null) {
+                if (callerClass == null) {
+                    return false;
+                }
+                if (className.endsWith(".*")
+                        ? !callerClass.startsWith(className.substring(0, className.length() - 1))
+                        : !callerClass.equals(className)) {
+                    return false;
+                }
+            }
+            return methodName == null || methodName.equals(callerMethod);
+        }
+    }
+
+    /**
+     * The outputs an entry goes to.
+     */
+    public static final class Route {
+        private final Target[] targets;
+
+        Route(Target[] targets) {
+            this.targets = targets;
+        }
+
+        public Target[] getTargets() {
+            return targets;
+        }
+
+        /**
+         * Returns the target for an output.
+         *
+         * @param output The output.
+         * @return The target, or null if the route does not include the output.
+         */
+        public Target getTarget(LogOutputSettings output) {
+            for (Target target : targets) {
+                if (target.output == output) {
+                    return target;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * An output of a route, with the level it accepts entries from, the patterns it formats them with
+     * and the filter they must pass. Without a rule that sets them, the output's own apply.
+     */
+    public static final class Target {
+        private final LogOutputSettings output;
+        private final LogLevel level;
+        private final Map<LogLevel, String> patterns;
+        private final LogFilter filter;
+
+        Target(LogOutputSettings output, LogLevel level, Map<LogLevel, String> patterns, LogFilter filter) {
+            this.output = output;
+            this.level = level;
+            this.patterns = patterns;
+            this.filter = filter;
+        }
+
+        public LogOutputSettings getOutput() {
+            return output;
+        }
+
+        public LogLevel getLevel() {
+            return level != null ? level : output.getPreferredLevel();
+        }
+
+        public boolean accepts(LogLevel entryLevel) {
+            return entryLevel.ordinal() >= getLevel().ordinal();
+        }
+
+        /**
+         * Returns the pattern for entries of a level.
+         *
+         * @param entryLevel The level of the entry.
+         * @return The pattern of the rules, or of the output if no rule sets one.
+         */
+        public String getPattern(LogLevel entryLevel) {
+            String pattern = patterns != null ? patterns.get(entryLevel) : null;
+            return pattern != null ? pattern : output.getPattern(entryLevel);
+        }
+
+        /**
+         * Returns the filter entries must pass.
+         *
+         * @return The filter of the rules, or of the output if no rule sets one, or null.
+         */
+        public LogFilter getFilter() {
+            return filter != null ? filter : output.getFilter();
+        }
+    }
+
+    /**
+     * The outputs routes refer to, with the routes cached for them; replaced as a whole when the outputs change.
+     */
+    private static final class Binding {
+        private final List<LogOutputSettings> outputs;
+        private final Route defaultRoute;
+        private final Map<RouteKey, Route> routes = new ConcurrentHashMap<>();
+
+        Binding(List<LogOutputSettings> outputs) {
+            Target[] targets = new Target[outputs.size()];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = new Target(outputs.get(i), null, null, null);
+            }
+            this.outputs = outputs;
+            this.defaultRoute = new Route(targets);
+        }
+    }
+
+    private static final class RouteKey {
+        private final String className;
+        private final String methodName;
+        private final List<String> tags;
+        private final int hash;
+
+        RouteKey(String className, String methodName, List<String> tags) {
+            this.className = className;
+            this.methodName = methodName;
+            this.tags = tags;
+            this.hash = 31 * (31 * Objects.hashCode(className) + Objects.hashCode(methodName)) + tags.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RouteKey)) {
+                return false;
+            }
+            RouteKey other = (RouteKey) o;
+            return hash == other.hash && Objects.equals(className, other.className)
+                    && Objects.equals(methodName, other.methodName) && tags.equals(other.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package org.theko.logger;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import org.json.JSONArray;
+import org.theko.logger.encode.JsonLogEncoder;
 
 public class LogUtility {
     protected static final long APPLICATION_START_MILLIS = System.currentTimeMillis();
@@ -125,4 +128,16 @@ public class LogUtility {
         }
         return jsonArray;
     }
-}
\ No newline at end of file
+
+    /**
+     * Exports a list of log entries as a JSON array, streaming it directly to the output stream.
+     * Unlike {@link #exportLogsToJSON(List)}, no intermediate JSON objects are built.
+     * 
+     * @param logs The list of log entries to export.
+     * @param os The output stream to write the JSON array to.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    public static void exportLogsToJSON(List<LogEntry> logs, OutputStream os) throws IOException {
+        JsonLogEncoder.writeArray(logs, os);
+    }
+}
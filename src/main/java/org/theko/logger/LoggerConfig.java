@@ -6,33 +6,85 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.json.JSONTokener;
+import org.theko.logger.encode.BinaryLogEncoder;
+import org.theko.logger.encode.JsonLogEncoder;
+import org.theko.logger.encode.LogEncoder;
+import org.theko.logger.encode.RecordLogEncoder;
+import org.theko.logger.filter.BurstDeduplicator;
+import org.theko.logger.filter.FilterChain;
+import org.theko.logger.filter.FirstThenEveryFilter;
+import org.theko.logger.filter.KeyedLogFilter;
+import org.theko.logger.filter.LevelRangeFilter;
+import org.theko.logger.filter.LogFilter;
+import org.theko.logger.filter.MessageFilter;
+import org.theko.logger.filter.PackageFilter;
+import org.theko.logger.filter.RateLimitFilter;
+import org.theko.logger.filter.SamplingFilter;
+import org.theko.logger.filter.TagFilter;
+import org.theko.logger.filter.ThreadFilter;
+import org.theko.logger.out.BlockCompressedOutputStream;
+import org.theko.logger.out.BufferedLogOutputStream;
+import org.theko.logger.out.ChannelFileAppender;
+import org.theko.logger.out.LazyOutputStream;
+import org.theko.logger.out.LogJournal;
+import org.theko.logger.out.MappedFileAppender;
 import org.theko.logger.out.RotatingFileOutputStream;
+import org.theko.logger.out.RotatingFileOutputStream.SegmentFactory;
+import org.theko.logger.out.SegmentIndex;
+import org.theko.logger.out.SharedRingAppender;
 
 /**
  * LoggerConfig handles the configuration for the logging system.
  * It loads configuration from JSON and sets up the logger and its outputs.
+ * <p>
+ * A loaded configuration can be reloaded, by calling {@link #reload()} or by watching the file with
+ * {@link #watch()} or the "watch" option of the logger block. A reload builds a new {@link LoggerOutput}
+ * and switches the loggers to it with one reference swap; outputs whose configuration did not change
+ * are kept open, the others are closed in the background once the calls still writing to them return.
+ * The logger itself is kept, so changing "async" or "journal" still needs a restart.
  */
 public class LoggerConfig {
-    private final JSONObject config;
+    private static final long RELOAD_DELAY_MS = 100;
+    private static final int DEFAULT_FILTER_REPORT_SEC = 60;
+
+    private final File configFile;
+    private JSONObject config; // Only kept when there is no file to read it from again
     private ExtendedLogger logger;
     private LoggerOutput loggerOutput;
 
+    // The configuration each current output was created from, as text, so a reload can keep unchanged ones
+    private Map<LogOutputSettings, String> outputConfigs = new HashMap<>();
+    // Loggers of the "loggers" entries with outputs of their own, kept across reloads
+    private final Map<String, DefaultLogger> namedBackends = new HashMap<>();
+    private final Map<String, LoggerOutput> namedOutputs = new HashMap<>();
+    private WatchService watchService;
+
     /**
      * Constructs a LoggerConfig from a JSONObject.
      *
@@ -40,6 +92,7 @@ public class LoggerConfig {
      */
     public LoggerConfig(JSONObject config) {
         this.config = Objects.requireNonNull(config, "Configuration cannot be null.");
+        this.configFile = null;
     }
 
     /**
@@ -52,11 +105,8 @@ public class LoggerConfig {
         if (!configFile.exists()) {
             throw new IllegalArgumentException("Configuration file does not exist: " + configFile.getPath());
         }
-        try (FileReader reader = new FileReader(configFile)) {
-            this.config = new JSONObject(new JSONTokener(reader));
-        } catch (IOException e) {
-            throw new UncheckedIOException("Failed to read configuration file: " + configFile.getPath(), e);
-        }
+        this.configFile = configFile;
+        this.config = readConfig(configFile);
     }
 
     /**
@@ -71,7 +121,8 @@ public class LoggerConfig {
     /**
      * Loads the configuration settings and initializes the logger and output.
      */
-    public void load() {
+    public synchronized void load() {
+        JSONObject config = this.config != null ? this.config : readConfig(configFile);
         JSONObject loggerJson = config.optJSONObject("logger");
         JSONArray outputsJsonArray = config.optJSONArray("outputs");
 
@@ -80,7 +131,124 @@ public class LoggerConfig {
         }
 
         logger = loadLogger(loggerJson);
-        loggerOutput = loadOutput(outputsJsonArray);
+        outputConfigs = new HashMap<>();
+        Map<LogOutputSettings, String> configs = new HashMap<>();
+        loggerOutput = loadOutput(outputsJsonArray, config.optJSONArray("specific"), configs);
+        outputConfigs = configs;
+        loggerOutput.setReportInterval(loadReportInterval(loggerJson));
+        loggerOutput.setFilter(loggerJson != null ? loadFilter(loggerJson.opt("filter")) : null);
+        Map<String, LoggerOutput> outputs = loadNamedOutputs(config.optJSONObject("loggers"), loggerOutput);
+        loadDeduplication(loggerJson, loggerOutput, outputs);
+        Map<String, LogLevel> levels = loadLevels(loggerJson, config.optJSONObject("loggers"));
+        Map<String, LogLevel> tagLevels = loadTagLevels(loggerJson);
+        if (logger instanceof AsyncLogger) {
+            loadJournal(loggerJson, (AsyncLogger) logger);
+        }
+        if (logger instanceof DefaultLogger) {
+            ((DefaultLogger) logger).setLoggerOutput(loggerOutput);
+        }
+        loadRegistry(loggerJson, levels, tagLevels, outputs, new ArrayList<>());
+        if (configFile != null) {
+            this.config = null; // Parsed; reloads read the file again
+            if (loggerJson != null && loggerJson.optBoolean("watch", false)) {
+                watch();
+            }
+        }
+    }
+
+    /**
+     * Reads the configuration again, from the file if there is one, and switches the loaded logger,
+     * the named loggers of the default {@link LoggerRegistry} and their outputs to it. Entries logged
+     * meanwhile go to either the old or the new outputs, never to both and never nowhere.
+     * If the configuration is invalid, an exception is thrown and the current one stays in use.
+     *
+     * @throws IllegalStateException If the configuration was not loaded yet.
+     */
+    public synchronized void reload() {
+        if (logger == null) {
+            throw new IllegalStateException("Logger is not initialized.");
+        }
+        JSONObject newConfig = configFile != null ? readConfig(configFile) : config;
+        JSONObject loggerJson = newConfig.optJSONObject("logger");
+        JSONArray outputsJsonArray = newConfig.optJSONArray("outputs");
+        if (outputsJsonArray == null) {
+            throw new IllegalArgumentException("Missing 'outputs' configuration.");
+        }
+
+        // Build everything before switching anything, so a bad configuration changes nothing
+        Map<LogOutputSettings, String> configs = new HashMap<>();
+        LoggerOutput next = loadOutput(outputsJsonArray, newConfig.optJSONArray("specific"), configs);
+        Map<String, LoggerOutput> outputs;
+        Map<String, LogLevel> levels;
+        Map<String, LogLevel> tagLevels;
+        try {
+            next.setFilter(loggerJson != null ? loadFilter(loggerJson.opt("filter")) : null);
+            outputs = loadNamedOutputs(newConfig.optJSONObject("loggers"), next);
+            levels = loadLevels(loggerJson, newConfig.optJSONObject("loggers"));
+            tagLevels = loadTagLevels(loggerJson);
+            loadDeduplication(loggerJson, next, outputs);
+        } catch (RuntimeException e) {
+            closeOutputs(newOutputs(configs, outputConfigs));
+            throw e;
+        }
+
+        LoggerOutput previous = loggerOutput;
+        List<LogOutputSettings> unused = newOutputs(outputConfigs, configs);
+        loggerOutput = next;
+        outputConfigs = configs;
+        if (loggerJson != null) {
+            logger.setMaxLogsCount(loggerJson.optInt("maxLogs", -1));
+        }
+        next.setReportInterval(loadReportInterval(loggerJson));
+        if (logger instanceof DefaultLogger) {
+            ((DefaultLogger) logger).setLoggerOutput(next);
+        }
+        List<LoggerOutput> replaced = new ArrayList<>();
+        loadRegistry(loggerJson, levels, tagLevels, outputs, replaced);
+        previous.replaceWith(next);
+        replaced.add(previous);
+        closeInBackground(replaced, unused);
+    }
+
+    /**
+     * Reloads the configuration whenever its file changes, until {@link #stopWatching()} is called.
+     * A change that fails to load is reported and the current configuration stays in use.
+     *
+     * @throws IllegalStateException If the configuration was not read from a file.
+     */
+    public synchronized void watch() {
+        if (configFile == null) {
+            throw new IllegalStateException("Only configurations read from a file can be watched.");
+        }
+        if (watchService != null) {
+            return;
+        }
+        Path file = configFile.getAbsoluteFile().toPath();
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to watch configuration file: " + configFile.getPath(), e);
+        }
+        WatchService service = watchService;
+        Thread watcher = new Thread(() -> watchLoop(service, file.getFileName()), "theko-logger-config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops reloading the configuration when its file changes.
+     */
+    public synchronized void stopWatching() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace(); // Log the error to standard output
+        }
+        watchService = null;
     }
 
     /**
@@ -99,26 +267,205 @@ public class LoggerConfig {
      * @return The initialized LoggerOutput.
      * @throws IllegalStateException If the logger output is not initialized.
      */
-    public LoggerOutput getLoggerOutput() {
+    public synchronized LoggerOutput getLoggerOutput() {
         return Optional.ofNullable(loggerOutput).orElseThrow(() -> new IllegalStateException("LoggerOutput is not initialized."));
     }
 
     // Private helper methods below
 
     /**
-     * Loads the log output settings from the configuration.
+     * Loads the log output settings from the configuration. Outputs that the current ones have
+     * the same name and configuration as are kept, so their streams stay open across reloads.
      *
      * @param outputs The JSON array of output settings.
+     * @param specific The JSON array of routing rules, or null.
+     * @param configs Receives the configuration of each output.
      * @return The LoggerOutput object.
      */
-    private LoggerOutput loadOutput(JSONArray outputs) {
+    private LoggerOutput loadOutput(JSONArray outputs, JSONArray specific, Map<LogOutputSettings, String> configs) {
         List<LogOutputSettings> outputSettings = new ArrayList<>();
-        for (Object obj : outputs) {
-            if (obj instanceof JSONObject) {
-                outputSettings.add(loadLogOutputSettings((JSONObject) obj));
+        LoggerOutput output = new LoggerOutput(outputSettings);
+        try {
+            for (Object obj : outputs) {
+                if (obj instanceof JSONObject) {
+                    JSONObject outputJson = (JSONObject) obj;
+                    LogOutputSettings settings = findUnchangedOutput(outputJson);
+                    if (settings == null) {
+                        settings = loadLogOutputSettings(outputJson);
+                    }
+                    outputSettings.add(settings);
+                    configs.put(settings, outputJson.toString());
+                }
+            }
+            if (specific != null) {
+                output.setRouter(loadRouting(specific, outputSettings));
+            }
+        } catch (RuntimeException e) {
+            closeOutputs(newOutputs(configs, outputConfigs)); // Opened for this configuration only
+            throw e;
+        }
+        return output;
+    }
+
+    /**
+     * Finds the current output with the same name and configuration, if there is one.
+     */
+    private LogOutputSettings findUnchangedOutput(JSONObject outputJson) {
+        String name = outputJson.optString("name", null);
+        for (Map.Entry<LogOutputSettings, String> current : outputConfigs.entrySet()) {
+            if (current.getKey().getName().equals(name) && current.getValue().equals(outputJson.toString())) {
+                return current.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compiles the "specific" rules into a router. A rule matches a "class" (or a package as "name.*"),
+     * a "method" as "class.method", or a "tag", and may set a "level", "patterns", a "filter" and the "outputs"
+     * matched entries go to.
+     *
+     * @param specific The JSON array of rules.
+     * @param outputSettings The outputs rules may refer to.
+     * @return The router.
+     */
+    private LogRouter loadRouting(JSONArray specific, List<LogOutputSettings> outputSettings) {
+        List<String> outputNames = new ArrayList<>();
+        for (LogOutputSettings output : outputSettings) {
+            outputNames.add(output.getName());
+        }
+        List<LogRouter.Rule> rules = new ArrayList<>();
+        for (Object obj : specific) {
+            if (!(obj instanceof JSONObject)) {
+                continue;
+            }
+            JSONObject ruleJson = (JSONObject) obj;
+            LogRouter.Rule rule = new LogRouter.Rule(ruleJson.optString("class", null), ruleJson.optString("method", null), ruleJson.optString("tag", null));
+            if (ruleJson.has("level")) {
+                rule.setLevel(parseLevel(ruleJson.getString("level")));
+            }
+            JSONObject patternsJson = ruleJson.optJSONObject("patterns");
+            if (patternsJson != null) {
+                // Levels the rule has no pattern for keep the pattern of the output
+                Map<LogLevel, String> patterns = new EnumMap<>(LogLevel.class);
+                String defaultPattern = patternsJson.optString("default", null);
+                for (LogLevel level : LogLevel.values()) {
+                    String pattern = patternsJson.optString(level.name(), defaultPattern);
+                    if (pattern != null && level != LogLevel.NONE) {
+                        patterns.put(level, pattern);
+                    }
+                }
+                rule.setPatterns(patterns);
+            }
+            JSONArray outputsJson = ruleJson.optJSONArray("outputs");
+            if (outputsJson != null) {
+                List<String> outputs = new ArrayList<>();
+                for (Object name : outputsJson) {
+                    if (!outputNames.contains(String.valueOf(name))) {
+                        throw new IllegalArgumentException("Unknown output in specific rule: " + name);
+                    }
+                    outputs.add(String.valueOf(name));
+                }
+                rule.setOutputs(outputs);
+            }
+            rule.setFilter(loadFilter(ruleJson.opt("filter")));
+            rules.add(rule);
+        }
+        return new LogRouter(rules);
+    }
+
+    /**
+     * Reads and parses a configuration file.
+     */
+    private static JSONObject readConfig(File configFile) {
+        try (FileReader reader = new FileReader(configFile)) {
+            return new JSONObject(new JSONTokener(reader));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read configuration file: " + configFile.getPath(), e);
+        }
+    }
+
+    /**
+     * Reloads the configuration on each change of the file, until the watch service is closed.
+     */
+    private void watchLoop(WatchService service, Path fileName) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= fileName.equals(event.context());
+                }
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                // Editors save in several steps; reload once they are done
+                Thread.sleep(RELOAD_DELAY_MS);
+                WatchKey more;
+                while ((more = service.poll()) != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+                try {
+                    reload();
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // Log the error to standard output
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped watching
+        }
+    }
+
+    /**
+     * Waits in the background for the calls still writing to replaced outputs, then closes
+     * the streams the new configuration no longer uses.
+     */
+    private static void closeInBackground(List<LoggerOutput> replaced, List<LogOutputSettings> unused) {
+        Thread closer = new Thread(() -> {
+            try {
+                for (LoggerOutput output : replaced) {
+                    output.awaitReplaced();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            closeOutputs(unused);
+        }, "theko-logger-reload");
+        closer.setDaemon(true);
+        closer.start();
+    }
+
+    /**
+     * Returns the outputs of one configuration that another does not use.
+     */
+    private static List<LogOutputSettings> newOutputs(Map<LogOutputSettings, String> configs, Map<LogOutputSettings, String> others) {
+        List<LogOutputSettings> outputs = new ArrayList<>();
+        for (LogOutputSettings output : configs.keySet()) {
+            if (!others.containsKey(output)) {
+                outputs.add(output);
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Closes the streams of outputs, except System.out.
+     */
+    private static void closeOutputs(List<LogOutputSettings> outputs) {
+        for (LogOutputSettings output : outputs) {
+            OutputStream os = output.getOutputStream();
+            if (os == null || os.equals(System.out)) {
+                continue;
+            }
+            try {
+                os.close();
+            } catch (IOException e) {
+                e.printStackTrace(); // Log the error to standard output
             }
         }
-        return new LoggerOutput(outputSettings);
     }
 
     /**
@@ -129,64 +476,317 @@ public class LoggerConfig {
      */
     private LogOutputSettings loadLogOutputSettings(JSONObject output) {
         String outputName = output.optString("name", String.valueOf(output.hashCode()));
-        AtomicBoolean isJsonOutput = new AtomicBoolean();
-        OutputStream os = createOutputStream(output, outputName, isJsonOutput);
+        AtomicReference<LogEncoder> encoder = new AtomicReference<>();
+        OutputStream os = createOutputStream(output, outputName, encoder);
 
-        String levelStr = output.optString("level", "INFO");
-        if (levelStr.equalsIgnoreCase("ALL")) {
-            levelStr = "DEBUG";
-        }
-        LogLevel preferredLevel = LogLevel.fromString(levelStr);
+        LogLevel preferredLevel = parseLevel(output.optString("level", "INFO"));
         Map<LogLevel, String> patternsMap = loadPatternsMap(output.optJSONObject("patterns"));
 
         LogOutputSettings los = new LogOutputSettings(outputName, os, patternsMap, preferredLevel);
-        los.setAsJsonOutput(isJsonOutput.get());
-        System.out.println(isJsonOutput.get());
+        los.setEncoder(encoder.get());
+        JSONObject bufferJson = loadBufferJson(output);
+        if (bufferJson != null) {
+            los.setFlushLevel(LogLevel.fromString(bufferJson.optString("flushLevel", "ERROR")));
+        }
+        los.setFilter(loadFilter(output.opt("filter")));
 
         return los;
     }
 
+    /**
+     * Loads the "filter" of the logger block, a "loggers" entry, an output or a rule: one filter object,
+     * or an array of them that entries must all pass. The "type" of a filter is one of:
+     * <ul>
+     * <li>"level" with a "min" and/or "max" level;</li>
+     * <li>"tags" with "include" and/or "exclude" arrays of tags;</li>
+     * <li>"package" with "include" and/or "exclude" arrays of packages or classes;</li>
+     * <li>"message" with a "regex" searched for in the message, and "exclude" to reject matches;</li>
+     * <li>"thread" with "names" and/or a "regex" for the thread name, and "exclude" to reject matches;</li>
+     * <li>"rateLimit" with "perSecond" and "burst", "sample" with a "probability", or "firstThenEvery"
+     * with "first" and "every". Rate limits and counts are kept per "key": "callSite" (the default),
+     * "tag" or "none", for at most "maxKeys" keys.</li>
+     * </ul>
+     *
+     * @param filterJson The JSON object or array of the filter, or null.
+     * @return The filter, or null if none is configured.
+     */
+    private LogFilter loadFilter(Object filterJson) {
+        if (filterJson == null) {
+            return null;
+        }
+        if (filterJson instanceof JSONArray) {
+            List<LogFilter> filters = new ArrayList<>();
+            for (Object element : (JSONArray) filterJson) {
+                filters.add(loadFilter(element));
+            }
+            return FilterChain.of(filters);
+        }
+        if (!(filterJson instanceof JSONObject)) {
+            throw new IllegalArgumentException("Filter must be an object or an array: " + filterJson);
+        }
+        JSONObject json = (JSONObject) filterJson;
+        String type = json.optString("type", "");
+        int maxKeys = json.optInt("maxKeys", KeyedLogFilter.DEFAULT_MAX_KEYS);
+        switch (type.toLowerCase()) {
+            case "level":
+                return new LevelRangeFilter(json.has("min") ? parseLevel(json.getString("min")) : null,
+                        json.has("max") ? parseLevel(json.getString("max")) : null);
+            case "tags":
+                return new TagFilter(loadStrings(json, "include"), loadStrings(json, "exclude"));
+            case "package":
+                return new PackageFilter(loadStrings(json, "include"), loadStrings(json, "exclude"));
+            case "message":
+                return new MessageFilter(json.getString("regex"), json.optBoolean("exclude", false));
+            case "thread":
+                return new ThreadFilter(loadStrings(json, "names"), json.optString("regex", null), json.optBoolean("exclude", false));
+            case "ratelimit":
+                double perSecond = json.getDouble("perSecond");
+                int burst = json.optInt("burst", Math.max(1, (int) perSecond));
+                return new RateLimitFilter(loadFilterKey(json), perSecond, burst, maxKeys);
+            case "sample":
+                return new SamplingFilter(json.getDouble("probability"));
+            case "firstthenevery":
+                return new FirstThenEveryFilter(loadFilterKey(json), json.optLong("first", 10),
+                        json.optLong("every", 100), maxKeys);
+            default:
+                throw new IllegalArgumentException("Unknown filter type: " + type);
+        }
+    }
+
+    private static List<String> loadStrings(JSONObject json, String key) {
+        List<String> strings = new ArrayList<>();
+        JSONArray array = json.optJSONArray(key);
+        if (array != null) {
+            for (Object element : array) {
+                strings.add(String.valueOf(element));
+            }
+        }
+        return strings;
+    }
+
+    private KeyedLogFilter.Key loadFilterKey(JSONObject filterJson) {
+        String key = filterJson.optString("key", "callSite");
+        switch (key.toLowerCase()) {
+            case "callsite":
+                return KeyedLogFilter.Key.CALL_SITE;
+            case "tag":
+            case "tags":
+                return KeyedLogFilter.Key.TAGS;
+            case "none":
+                return KeyedLogFilter.Key.NONE;
+            default:
+                throw new IllegalArgumentException("Unknown filter key: " + key);
+        }
+    }
+
+    /**
+     * Sets up the deduplication of repeated messages if the logger block sets "dedup", either true for a
+     * window of one second, or an object with "windowMs" and "maxKeys". Each of the outputs gets a deduplicator.
+     *
+     * @param loggerJson The JSON object containing logger configuration.
+     * @param output The loaded outputs.
+     * @param namedOutputs The outputs of the named loggers.
+     */
+    private void loadDeduplication(JSONObject loggerJson, LoggerOutput output, Map<String, LoggerOutput> namedOutputs) {
+        Object dedup = loggerJson != null ? loggerJson.opt("dedup") : null;
+        if (dedup == null || Boolean.FALSE.equals(dedup)) {
+            return;
+        }
+        JSONObject dedupJson = dedup instanceof JSONObject ? (JSONObject) dedup : new JSONObject();
+        long windowMs = dedupJson.optLong("windowMs", BurstDeduplicator.DEFAULT_WINDOW_MS);
+        int maxKeys = dedupJson.optInt("maxKeys", BurstDeduplicator.DEFAULT_MAX_KEYS);
+        output.setDeduplicator(new BurstDeduplicator(windowMs, maxKeys));
+        for (LoggerOutput namedOutput : namedOutputs.values()) {
+            namedOutput.setDeduplicator(new BurstDeduplicator(windowMs, maxKeys));
+        }
+    }
+
+    /**
+     * Returns how often the counts of filtered entries are written, from "filterReportSec" of the logger block.
+     */
+    private long loadReportInterval(JSONObject loggerJson) {
+        int seconds = loggerJson != null ? loggerJson.optInt("filterReportSec", DEFAULT_FILTER_REPORT_SEC) : DEFAULT_FILTER_REPORT_SEC;
+        return Math.max(0, seconds) * 1000L;
+    }
+
     /**
      * Creates an OutputStream based on the specified output settings.
      *
      * @param output The JSON object for the output settings.
      * @param outputName The name of the output.
+     * @param encoder Receives the encoder for targets that do not use patterns.
      * @return The created OutputStream.
      */
-    private OutputStream createOutputStream(JSONObject output, String outputName, AtomicBoolean isJsonOutput) {
+    private OutputStream createOutputStream(JSONObject output, String outputName, AtomicReference<LogEncoder> encoder) {
         String targetOutput = output.optString("target", "file").toLowerCase();
         switch (targetOutput) {
             case "terminal":
-                return System.out;
+                JSONObject bufferJson = output.optJSONObject("buffer");
+                if (bufferJson == null) {
+                    return System.out;
+                }
+                // Terminal output is only buffered on request, and System.out is never closed
+                return new BufferedLogOutputStream(System.out, loadBufferSize(bufferJson), loadFlushInterval(bufferJson), false);
             case "file":
-                return createFileOutputStream(output, outputName);
+                return createFileOutputStream(output, outputName, null);
             case "json":
-                isJsonOutput.set(true);
-                return createFileOutputStream(output, outputName);
+                // One object per line by default, so the file stays parseable as NDJSON
+                encoder.set(output.optBoolean("jsonLines", true) ? JsonLogEncoder.LINE_DELIMITED : JsonLogEncoder.CONCATENATED);
+                return createFileOutputStream(output, outputName, null);
+            case "binary":
+                BinaryLogEncoder binaryEncoder = new BinaryLogEncoder();
+                encoder.set(binaryEncoder);
+                return createFileOutputStream(output, outputName, binaryEncoder);
+            case "shm":
+                encoder.set(RecordLogEncoder.INSTANCE);
+                return createSharedRing(output, outputName);
             default:
                 throw new IllegalArgumentException("Invalid output target: " + targetOutput);
         }
     }
 
     /**
-     * Creates a FileOutputStream for file-based logging.
+     * Creates the stream for file-based logging. Unless the output sets "lazy" to false, the file
+     * and its directories are only created when the first entry is written.
      *
      * @param output The JSON object for the output settings.
      * @param outputName The name of the output.
-     * @return The created FileOutputStream.
+     * @param binaryEncoder The encoder whose header starts each rotated file, or null.
+     * @return The created stream.
      */
-    private OutputStream createFileOutputStream(JSONObject output, String outputName) {
+    private OutputStream createFileOutputStream(JSONObject output, String outputName, BinaryLogEncoder binaryEncoder) {
         String formattedTime = formatTime(new Date(LogUtility.APPLICATION_START_MILLIS), "yyyy-MM-dd_HH.mm.ss");
         String filePath = parseFilePath(output.optString("filePath", "$temp\\log\\" + outputName + "\\"));
-        File file = createFileFromFilePath(filePath, formattedTime);
-
+        SegmentFactory segmentFactory = loadBuffering(output, loadSegmentFactory(output));
+        JSONObject rotationJson = output.optJSONObject("rotation");
+        RotationOpener rotation = rotationJson != null ? loadRotation(rotationJson, segmentFactory) : null;
+        LazyOutputStream.Opener opener = () -> {
+            File file = createFileFromFilePath(filePath, formattedTime);
+            if (rotation == null) {
+                return segmentFactory.open(file);
+            }
+            RotatingFileOutputStream rotatingStream = rotation.open(file);
+            if (binaryEncoder != null) {
+                rotatingStream.setSegmentHeader(binaryEncoder::getSegmentHeader);
+            }
+            return rotatingStream;
+        };
         try {
-            return output.has("rotation") ? loadRotation(output, file) : new FileOutputStream(file, true);
+            // Opened on the first entry by default, so unused outputs create no files
+            return output.optBoolean("lazy", true) ? new LazyOutputStream(opener) : opener.open();
         } catch (IOException e) {
             throw new UncheckedIOException("Error creating file output stream", e);
         }
     }
 
+    /**
+     * Creates the ring of a shared-memory output. The ring is written to "filePath", by default
+     * a file named after the output in /dev/shm, and holds "sizeMB" of records.
+     *
+     * @param output The JSON object for the output settings.
+     * @param outputName The name of the output.
+     * @return The ring appender.
+     */
+    private OutputStream createSharedRing(JSONObject output, String outputName) {
+        File file;
+        if (output.has("filePath")) {
+            file = new File(parseFilePath(output.getString("filePath")).replace("\\", File.separator));
+        } else {
+            File shm = new File("/dev/shm");
+            file = new File(shm.isDirectory() ? shm : new File(System.getProperty("java.io.tmpdir")), "theko-" + outputName + ".ring");
+        }
+        int capacity = (int) (output.optFloat("sizeMB", SharedRingAppender.DEFAULT_CAPACITY / 1_048_576f) * 1_048_576);
+        try {
+            file.getAbsoluteFile().getParentFile().mkdirs();
+            return new SharedRingAppender(file, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error creating shared ring: " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Loads the factory that opens the stream for each log file.
+     * The "appender" setting selects plain streams ("stream"), FileChannel gathering
+     * writes ("channel") or memory-mapped windows of "mapRegionMB" ("mmap"). Channel files
+     * are preallocated to the rotation size if the rotation block sets "preallocate".
+     * With a "compression" block, files are written as independently decompressible
+     * Deflater frames, compressed on a background thread.
+     *
+     * @param output The JSON object for the output settings.
+     * @return The segment factory.
+     */
+    private SegmentFactory loadSegmentFactory(JSONObject output) {
+        JSONObject compressionJson = output.optJSONObject("compression");
+        if (compressionJson == null) {
+            String appender = output.optString("appender", "stream").toLowerCase();
+            switch (appender) {
+                case "stream":
+                    return RotatingFileOutputStream.PLAIN_SEGMENTS;
+                case "channel":
+                    JSONObject rotationJson = output.optJSONObject("rotation");
+                    long preallocateSize = rotationJson != null && rotationJson.optBoolean("preallocate", false)
+                            ? (long) (rotationJson.optFloat("maxSizeMB", 5.0f) * 1_000_000) : 0;
+                    return file -> new ChannelFileAppender(file, preallocateSize);
+                case "mmap":
+                    int regionSize = (int) (output.optFloat("mapRegionMB", MappedFileAppender.DEFAULT_REGION_SIZE / 1_048_576f) * 1_048_576);
+                    return file -> new MappedFileAppender(file, regionSize);
+                default:
+                    throw new IllegalArgumentException("Invalid file appender: " + appender);
+            }
+        }
+        int blockSize = compressionJson.optInt("blockSizeKB", BlockCompressedOutputStream.DEFAULT_BLOCK_SIZE / 1024) * 1024;
+        int level = compressionJson.optInt("level", Deflater.DEFAULT_COMPRESSION);
+        return file -> new BlockCompressedOutputStream(new FileOutputStream(file, true), blockSize, level);
+    }
+
+    /**
+     * Wraps the segment factory so that every log file is written through a buffer.
+     *
+     * @param output The JSON object for the output settings.
+     * @param segmentFactory The factory that opens the unbuffered stream.
+     * @return The buffered segment factory, or the given one if buffering is disabled.
+     */
+    private SegmentFactory loadBuffering(JSONObject output, SegmentFactory segmentFactory) {
+        JSONObject bufferJson = loadBufferJson(output);
+        if (bufferJson == null) {
+            return segmentFactory;
+        }
+        int bufferSize = loadBufferSize(bufferJson);
+        long flushInterval = loadFlushInterval(bufferJson);
+        return file -> new BufferedLogOutputStream(segmentFactory.open(file), bufferSize, flushInterval);
+    }
+
+    /**
+     * Reads the "buffer" settings of a file output. File outputs are buffered unless
+     * "buffer" is set to false; a JSON object overrides the defaults. Channel and mmap
+     * appenders do not pay a system call per write, so they are only buffered on request.
+     * Neither are compressed files: they collect whole blocks already, and every timed or
+     * level-triggered flush would seal a tiny block and wait for the compressor.
+     *
+     * @param output The JSON object for the output settings.
+     * @return The buffer settings, or null if buffering is disabled.
+     */
+    private JSONObject loadBufferJson(JSONObject output) {
+        Object buffer = output.opt("buffer");
+        if (buffer instanceof JSONObject) {
+            return (JSONObject) buffer;
+        }
+        if (Boolean.FALSE.equals(buffer) || output.optString("target", "file").equalsIgnoreCase("terminal")
+                || !output.optString("appender", "stream").equalsIgnoreCase("stream")
+                || output.optJSONObject("compression") != null) {
+            return null;
+        }
+        return new JSONObject();
+    }
+
+    private int loadBufferSize(JSONObject bufferJson) {
+        return bufferJson.optInt("sizeKB", BufferedLogOutputStream.DEFAULT_BUFFER_SIZE / 1024) * 1024;
+    }
+
+    private long loadFlushInterval(JSONObject bufferJson) {
+        return bufferJson.optLong("flushIntervalMs", 1000);
+    }
+
     /**
      * Formats the given time using the specified date format.
      *
@@ -207,28 +807,93 @@ public class LoggerConfig {
     }
 
     /**
-     * Loads rotation settings for file-based logging.
+     * Loads rotation settings for file-based logging. The settings are read right away,
+     * the stream is created when the returned opener is called.
      *
-     * @param output The JSON object containing rotation settings.
-     * @param file The file to be used for rotation.
-     * @return The RotatingFileOutputStream.
-     * @throws IOException If an error occurs during file creation.
+     * @param rotationJson The JSON object containing rotation settings.
+     * @param segmentFactory The factory that opens each log file.
+     * @return The opener of the RotatingFileOutputStream for a log file.
      */
-    private OutputStream loadRotation(JSONObject output, File file) throws IOException {
-        JSONObject rotationJson = output.getJSONObject("rotation");
+    private RotationOpener loadRotation(JSONObject rotationJson, SegmentFactory segmentFactory) {
         float maxSize = rotationJson.optFloat("maxSizeMB", 5.0f) * 1_000_000;
         int maxFiles = rotationJson.optInt("maxFiles", 10);
-        String expireTime = rotationJson.optString("expireTime", "+7d");
+        String expireTime = rotationJson.optString("expireTime", rotationJson.optString("expireDate", "+7d"));
+        boolean archiveExpired = rotationJson.optBoolean("archiveExpired", false);
+        boolean removeExpired = rotationJson.optBoolean("removeExpired", true);
+        String maxAge = rotationJson.optString("maxAge", null);
+        long maxTotalSize = (long) (rotationJson.optFloat("maxTotalSizeMB", 0) * 1_000_000);
+        ChronoUnit calendarUnit = rotationJson.has("calendar") ? parseCalendarUnit(rotationJson.getString("calendar")) : null;
+        ZoneId zone = rotationJson.has("zone") ? ZoneId.of(rotationJson.getString("zone")) : null;
+        long[] indexing = loadIndexing(rotationJson);
+
+        return file -> {
+            RotatingFileOutputStream rotatingStream = new RotatingFileOutputStream(file.getParentFile().getCanonicalPath(), (long) maxSize, expireTime, maxFiles, segmentFactory);
+            rotatingStream.setArchiveExpired(archiveExpired);
+            rotatingStream.setRemoveExpired(removeExpired);
+            rotatingStream.setMaxAge(maxAge);
+            rotatingStream.setMaxTotalSize(maxTotalSize);
+            if (calendarUnit != null) {
+                rotatingStream.setCalendarRotation(calendarUnit, zone);
+            }
+            if (indexing != null) {
+                rotatingStream.setIndexing((int) indexing[0], indexing[1]);
+            }
+            return rotatingStream;
+        };
+    }
 
-        return new RotatingFileOutputStream(file.getParentFile().getCanonicalPath(), (long) maxSize, expireTime, maxFiles);
+    /**
+     * Opens the rotating stream of a log file.
+     */
+    private interface RotationOpener {
+        RotatingFileOutputStream open(File file) throws IOException;
+    }
+
+    /**
+     * Loads the time index settings of the log files if the rotation block sets "index".
+     * It is either true, for the default chunk limits, or an object with "chunkEntries" and "chunkKB".
+     *
+     * @param rotationJson The JSON object for the rotation settings.
+     * @return The chunk entries and chunk bytes, or null if the files are not indexed.
+     */
+    private long[] loadIndexing(JSONObject rotationJson) {
+        JSONObject indexJson = rotationJson.optJSONObject("index");
+        if (indexJson == null && !rotationJson.optBoolean("index", false)) {
+            return null;
+        }
+        int chunkEntries = SegmentIndex.DEFAULT_CHUNK_ENTRIES;
+        long chunkBytes = SegmentIndex.DEFAULT_CHUNK_BYTES;
+        if (indexJson != null) {
+            chunkEntries = indexJson.optInt("chunkEntries", chunkEntries);
+            chunkBytes = indexJson.optLong("chunkKB", chunkBytes / 1024) * 1024;
+        }
+        return new long[] { chunkEntries, chunkBytes };
+    }
+
+    /**
+     * Parses the calendar rotation setting.
+     *
+     * @param calendar "hourly" or "daily".
+     * @return The calendar unit.
+     */
+    private ChronoUnit parseCalendarUnit(String calendar) {
+        switch (calendar.toLowerCase()) {
+            case "hourly":
+                return ChronoUnit.HOURS;
+            case "daily":
+                return ChronoUnit.DAYS;
+            default:
+                throw new IllegalArgumentException("Unknown calendar rotation: " + calendar);
+        }
     }
 
     /**
-     * Creates a file from the specified file path and name.
+     * Resolves the log file of the specified file path and name, and creates its directories.
+     * The file itself is created by the stream that opens it, rotating streams name their own files.
      *
      * @param filePath The path to create the file in.
      * @param fileName The name of the file to create.
-     * @return The created file.
+     * @return The log file.
      */
     private File createFileFromFilePath(String filePath, String fileName) {
         filePath = filePath.replace("/", File.separator).replace("\\", File.separator);
@@ -240,12 +905,7 @@ public class LoggerConfig {
         } else {
             file.getParentFile().mkdirs();
         }
-
-        try {
-            return file.exists() || file.createNewFile() ? file : null;
-        } catch (IOException e) {
-            throw new UncheckedIOException("Failed to create log file: " + file.getAbsolutePath(), e);
-        }
+        return file;
     }
 
     /**
@@ -266,12 +926,20 @@ public class LoggerConfig {
     }
 
     private static final Map<String, String> PATH_MAPPING = Map.of(
-        "$temp", System.getenv("TEMP"),
-        "$appdata", System.getenv("APPDATA"),
-        "$user", System.getenv("USERPROFILE"),
-        "$desktop", System.getenv("USERPROFILE") + "\\Desktop"
+        "$temp", getEnv("TEMP", System.getProperty("java.io.tmpdir")),
+        "$appdata", getEnv("APPDATA", System.getProperty("user.home")),
+        "$user", getEnv("USERPROFILE", System.getProperty("user.home")),
+        "$desktop", getEnv("USERPROFILE", System.getProperty("user.home")) + "\\Desktop"
     );
 
+    /**
+     * Returns an environment variable, or the fallback where it is not set, such as the Windows variables on Linux.
+     */
+    private static String getEnv(String name, String fallback) {
+        String value = System.getenv(name);
+        return value != null ? value : fallback;
+    }
+
     /**
      * Loads the patterns map from the configuration.
      *
@@ -304,4 +972,178 @@ public class LoggerConfig {
         logger.setMaxLogsCount(loggerJson.optInt("maxLogs", -1));
         return logger;
     }
+
+    /**
+     * Creates the outputs of the "loggers" entries that list their own "outputs" or have a "filter", out of the loaded outputs.
+     *
+     * @param loggersJson The JSON object of named loggers, or null.
+     * @param output The loaded outputs.
+     * @return The outputs per entry name.
+     */
+    private Map<String, LoggerOutput> loadNamedOutputs(JSONObject loggersJson, LoggerOutput output) {
+        Map<String, LoggerOutput> outputs = new HashMap<>();
+        if (loggersJson == null) {
+            return outputs;
+        }
+        for (String name : loggersJson.keySet()) {
+            JSONObject nodeJson = loggersJson.optJSONObject(name);
+            JSONArray outputsJson = nodeJson != null ? nodeJson.optJSONArray("outputs") : null;
+            Object filterJson = nodeJson != null ? nodeJson.opt("filter") : null;
+            if (outputsJson == null && filterJson == null) {
+                continue;
+            }
+            List<LogOutputSettings> selected = new ArrayList<>();
+            if (outputsJson == null) {
+                selected.addAll(output.getOutputs()); // Only a filter of its own
+            }
+            for (Object outputName : outputsJson != null ? outputsJson : new JSONArray()) {
+                LogOutputSettings match = null;
+                for (LogOutputSettings candidate : output.getOutputs()) {
+                    if (candidate.getName().equals(String.valueOf(outputName))) {
+                        match = candidate;
+                    }
+                }
+                if (match == null) {
+                    throw new IllegalArgumentException("Unknown output for logger " + name + ": " + outputName);
+                }
+                selected.add(match);
+            }
+            LoggerOutput namedOutput = new LoggerOutput(selected);
+            namedOutput.setFilter(loadFilter(filterJson));
+            LogRouter router = output.getRouter();
+            if (router != null) {
+                namedOutput.setRouter(new LogRouter(router.getRules())); // A router is bound to the outputs of one LoggerOutput
+            }
+            outputs.put(name, namedOutput);
+        }
+        return outputs;
+    }
+
+    /**
+     * Loads the levels of the registry: the optional "level" of the logger block for the root, and the
+     * "level" of each entry of "loggers" for a class or package and the names below it.
+     *
+     * @param loggerJson The JSON object containing logger configuration.
+     * @param loggersJson The JSON object of named loggers, or null.
+     * @return The levels per name.
+     */
+    private Map<String, LogLevel> loadLevels(JSONObject loggerJson, JSONObject loggersJson) {
+        Map<String, LogLevel> levels = new HashMap<>();
+        if (loggerJson != null && loggerJson.has("level")) {
+            levels.put(LoggerRegistry.ROOT, parseLevel(loggerJson.getString("level")));
+        }
+        if (loggersJson != null) {
+            for (String name : loggersJson.keySet()) {
+                JSONObject nodeJson = loggersJson.optJSONObject(name);
+                if (nodeJson == null) {
+                    levels.put(name, parseLevel(loggersJson.getString(name))); // "name": "LEVEL" shorthand
+                } else if (nodeJson.has("level")) {
+                    levels.put(name, parseLevel(nodeJson.getString("level")));
+                }
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Loads the levels of tags from the "tagLevels" object of the logger block, such as {"SQL": "DEBUG"}.
+     * Entries with such a tag are logged from its level rather than from the level of their logger.
+     *
+     * @param loggerJson The JSON object containing logger configuration.
+     * @return The levels per tag.
+     */
+    private Map<String, LogLevel> loadTagLevels(JSONObject loggerJson) {
+        Map<String, LogLevel> tagLevels = new HashMap<>();
+        JSONObject tagLevelsJson = loggerJson != null ? loggerJson.optJSONObject("tagLevels") : null;
+        if (tagLevelsJson != null) {
+            for (String tag : tagLevelsJson.keySet()) {
+                tagLevels.put(tag, parseLevel(tagLevelsJson.getString(tag)));
+            }
+        }
+        return tagLevels;
+    }
+
+    /**
+     * Configures the default {@link LoggerRegistry} with the levels, the loaded logger as the root, and a logger
+     * of its own for each "loggers" entry that lists "outputs" or a "filter". Those loggers are kept across reloads and
+     * switched to the new outputs.
+     *
+     * @param loggerJson The JSON object containing logger configuration.
+     * @param levels The levels per name, from {@link #loadLevels}.
+     * @param tagLevels The levels per tag, from {@link #loadTagLevels}.
+     * @param outputs The outputs per entry name, from {@link #loadNamedOutputs}.
+     * @param replaced Receives the outputs the named loggers were switched away from.
+     */
+    private void loadRegistry(JSONObject loggerJson, Map<String, LogLevel> levels, Map<String, LogLevel> tagLevels,
+            Map<String, LoggerOutput> outputs, List<LoggerOutput> replaced) {
+        Map<String, ExtendedLogger> backends = new HashMap<>();
+        backends.put(LoggerRegistry.ROOT, logger);
+        for (Map.Entry<String, LoggerOutput> named : outputs.entrySet()) {
+            String name = named.getKey();
+            DefaultLogger backend = namedBackends.get(name);
+            if (backend == null) {
+                backend = logger instanceof AsyncLogger ? new AsyncLogger(named.getValue()) : new DefaultLogger(named.getValue());
+                namedBackends.put(name, backend);
+            } else {
+                backend.setLoggerOutput(named.getValue());
+            }
+            LoggerOutput previous = namedOutputs.put(name, named.getValue());
+            if (previous != null) {
+                previous.replaceWith(named.getValue());
+                replaced.add(previous);
+            }
+            backend.setMaxLogsCount(loggerJson != null ? loggerJson.optInt("maxLogs", -1) : -1);
+            backends.put(name, backend);
+        }
+        // Loggers of removed entries may still be held by a call in progress; they write to the root outputs now
+        for (Map.Entry<String, DefaultLogger> named : namedBackends.entrySet()) {
+            if (outputs.containsKey(named.getKey())) {
+                continue;
+            }
+            named.getValue().setLoggerOutput(loggerOutput);
+            LoggerOutput previous = namedOutputs.remove(named.getKey());
+            if (previous != null) {
+                previous.replaceWith(loggerOutput);
+                replaced.add(previous);
+            }
+        }
+        LoggerRegistry.getDefault().configure(levels, tagLevels, backends);
+    }
+
+    /**
+     * Parses a level, accepting "ALL" for DEBUG.
+     */
+    private LogLevel parseLevel(String level) {
+        return LogLevel.fromString(level.equalsIgnoreCase("ALL") ? "DEBUG" : level);
+    }
+
+    /**
+     * Opens the journal of an async logger if the logger block sets "journal", and writes the entries
+     * the previous run left in it to the outputs. It is either true, for the default file and size,
+     * a file path, or an object with "filePath" and "sizeMB".
+     *
+     * @param loggerJson The JSON object containing logger configuration.
+     * @param logger The async logger to journal.
+     */
+    private void loadJournal(JSONObject loggerJson, AsyncLogger logger) {
+        Object journal = loggerJson.opt("journal");
+        if (journal == null || Boolean.FALSE.equals(journal)) {
+            return;
+        }
+        JSONObject journalJson = journal instanceof JSONObject ? (JSONObject) journal : new JSONObject();
+        String defaultPath = journal instanceof String ? (String) journal : "$temp\\log\\async.journal";
+        File file = new File(parseFilePath(journalJson.optString("filePath", defaultPath)).replace("\\", File.separator));
+        int capacity = (int) (journalJson.optFloat("sizeMB", LogJournal.DEFAULT_CAPACITY / 1_048_576f) * 1_048_576);
+        try {
+            file.getAbsoluteFile().getParentFile().mkdirs();
+            LogJournal logJournal = new LogJournal(file, capacity);
+            logJournal.replay(entries -> {
+                loggerOutput.processBatch(entries);
+                loggerOutput.flush(); // Before the replayed records are committed
+            });
+            logger.setJournal(logJournal);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open log journal: " + file.getPath(), e);
+        }
+    }
 }
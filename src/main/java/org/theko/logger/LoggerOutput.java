@@ -2,15 +2,32 @@ package org.theko.logger;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.theko.logger.encode.LogEncoder;
+import org.theko.logger.filter.BurstDeduplicator;
+import org.theko.logger.filter.LogFilter;
+import org.theko.logger.out.BatchWritable;
+import org.theko.logger.out.TimeIndexed;
+
 /**
  * The LoggerOutput class is responsible for managing the output streams where log entries are written.
  * It supports multiple output streams and different log formats.
@@ -44,7 +61,35 @@ public class LoggerOutput {
      */
     public static final String DETAILED_PATTERN = "[{time yyyy:MM:dd HH:mm:ss:SSS}] [{level}] | [{thread}] | {class}.{method} > {message}";
 
+    private static final ScheduledExecutorService REPORTER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "theko-logger-filter-report");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Instances holding back repeats, which are summarized when the JVM exits
+    private static final Set<LoggerOutput> DEDUPLICATING = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (LoggerOutput output : DEDUPLICATING) {
+                output.flushRepeated();
+                output.flushStreams(); // The summaries may land in buffers that were already flushed
+            }
+        }, "theko-logger-dedup-shutdown"));
+    }
+
     protected List<LogOutputSettings> outputs;
+    private volatile LogRouter router;
+    private ScheduledFuture<?> reportTask;
+    private volatile LogFilter filter;
+    private volatile BurstDeduplicator deduplicator;
+    private ScheduledFuture<?> sweepTask;
+    private final Consumer<LogEntry> summaryWriter = this::handleLogEntry;
+
+    // Calls writing to the outputs, so a replaced instance knows when it can close them
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile LoggerOutput successor;
 
     /**
      * Constructs a LoggerOutput with the specified list of output settings.
@@ -81,6 +126,7 @@ public class LoggerOutput {
      */
     public void setOutputs(List<LogOutputSettings> outputs) {
         this.outputs = outputs;
+        rebindRouter();
     }
 
     /**
@@ -106,6 +152,7 @@ public class LoggerOutput {
      */
     public void addOutput(LogOutputSettings output) {
         this.outputs.add(output);
+        rebindRouter();
     }
 
     /**
@@ -115,7 +162,9 @@ public class LoggerOutput {
      * @return true if the output was removed, false otherwise.
      */
     public boolean removeOutput(LogOutputSettings output) {
-        return outputs.remove(output);
+        boolean removed = outputs.remove(output);
+        rebindRouter();
+        return removed;
     }
 
     /**
@@ -123,6 +172,283 @@ public class LoggerOutput {
      */
     public void removeAllOutputs() {
         outputs.clear();
+        rebindRouter();
+    }
+
+    /**
+     * Sets the router that decides which outputs each entry goes to. Without one, entries go to every output.
+     * Outputs changed through this class are picked up by the router; changes made to the list
+     * returned by {@link #getOutputs()} are not.
+     *
+     * @param router The router, or null to send entries to every output.
+     */
+    public void setRouter(LogRouter router) {
+        if (router != null) {
+            router.bind(outputs);
+        }
+        this.router = router;
+    }
+
+    public LogRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * Sets how often the counts of entries suppressed by the filters of the outputs and routing rules
+     * are written, see {@link #reportSuppressed()}. They are also written when this instance is
+     * replaced or closed.
+     *
+     * @param intervalMs The interval in milliseconds, or 0 to only report on replacement and close.
+     */
+    public synchronized void setReportInterval(long intervalMs) {
+        if (intervalMs < 0) {
+            throw new IllegalArgumentException("Report interval cannot be negative.");
+        }
+        if (reportTask != null) {
+            reportTask.cancel(false);
+            reportTask = null;
+        }
+        if (intervalMs > 0) {
+            reportTask = REPORTER.scheduleWithFixedDelay(this::reportSuppressed, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes what the filters suppressed since the last report. The report entries of an output's filter
+     * go to that output, those of a rule's filter to the outputs the rule routes to; they are not filtered again.
+     */
+    public void reportSuppressed() {
+        LoggerOutput successor = enter();
+        if (successor != null) {
+            return; // The successor reports from now on
+        }
+        try {
+            writeSuppressed();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void writeSuppressed() {
+        LogFilter loggerFilter = this.filter;
+        if (loggerFilter != null) {
+            loggerFilter.reportSuppressed(entry -> {
+                for (LogOutputSettings output : outputs) {
+                    write(output, entry, output.getPattern(entry.getLevel()));
+                }
+            });
+        }
+        for (LogOutputSettings output : outputs) {
+            LogFilter filter = output.getFilter();
+            if (filter != null) {
+                filter.reportSuppressed(entry -> write(output, entry, output.getPattern(entry.getLevel())));
+            }
+        }
+        LogRouter router = this.router;
+        if (router == null) {
+            return;
+        }
+        for (LogRouter.Rule rule : router.getRules()) {
+            LogFilter filter = rule.getFilter();
+            if (filter == null) {
+                continue;
+            }
+            filter.reportSuppressed(entry -> {
+                for (LogOutputSettings output : outputs) {
+                    if (rule.getOutputs() == null || rule.getOutputs().contains(output.getName())) {
+                        write(output, entry, output.getPattern(entry.getLevel()));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Sets the filter that every entry must pass before it goes to any output, such as a
+     * {@link org.theko.logger.filter.FilterChain}. It is the filter of the loggers writing to this instance;
+     * outputs and routing rules can have filters of their own, which apply after it.
+     *
+     * @param filter The filter, or null to pass every entry on to the outputs.
+     */
+    public void setFilter(LogFilter filter) {
+        this.filter = filter;
+    }
+
+    public LogFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Sets the stage that collapses bursts of the same message into one "Repeated N times" entry, see
+     * {@link BurstDeduplicator}. Bursts are checked for their end every window, and the ones still
+     * running are summarized when this instance is replaced or closed, or the JVM exits.
+     *
+     * @param deduplicator The deduplicator, or null to write every entry.
+     */
+    public synchronized void setDeduplicator(BurstDeduplicator deduplicator) {
+        flushRepeated();
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+            sweepTask = null;
+        }
+        this.deduplicator = deduplicator;
+        if (deduplicator != null) {
+            long window = deduplicator.getWindowMs();
+            sweepTask = REPORTER.scheduleWithFixedDelay(this::sweepRepeated, window, window, TimeUnit.MILLISECONDS);
+            DEDUPLICATING.add(this);
+        } else {
+            DEDUPLICATING.remove(this);
+        }
+    }
+
+    public BurstDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+
+    /**
+     * Ends the bursts of repeated messages still running and writes their summaries.
+     */
+    public void flushRepeated() {
+        flushRepeated(true);
+    }
+
+    private void sweepRepeated() {
+        flushRepeated(false);
+    }
+
+    private void flushRepeated(boolean all) {
+        BurstDeduplicator deduplicator = this.deduplicator;
+        if (deduplicator == null) {
+            return;
+        }
+        LoggerOutput successor = enter();
+        if (successor != null) {
+            return; // Flushed when it was replaced
+        }
+        try {
+            writeRepeated(deduplicator, all);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void writeRepeated(BurstDeduplicator deduplicator, boolean all) {
+        if (all) {
+            deduplicator.flushAll(summaryWriter);
+        } else {
+            deduplicator.flushExpired(System.currentTimeMillis(), summaryWriter);
+        }
+    }
+
+    /**
+     * Flushes every output, so what they buffered reaches its target, such as before the entries
+     * are committed in a journal.
+     */
+    public void flush() {
+        LoggerOutput successor = enter();
+        if (successor != null) {
+            successor.flush();
+            return;
+        }
+        try {
+            flushStreams();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void flushStreams() {
+        for (LogOutputSettings output : outputs) {
+            try {
+                OutputStream os = output.getOutputStream();
+                if (os != null) {
+                    os.flush();
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // Log the error to standard output
+            }
+        }
+    }
+
+    private synchronized void stopReports() {
+        if (reportTask != null) {
+            reportTask.cancel(false);
+            reportTask = null;
+        }
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+            sweepTask = null;
+        }
+        DEDUPLICATING.remove(this);
+    }
+
+    private void rebindRouter() {
+        LogRouter router = this.router;
+        if (router != null) {
+            router.bind(outputs);
+        }
+    }
+
+    /**
+     * Hands everything logged from now on to another instance, typically one built from a reloaded
+     * configuration. Loggers should be switched to the successor first; entries that still reach this
+     * instance are passed on, so none is lost or written twice. Returns once the calls still writing
+     * to this instance have finished and its pending repeats and suppressed counts are written.
+     *
+     * @param successor The instance that replaces this one.
+     */
+    public void replaceWith(LoggerOutput successor) {
+        if (successor == null || successor == this) {
+            throw new IllegalArgumentException("Successor cannot be null or this output.");
+        }
+        stopReports();
+        this.successor = successor;
+        // The calls already past enter() may still count repeats or suppressions, so report once they finished
+        boolean interrupted = false;
+        while (inFlight.get() != 0) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        BurstDeduplicator deduplicator = this.deduplicator;
+        if (deduplicator != null) {
+            writeRepeated(deduplicator, true);
+        }
+        writeSuppressed();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the calls still writing to a replaced instance, after which its outputs can be closed.
+     * Meant to run in the background after {@link #replaceWith}.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void awaitReplaced() throws InterruptedException {
+        if (successor == null) {
+            throw new IllegalStateException("LoggerOutput has not been replaced.");
+        }
+        while (inFlight.get() != 0) {
+            Thread.sleep(1); // Calls take microseconds, so polling keeps the logging path free of signalling
+        }
+    }
+
+    /**
+     * Registers a call that writes to the outputs.
+     *
+     * @return The successor to pass the call on to, or null if this instance handles it.
+     */
+    private LoggerOutput enter() {
+        inFlight.incrementAndGet();
+        LoggerOutput successor = this.successor; // Read after the increment, so closeReplaced waits for this call
+        if (successor != null) {
+            inFlight.decrementAndGet();
+        }
+        return successor;
     }
 
     /**
@@ -130,6 +456,9 @@ public class LoggerOutput {
      * This method ensures that the streams are properly closed to prevent resource leaks.
      */
     public void close() {
+        stopReports();
+        flushRepeated();
+        reportSuppressed();
         outputs.stream()
             .filter(output -> output != null && !output.getOutputStream().equals(System.out))
             .forEach(output -> {
@@ -163,7 +492,130 @@ public class LoggerOutput {
      * @param entry The log entry to output.
      */
     public void processToOut(LogEntry entry) {
-        handleLogEntry(entry);
+        LoggerOutput successor = enter();
+        if (successor != null) {
+            successor.processToOut(entry);
+            return;
+        }
+        try {
+            LogFilter filter = this.filter;
+            if (entry == null || (filter != null && !filter.accept(entry))) {
+                return;
+            }
+            BurstDeduplicator deduplicator = this.deduplicator;
+            if (deduplicator == null || deduplicator.accept(entry, summaryWriter)) {
+                handleLogEntry(entry);
+            }
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Outputs a batch of log entries to all the registered output streams.
+     * Outputs whose stream implements {@link BatchWritable} receive each batch as a single
+     * gathering write of the encoded entries; others get the entries one by one.
+     * 
+     * @param entries The log entries to output, in order.
+     */
+    public void processBatch(List<LogEntry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        LoggerOutput successor = enter();
+        if (successor != null) {
+            successor.processBatch(entries);
+            return;
+        }
+        try {
+            writeBatch(entries);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void writeBatch(List<LogEntry> entries) {
+        LogFilter filter = this.filter;
+        BurstDeduplicator deduplicator = this.deduplicator;
+        if (filter != null || deduplicator != null) {
+            List<LogEntry> written = new ArrayList<>(entries.size());
+            for (LogEntry entry : entries) {
+                if (filter != null && !filter.accept(entry)) {
+                    continue;
+                }
+                if (deduplicator == null || deduplicator.accept(entry, written::add)) {
+                    written.add(entry);
+                }
+            }
+            if (written.isEmpty()) {
+                return;
+            }
+            entries = written;
+        }
+        LogRouter router = this.router;
+        LogRouter.Route[] routes = null;
+        if (router != null) {
+            routes = new LogRouter.Route[entries.size()];
+            for (int i = 0; i < routes.length; i++) {
+                routes[i] = router.route(entries.get(i));
+            }
+        }
+        for (LogOutputSettings output : outputs) {
+            OutputStream os = output.getOutputStream();
+            LogEncoder encoder = output.getEncoder();
+            if (!(os instanceof BatchWritable) || (encoder != null && encoder.isStateful())) {
+                for (int i = 0; i < entries.size(); i++) {
+                    LogRouter.Target target = routes != null ? routes[i].getTarget(output) : null;
+                    if (routes == null || target != null) {
+                        writeEntry(output, entries.get(i), target);
+                    }
+                }
+                continue;
+            }
+
+            ByteBuffer[] batch = new ByteBuffer[entries.size()];
+            long[] times = new long[entries.size()];
+            int count = 0;
+            boolean flush = false;
+            for (int i = 0; i < entries.size(); i++) {
+                LogEntry entry = entries.get(i);
+                LogRouter.Target target = routes != null ? routes[i].getTarget(output) : null;
+                if (routes != null && target == null) {
+                    continue; // Not routed to this output
+                }
+                if (accepts(output, entry, target)) {
+                    String pattern = target != null ? target.getPattern(entry.getLevel()) : output.getPattern(entry.getLevel());
+                    byte[] bytes = encoder != null
+                            ? encoder.toBytes(entry)
+                            : format(entry, pattern).getBytes(StandardCharsets.UTF_8);
+                    times[count] = entry.getTime();
+                    batch[count++] = ByteBuffer.wrap(bytes);
+                    flush |= output.shouldFlush(entry.getLevel());
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            if (count < batch.length) {
+                batch = Arrays.copyOf(batch, count);
+                times = Arrays.copyOf(times, count);
+            }
+            try {
+                if (os instanceof TimeIndexed) {
+                    synchronized (os) {
+                        ((TimeIndexed) os).markBatch(times);
+                        ((BatchWritable) os).writeBatch(batch);
+                    }
+                } else {
+                    ((BatchWritable) os).writeBatch(batch);
+                }
+                if (flush) {
+                    os.flush();
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // Log the error to standard output
+            }
+        }
     }
 
     /**
@@ -172,28 +624,79 @@ public class LoggerOutput {
      * @param entry The log entry to output.
      */
     private void handleLogEntry(LogEntry entry) {
-        if (entry != null) {
+        if (entry == null) {
+            return;
+        }
+        LogRouter router = this.router;
+        if (router == null) {
             for (LogOutputSettings output : outputs) {
-                // Check if the log level meets the output's preferred level
-                if (entry.getLevel().ordinal() >= output.getPreferredLevel().ordinal()) {
-                    String formattedMessage = format(entry, output.getPattern(entry.getLevel()));
-                    try {
-                        OutputStream os = output.getOutputStream();
-                        if (os == null) {
-                            System.err.println("The output stream is null.");
-                            continue;
-                        }
-                        if (output.isJsonOutput()) {
-                            os.write(entry.getJSONObject().toString().getBytes(StandardCharsets.UTF_8));
-                        } else {
-                            // Write the formatted message to the output stream
-                            os.write(formattedMessage.getBytes(StandardCharsets.UTF_8));
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace(); // Log the error to standard output
-                    }
+                writeEntry(output, entry, null);
+            }
+        } else {
+            // Only the outputs the entry is routed to are visited
+            for (LogRouter.Target target : router.route(entry).getTargets()) {
+                writeEntry(target.getOutput(), entry, target);
+            }
+        }
+    }
+
+    /**
+     * Writes a log entry to a single output, if its level meets the output's preferred level and it passes the filter.
+     * 
+     * @param output The output to write to.
+     * @param entry The log entry to output.
+     * @param target The route target that overrides the level and patterns of the output, or null.
+     */
+    private void writeEntry(LogOutputSettings output, LogEntry entry, LogRouter.Target target) {
+        if (!accepts(output, entry, target)) {
+            return;
+        }
+        write(output, entry, target != null ? target.getPattern(entry.getLevel()) : output.getPattern(entry.getLevel()));
+    }
+
+    /**
+     * Checks the level of an entry against the output's preferred level, then the filter.
+     */
+    private static boolean accepts(LogOutputSettings output, LogEntry entry, LogRouter.Target target) {
+        if (target != null ? !target.accepts(entry.getLevel()) : entry.getLevel().ordinal() < output.getPreferredLevel().ordinal()) {
+            return false;
+        }
+        LogFilter filter = target != null ? target.getFilter() : output.getFilter();
+        return filter == null || filter.accept(entry);
+    }
+
+    private static void write(LogOutputSettings output, LogEntry entry, String pattern) {
+        try {
+            OutputStream os = output.getOutputStream();
+            if (os == null) {
+                System.err.println("The output stream is null.");
+                return;
+            }
+            if (os instanceof TimeIndexed) {
+                // Hold the stream across the mark and the write, so the time goes with this entry
+                synchronized (os) {
+                    ((TimeIndexed) os).markEntry(entry.getTime());
+                    encodeEntry(output, entry, os, pattern);
                 }
+            } else {
+                encodeEntry(output, entry, os, pattern);
+            }
+            if (output.shouldFlush(entry.getLevel())) {
+                os.flush();
             }
+        } catch (IOException e) {
+            e.printStackTrace(); // Log the error to standard output
+        }
+    }
+
+    private static void encodeEntry(LogOutputSettings output, LogEntry entry, OutputStream os, String pattern) throws IOException {
+        LogEncoder encoder = output.getEncoder();
+        if (encoder != null) {
+            encoder.encode(entry, os);
+        } else {
+            // Write the formatted message to the output stream
+            String formattedMessage = format(entry, pattern);
+            os.write(formattedMessage.getBytes(StandardCharsets.UTF_8));
         }
     }
 
@@ -238,6 +741,11 @@ public class LoggerOutput {
                 if (placeholder.startsWith("time ")) {
                     String dateFormat = placeholder.substring(5).trim();
                     result.append(formatTime(new Date(entry.getTime()), dateFormat)); // Format time with specified pattern
+                } else if (placeholder.startsWith("ctx:")) {
+                    String value = entry.getContext().get(placeholder.substring(4));
+                    if (value != null) {
+                        result.append(value); // Missing keys are left empty
+                    }
                 } else {
                     // Handle various placeholders and append corresponding values
                     int lastPointIndex = -1;
@@ -312,6 +820,9 @@ public class LoggerOutput {
                             tagsStringBuilder.append(tags.get(tags.size()-1));
                             result.append(tagsStringBuilder.toString());
                             break;
+                        case "ctx":
+                            result.append(entry.getContext());
+                            break;
                         case "message":
                             result.append(entry.getMessage());
                             break;
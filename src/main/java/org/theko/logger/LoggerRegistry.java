@@ -0,0 +1,298 @@
+package org.theko.logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of {@link NamedLogger}s keyed by class or package name.
+ * <p>
+ * Levels and loggers are configured for names in the package hierarchy: a named logger inherits them
+ * from its own name, or else from the closest package above it ("a.b.C" from "a.b", then "a"), or else
+ * from the root, the empty name. Nested classes inherit from their enclosing class.
+ * <p>
+ * Named loggers cache what they inherit. Every configuration change re-resolves all of them at once,
+ * so checking a level never walks the hierarchy. {@link LoggerConfig#load()} configures the default registry.
+ * <p>
+ * The lowest effective level of all named loggers is also kept in a {@link MutableCallSite}. The JIT compiles
+ * its target in as a constant, so a call below every logger's level, such as debug logging in production,
+ * folds away entirely; when a change lowers it, the call site is retargeted and the dependent code recompiled.
+ * <p>
+ * Tags can have levels of their own, which apply to entries with the tag instead of the logger's level, so
+ * "SQL" can be logged from DEBUG while everything else is logged from INFO. They are kept in an array indexed
+ * by the id the {@link TagDictionary} assigned the tag, so looking one up is a single array access.
+ * <pre>
+ * private static final NamedLogger LOG = LoggerRegistry.getLogger(MyService.class);
+ * </pre>
+ */
+public class LoggerRegistry {
+    // Ordinal of the lowest level any named logger logs at
+    private static final MutableCallSite MIN_LEVEL = new MutableCallSite(MethodHandles.constant(int.class, 0));
+    private static final MethodHandle MIN_LEVEL_INVOKER = MIN_LEVEL.dynamicInvoker();
+
+    private static final LoggerRegistry DEFAULT = new LoggerRegistry();
+
+    /** The name of the root of the hierarchy. */
+    public static final String ROOT = "";
+
+    private final Map<String, NamedLogger> loggers = new ConcurrentHashMap<>();
+
+    // Configuration, guarded by this
+    private Map<String, LogLevel> levels = new HashMap<>();
+    private Map<String, LogLevel> tagLevels = new HashMap<>();
+    private Map<String, ExtendedLogger> backends = new HashMap<>();
+
+    // Ordinal + 1 of the level of each tag id, 0 for tags without a level
+    private volatile byte[] tagThresholds = new byte[0];
+
+    private LoggerRegistry() {
+    }
+
+    /**
+     * Returns the registry that {@link LoggerConfig} configures.
+     *
+     * @return The default registry.
+     */
+    public static LoggerRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the logger of a class from the default registry.
+     *
+     * @param type The class.
+     * @return The logger named after the class.
+     */
+    public static NamedLogger getLogger(Class<?> type) {
+        if (type == null) {
+            throw new IllegalArgumentException("Class cannot be null.");
+        }
+        return DEFAULT.get(type.getName());
+    }
+
+    /**
+     * Returns a logger from the default registry.
+     *
+     * @param name The name, usually a class or package name.
+     * @return The logger of that name.
+     */
+    public static NamedLogger getLogger(String name) {
+        return DEFAULT.get(name);
+    }
+
+    /**
+     * Returns the logger of a name, creating it on first use.
+     *
+     * @param name The name, usually a class or package name.
+     * @return The logger of that name.
+     */
+    public NamedLogger get(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Logger name cannot be null.");
+        }
+        NamedLogger logger = loggers.get(name);
+        if (logger != null) {
+            return logger;
+        }
+        synchronized (this) { // So a logger cannot be created with a configuration that is being replaced
+            return loggers.computeIfAbsent(name, n -> new NamedLogger(n, resolveLevel(n), resolveBackend(n), tagThresholds));
+        }
+    }
+
+    /**
+     * Sets the level of a name and the names below it, unless they set their own.
+     *
+     * @param name  The name, or {@link #ROOT}.
+     * @param level The level, or null to inherit it from above.
+     */
+    public synchronized void setLevel(String name, LogLevel level) {
+        if (name == null) {
+            throw new IllegalArgumentException("Logger name cannot be null.");
+        }
+        if (level == null) {
+            levels.remove(name);
+        } else {
+            levels.put(name, level);
+        }
+        invalidate();
+    }
+
+    /**
+     * Sets the level of entries with a tag, which applies instead of the level of the logger.
+     * An entry with several tags that have levels is logged from the lowest of them.
+     *
+     * @param tag   The tag.
+     * @param level The level, or null to use the level of the logger again.
+     */
+    public synchronized void setTagLevel(String tag, LogLevel level) {
+        if (tag == null) {
+            throw new IllegalArgumentException("Tag cannot be null.");
+        }
+        if (level == null) {
+            tagLevels.remove(tag);
+        } else {
+            tagLevels.put(tag, level);
+        }
+        invalidate();
+    }
+
+    /**
+     * Returns the level of entries with a tag.
+     *
+     * @param tag The tag.
+     * @return The level, or null if the tag has none.
+     */
+    public synchronized LogLevel getTagLevel(String tag) {
+        return tagLevels.get(tag);
+    }
+
+    /**
+     * Sets the logger that creates and outputs the entries of a name and the names below it,
+     * unless they set their own.
+     *
+     * @param name    The name, or {@link #ROOT}.
+     * @param backend The logger, or null to inherit it from above.
+     */
+    public synchronized void setLogger(String name, ExtendedLogger backend) {
+        if (name == null) {
+            throw new IllegalArgumentException("Logger name cannot be null.");
+        }
+        if (backend instanceof NamedLogger) {
+            throw new IllegalArgumentException("A named logger cannot be the logger of another name.");
+        }
+        if (backend == null) {
+            backends.remove(name);
+        } else {
+            backends.put(name, backend);
+        }
+        invalidate();
+    }
+
+    /**
+     * Replaces the levels and loggers of names and updates every named logger once. The levels of tags are kept.
+     *
+     * @param levels   The levels per name; the root defaults to DEBUG.
+     * @param backends The loggers per name; the root defaults to a console logger.
+     */
+    public synchronized void configure(Map<String, LogLevel> levels, Map<String, ExtendedLogger> backends) {
+        configure(levels, tagLevels, backends);
+    }
+
+    /**
+     * Replaces the whole configuration and updates every named logger once.
+     *
+     * @param levels    The levels per name; the root defaults to DEBUG.
+     * @param tagLevels The levels per tag.
+     * @param backends  The loggers per name; the root defaults to a console logger.
+     */
+    public synchronized void configure(Map<String, LogLevel> levels, Map<String, LogLevel> tagLevels, Map<String, ExtendedLogger> backends) {
+        if (levels == null || tagLevels == null || backends == null) {
+            throw new IllegalArgumentException("Levels and loggers cannot be null.");
+        }
+        for (ExtendedLogger backend : backends.values()) {
+            if (backend == null || backend instanceof NamedLogger) {
+                throw new IllegalArgumentException("Configured loggers cannot be null or named loggers.");
+            }
+        }
+        this.levels = new HashMap<>(levels);
+        this.tagLevels = new HashMap<>(tagLevels);
+        this.backends = new HashMap<>(backends);
+        invalidate();
+    }
+
+    /**
+     * Returns the loggers created so far.
+     *
+     * @return The named loggers.
+     */
+    public Collection<NamedLogger> getLoggers() {
+        return Collections.unmodifiableCollection(loggers.values());
+    }
+
+    /**
+     * Returns the name a name inherits from.
+     *
+     * @param name The name.
+     * @return The enclosing class or package, or {@link #ROOT} for a top-level name.
+     */
+    public static String getParent(String name) {
+        int separator = Math.max(name.lastIndexOf('.'), name.lastIndexOf('$'));
+        return separator > 0 ? name.substring(0, separator) : ROOT;
+    }
+
+    /**
+     * Re-resolves every named logger, after a configuration change.
+     */
+    private void invalidate() {
+        int minLevel = resolveLevel(ROOT).ordinal();
+        for (LogLevel level : levels.values()) {
+            minLevel = Math.min(minLevel, level.ordinal()); // Also covers names without a logger yet
+        }
+        byte[] thresholds = new byte[0];
+        for (Map.Entry<String, LogLevel> tagLevel : tagLevels.entrySet()) {
+            int id = TagDictionary.intern(tagLevel.getKey());
+            if (id < 0) {
+                throw new IllegalStateException("Tag dictionary is full.");
+            }
+            if (id >= thresholds.length) {
+                thresholds = Arrays.copyOf(thresholds, id + 1);
+            }
+            thresholds[id] = (byte) (tagLevel.getValue().ordinal() + 1);
+            minLevel = Math.min(minLevel, tagLevel.getValue().ordinal());
+        }
+        tagThresholds = thresholds;
+        for (NamedLogger logger : loggers.values()) {
+            logger.update(resolveLevel(logger.getName()), resolveBackend(logger.getName()), thresholds);
+        }
+        // After the loggers, so their own levels already hold while the guard changes
+        if (minLevel != getMinLevel()) {
+            MIN_LEVEL.setTarget(MethodHandles.constant(int.class, minLevel));
+            MutableCallSite.syncAll(new MutableCallSite[] { MIN_LEVEL });
+        }
+    }
+
+    /**
+     * Returns the ordinal of the lowest level any named logger logs at, which the JIT treats as a constant.
+     */
+    static int getMinLevel() {
+        try {
+            return (int) MIN_LEVEL_INVOKER.invokeExact();
+        } catch (Throwable e) {
+            throw new AssertionError(e); // A constant handle does not throw
+        }
+    }
+
+    private LogLevel resolveLevel(String name) {
+        while (true) {
+            LogLevel level = levels.get(name);
+            if (level != null) {
+                return level;
+            }
+            if (name.isEmpty()) {
+                return LogLevel.DEBUG;
+            }
+            name = getParent(name);
+        }
+    }
+
+    private ExtendedLogger resolveBackend(String name) {
+        while (true) {
+            ExtendedLogger backend = backends.get(name);
+            if (backend != null) {
+                return backend;
+            }
+            if (name.isEmpty()) {
+                backend = new DefaultLogger(new LoggerOutput(new LogOutputSettings("console", System.out)));
+                backends.put(ROOT, backend); // Shared by every logger until one is configured
+                return backend;
+            }
+            name = getParent(name);
+        }
+    }
+}
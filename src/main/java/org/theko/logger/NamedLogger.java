@@ -0,0 +1,186 @@
+package org.theko.logger;
+
+import java.util.List;
+
+import org.json.JSONObject;
+
+/**
+ * A logger obtained from a {@link LoggerRegistry}, named after a class or package.
+ * <p>
+ * It has no outputs of its own: entries are created by the logger it inherits from the registry,
+ * the one configured for its name or the closest package above it. Its effective level is resolved
+ * the same way and cached, so messages below it are discarded with one comparison, before any
+ * caller lookup or entry is made. The registry updates both whenever its configuration changes.
+ * Levels below every named logger's level are rejected by a guard the JIT folds away, see {@link LoggerRegistry}.
+ * Entries with tags that have a level of their own are checked against that level instead.
+ */
+public class NamedLogger extends DefaultLogger {
+    private final String name;
+    private volatile int threshold; // Ordinal of the effective level
+    private volatile ExtendedLogger backend;
+    private volatile byte[] tagThresholds; // Shared with the registry, see LoggerRegistry
+
+    NamedLogger(String name, LogLevel level, ExtendedLogger backend, byte[] tagThresholds) {
+        this.name = name;
+        update(level, backend, tagThresholds);
+    }
+
+    /**
+     * Logs the message through the inherited logger if its level is enabled.
+     *
+     * @param level The log level (e.g., DEBUG, ERROR, etc.).
+     * @param message The message to log.
+     * @param tags The tags associated with the log.
+     * @param stackTraceOffset The stack trace offset to identify the caller info.
+     * @return The created LogEntry, or null if the level is disabled.
+     */
+    @Override
+    public LogEntry log(LogLevel level, String message, String[] tags, int stackTraceOffset) {
+        if (!isEnabled(level, tags)) {
+            return null;
+        }
+        return backend.log(level, message, tags, stackTraceOffset + 1);
+    }
+
+    @Override
+    public LogEntry log(LogLevel level, String message, int stackTraceOffset) {
+        if (!isEnabled(level)) {
+            return null; // Before the empty tags are allocated
+        }
+        return super.log(level, message, stackTraceOffset + 1);
+    }
+
+    @Override
+    public LogEntry log(LogLevel level, String message, Throwable e, String[] tags, int stackTraceOffset) {
+        if (!isEnabled(level, tags)) {
+            return null; // Before the stack trace is rendered
+        }
+        return super.log(level, message, e, tags, stackTraceOffset + 1);
+    }
+
+    /**
+     * Checks whether messages of a level are logged, so costly messages need not be built otherwise.
+     *
+     * @param level The log level.
+     * @return true if the level is at or above the effective level.
+     */
+    public boolean isEnabled(LogLevel level) {
+        int ordinal = level.ordinal();
+        return ordinal >= LoggerRegistry.getMinLevel() && ordinal >= threshold;
+    }
+
+    /**
+     * Checks whether messages of a level with the given tags are logged. The level of a tag, if it has one,
+     * applies instead of the effective level; with several, the lowest does.
+     * <p>
+     * Each tag is looked up in the {@link TagDictionary}; where the check is hot, build the {@link TagSet}
+     * once and use {@link #isEnabled(LogLevel, TagSet)}.
+     *
+     * @param level The log level.
+     * @param tags The tags of the message.
+     * @return true if the level is at or above the level that applies.
+     */
+    public boolean isEnabled(LogLevel level, String... tags) {
+        int ordinal = level.ordinal();
+        if (ordinal < LoggerRegistry.getMinLevel()) {
+            return false;
+        }
+        byte[] thresholds = this.tagThresholds;
+        if (thresholds.length == 0 || tags == null || tags.length == 0) {
+            return ordinal >= threshold;
+        }
+        int tagThreshold = Integer.MAX_VALUE;
+        for (String tag : tags) {
+            tagThreshold = lowerThreshold(thresholds, TagDictionary.idOf(tag), tagThreshold);
+        }
+        return ordinal >= (tagThreshold != Integer.MAX_VALUE ? tagThreshold : threshold);
+    }
+
+    /**
+     * Checks whether messages of a level with the given tags are logged, as {@link #isEnabled(LogLevel, String...)}
+     * does, but with the ids the tags already have, so no tag is looked up.
+     *
+     * @param level The log level.
+     * @param tags The tags of the message.
+     * @return true if the level is at or above the level that applies.
+     */
+    public boolean isEnabled(LogLevel level, TagSet tags) {
+        int ordinal = level.ordinal();
+        if (ordinal < LoggerRegistry.getMinLevel()) {
+            return false;
+        }
+        byte[] thresholds = this.tagThresholds;
+        if (thresholds.length == 0 || tags == null) {
+            return ordinal >= threshold;
+        }
+        int tagThreshold = Integer.MAX_VALUE;
+        for (int i = 0, count = tags.idCount(); i < count; i++) {
+            tagThreshold = lowerThreshold(thresholds, tags.idAt(i), tagThreshold);
+        }
+        return ordinal >= (tagThreshold != Integer.MAX_VALUE ? tagThreshold : threshold);
+    }
+
+    private static int lowerThreshold(byte[] thresholds, int id, int tagThreshold) {
+        if (id >= 0 && id < thresholds.length && thresholds[id] != 0) {
+            return Math.min(tagThreshold, thresholds[id] - 1);
+        }
+        return tagThreshold;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(LogLevel.DEBUG);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the level this logger inherits or has configured.
+     *
+     * @return The effective level.
+     */
+    public LogLevel getEffectiveLevel() {
+        return LogLevel.values()[threshold];
+    }
+
+    /**
+     * Returns the logger that creates and outputs the entries of this one.
+     *
+     * @return The inherited logger.
+     */
+    public ExtendedLogger getBackend() {
+        return backend;
+    }
+
+    /**
+     * Named loggers take their outputs from the registry; configure them there.
+     *
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public void setLoggerOutput(LoggerOutput loggerOutput) {
+        throw new UnsupportedOperationException("Outputs of named loggers are set through the LoggerRegistry.");
+    }
+
+    @Override
+    public JSONObject getAllLogsAsJSON() {
+        return backend.getAllLogsAsJSON();
+    }
+
+    @Override
+    public LogEntry getLastLog() {
+        return backend.getLastLog();
+    }
+
+    @Override
+    public List<LogEntry> getAllLogs() {
+        return backend.getAllLogs();
+    }
+
+    void update(LogLevel level, ExtendedLogger backend, byte[] tagThresholds) {
+        this.backend = backend;
+        this.tagThresholds = tagThresholds;
+        this.threshold = level.ordinal();
+    }
+}
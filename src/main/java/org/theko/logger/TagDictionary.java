@@ -0,0 +1,85 @@
+package org.theko.logger;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns tags as small integer ids, so sets of tags can be kept as bitsets and compared without hashing strings.
+ * <p>
+ * Ids are assigned in order of first use and never change. The dictionary holds at most {@link #MAX_TAGS} tags,
+ * so tags built from variable data cannot grow it without bound; tags beyond that get no id.
+ */
+public final class TagDictionary {
+    public static final int MAX_TAGS = 1 << 16;
+
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int size; // Guarded by the class
+
+    private TagDictionary() {
+    }
+
+    /**
+     * Returns the id of a tag, assigning one if it has none yet.
+     *
+     * @param tag The tag.
+     * @return The id, or -1 if the dictionary is full.
+     */
+    public static int intern(String tag) {
+        if (tag == null) {
+            throw new IllegalArgumentException("Tag cannot be null.");
+        }
+        Integer id = IDS.get(tag);
+        if (id != null) {
+            return id;
+        }
+        synchronized (TagDictionary.class) {
+            id = IDS.get(tag);
+            if (id != null) {
+                return id;
+            }
+            if (size == MAX_TAGS) {
+                return -1;
+            }
+            String[] current = names;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[size] = tag;
+            names = current; // Published before the id, so nameOf works for every id handed out
+            IDS.put(tag, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Returns the id of a tag without assigning one.
+     *
+     * @param tag The tag.
+     * @return The id, or -1 if the tag was never interned.
+     */
+    public static int idOf(String tag) {
+        Integer id = tag != null ? IDS.get(tag) : null;
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the tag of an id.
+     *
+     * @param id The id.
+     * @return The tag.
+     */
+    public static String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of interned tags; ids range from 0 to one less.
+     *
+     * @return The number of tags.
+     */
+    public static int size() {
+        return IDS.size();
+    }
+}
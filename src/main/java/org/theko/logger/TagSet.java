@@ -0,0 +1,189 @@
+package org.theko.logger;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * The immutable tags of a {@link LogEntry}, kept as the ids the {@link TagDictionary} assigned them.
+ * <p>
+ * It is a read-only list of the tag names in the order they were given, without duplicates, so it
+ * can be used wherever a list of tags was. Tags beyond the capacity of the dictionary are kept by name.
+ * Serialized sets hold the names, as ids are only valid in the process that assigned them.
+ */
+public final class TagSet extends AbstractList<String> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int[] NO_IDS = new int[0];
+    private static final int CACHE_SIZE = 256; // A power of two
+    // Sets by the hash of the tags they were made from, so call sites logging constant tags reuse theirs
+    private static final Cached[] CACHE = new Cached[CACHE_SIZE];
+
+    /** The set without tags. */
+    public static final TagSet EMPTY = new TagSet(NO_IDS, null);
+
+    private final int[] ids;
+    private final String[] overflow; // Tags without an id, or null
+
+    private TagSet(int[] ids, String[] overflow) {
+        this.ids = ids;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Returns the set of the given tags; null tags are skipped.
+     *
+     * @param tags The tags, or null.
+     * @return The tag set, {@link #EMPTY} if there are none.
+     */
+    public static TagSet of(String... tags) {
+        if (tags == null || tags.length == 0) {
+            return EMPTY;
+        }
+        int hash = Arrays.hashCode(tags);
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        Cached cached = CACHE[slot]; // Racy, but entries are immutable, so at worst a set is made again
+        if (cached != null && cached.hash == hash && Arrays.equals(cached.tags, tags)) {
+            return cached.set;
+        }
+        TagSet set = create(tags);
+        CACHE[slot] = new Cached(hash, tags.clone(), set);
+        return set;
+    }
+
+    private static TagSet create(String[] tags) {
+        int[] ids = new int[tags.length];
+        int count = 0;
+        String[] overflow = null;
+        int overflowCount = 0;
+        for (String tag : tags) {
+            if (tag == null) {
+                continue;
+            }
+            int id = TagDictionary.intern(tag);
+            if (id >= 0) {
+                if (indexOf(ids, count, id) < 0) {
+                    ids[count++] = id;
+                }
+            } else {
+                if (overflow == null) {
+                    overflow = new String[tags.length];
+                }
+                if (indexOf(overflow, overflowCount, tag) < 0) {
+                    overflow[overflowCount++] = tag;
+                }
+            }
+        }
+        if (count == 0 && overflow == null) {
+            return EMPTY;
+        }
+        return new TagSet(count == ids.length ? ids : Arrays.copyOf(ids, count),
+                overflow == null ? null : Arrays.copyOf(overflow, overflowCount));
+    }
+
+    /**
+     * Returns the set of the given tags.
+     *
+     * @param tags The tags, or null.
+     * @return The tags themselves if they already are a tag set, otherwise a new one.
+     */
+    public static TagSet copyOf(Collection<String> tags) {
+        if (tags instanceof TagSet) {
+            return (TagSet) tags;
+        }
+        return tags == null ? EMPTY : of(tags.toArray(new String[0]));
+    }
+
+    /**
+     * Checks whether the set contains a tag by id.
+     *
+     * @param id The id from the {@link TagDictionary}.
+     * @return true if the set contains the tag.
+     */
+    public boolean containsId(int id) {
+        return indexOf(ids, ids.length, id) >= 0;
+    }
+
+    /**
+     * Returns the number of tags that have an id; they come first in the list.
+     *
+     * @return The number of ids.
+     */
+    public int idCount() {
+        return ids.length;
+    }
+
+    /**
+     * Returns the id of a tag.
+     *
+     * @param index The index, below {@link #idCount()}.
+     * @return The id.
+     */
+    public int idAt(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < ids.length) {
+            return TagDictionary.nameOf(ids[index]);
+        }
+        if (overflow == null || index - ids.length >= overflow.length || index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+        return overflow[index - ids.length];
+    }
+
+    @Override
+    public int size() {
+        return ids.length + (overflow == null ? 0 : overflow.length);
+    }
+
+    private static int indexOf(int[] ids, int length, int id) {
+        for (int i = 0; i < length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(String[] tags, int length, String tag) {
+        for (int i = 0; i < length; i++) {
+            if (tags[i].equals(tag)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Object writeReplace() {
+        return new SerializedForm(toArray(new String[0]));
+    }
+
+    private static final class Cached {
+        final int hash;
+        final String[] tags; // A copy, as callers may change their array
+        final TagSet set;
+
+        Cached(int hash, String[] tags, TagSet set) {
+            this.hash = hash;
+            this.tags = tags;
+            this.set = set;
+        }
+    }
+
+    private static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String[] tags;
+
+        SerializedForm(String[] tags) {
+            this.tags = tags;
+        }
+
+        private Object readResolve() {
+            return of(tags);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.theko.logger.encode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.theko.logger.CallerInfo;
+import org.theko.logger.LogEntry;
+
+/**
+ * Encodes log entries into the compact binary log format.
+ * <p>
+ * The stream is a sequence of records, each starting with a type byte:
+ * <ul>
+ *   <li>{@link #RECORD_PADDING} - a single zero byte that readers skip.</li>
+ *   <li>{@link #RECORD_HEADER} - the "TKLB" magic, a format version and the absolute base time.
+ *       Readers reset their dictionary when they see it.</li>
+ *   <li>{@link #RECORD_DEFINE} - assigns a dictionary id to a string.</li>
+ *   <li>{@link #RECORD_ENTRY} - a log entry. The time is stored as a delta from the previous entry,
+ *       caller strings and tags as dictionary references, the message as a length-prefixed UTF-8 string.</li>
+ * </ul>
+ * Class, method, file, thread and module names, as well as tags, are added to the dictionary
+ * on first sight and referenced by id afterwards. A string reference is a varint where
+ * {@code 0} means null, {@code 1} means an inline length-prefixed string follows,
+ * and any other value is a dictionary id.
+ * <p>
+ * The encoder is stateful, so every output needs its own instance.
+ * When used with a {@link org.theko.logger.out.RotatingFileOutputStream}, register
+ * {@link #getSegmentHeader()} so that each rotated file starts with the full dictionary
+ * and can be decoded on its own.
+ */
+public class BinaryLogEncoder implements LogEncoder {
+    public static final int RECORD_PADDING = 0x00;
+    public static final int RECORD_HEADER = 'T';
+    public static final int RECORD_DEFINE = 0x01;
+    public static final int RECORD_ENTRY = 0x02;
+
+    public static final byte[] MAGIC_TAIL = { 'K', 'L', 'B' };
+    public static final int VERSION = 1;
+
+    public static final int REF_NULL = 0;
+    public static final int REF_INLINE = 1;
+    public static final int FIRST_DICTIONARY_ID = 2;
+
+    public static final int FLAG_CALLER = 0x01;
+    public static final int FLAG_NATIVE = 0x02;
+
+    /** Strings beyond this count are written inline instead of growing the dictionary. */
+    private static final int MAX_DICTIONARY_SIZE = 65536;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> definitions = new ArrayList<>();  // Index + FIRST_DICTIONARY_ID = id
+    private final EncodeBuffer buffer = new EncodeBuffer();
+    private final EncodeBuffer headerBuffer = new EncodeBuffer();
+
+    private boolean headerWritten = false;
+    private long lastTime = 0;  // Time of the last entry handed to the stream
+
+    @Override
+    public synchronized void encode(LogEntry entry, OutputStream os) throws IOException {
+        buffer.reset();
+        if (!headerWritten) {
+            writeHeader(buffer, lastTime);
+            headerWritten = true;
+        }
+
+        CallerInfo caller = entry.getCallerInfo();
+        // Definitions must precede the entry, so references are resolved before encoding it
+        int classRef = 0, methodRef = 0, fileRef = 0, threadRef = 0, moduleRef = 0, moduleVersionRef = 0, classLoaderRef = 0;
+        if (caller != null) {
+            classRef = reference(caller.getClassName());
+            methodRef = reference(caller.getMethodName());
+            fileRef = reference(caller.getFileName());
+            threadRef = reference(caller.getThreadName());
+            moduleRef = reference(caller.getModuleName());
+            moduleVersionRef = reference(caller.getModuleVersion());
+            classLoaderRef = reference(caller.getClassLoaderName());
+        }
+        List<String> tags = entry.getTags();
+        int tagCount = tags != null ? tags.size() : 0;
+        int[] tagRefs = new int[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            tagRefs[i] = reference(tags.get(i));
+        }
+
+        buffer.writeByte(RECORD_ENTRY);
+        buffer.writeByte(entry.getLevel().ordinal());
+        buffer.writeZigZag(entry.getTime() - lastTime);
+
+        int flags = 0;
+        if (caller != null) {
+            flags |= FLAG_CALLER;
+            if (caller.isNativeMethod()) {
+                flags |= FLAG_NATIVE;
+            }
+        }
+        buffer.writeByte(flags);
+
+        if (caller != null) {
+            writeReference(classRef, caller.getClassName());
+            writeReference(methodRef, caller.getMethodName());
+            writeReference(fileRef, caller.getFileName());
+            writeReference(threadRef, caller.getThreadName());
+            writeReference(moduleRef, caller.getModuleName());
+            writeReference(moduleVersionRef, caller.getModuleVersion());
+            writeReference(classLoaderRef, caller.getClassLoaderName());
+            buffer.writeZigZag(caller.getLineNumber());
+        }
+
+        buffer.writeVarLong(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            writeReference(tagRefs[i], tags.get(i));
+        }
+
+        String message = entry.getMessage();
+        if (message == null) {
+            buffer.writeVarLong(0);
+        } else {
+            buffer.writeVarLong(EncodeBuffer.utf8Length(message) + 1L);
+            buffer.writeUtf8(message);
+        }
+
+        buffer.writeTo(os);
+        // Updated only after the write, so a segment header produced during
+        // the write carries the base time this entry's delta refers to
+        lastTime = entry.getTime();
+    }
+
+    @Override
+    public boolean isStateful() {
+        return true;
+    }
+
+    /**
+     * Returns the bytes that start a new, independently decodable segment:
+     * a header record with the current base time followed by the whole dictionary.
+     *
+     * @return The segment header bytes.
+     */
+    public synchronized byte[] getSegmentHeader() {
+        headerBuffer.reset();
+        writeHeader(headerBuffer, lastTime);
+        for (int i = 0; i < definitions.size(); i++) {
+            writeDefinition(headerBuffer, i + FIRST_DICTIONARY_ID, definitions.get(i));
+        }
+        headerWritten = true;
+        return headerBuffer.toByteArray();
+    }
+
+    /**
+     * Resolves a string to its dictionary id, defining it in the current buffer on first sight.
+     *
+     * @return The reference value to write.
+     */
+    private int reference(String s) {
+        if (s == null) {
+            return REF_NULL;
+        }
+        Integer id = dictionary.get(s);
+        if (id != null) {
+            return id;
+        }
+        if (definitions.size() >= MAX_DICTIONARY_SIZE) {
+            return REF_INLINE;
+        }
+        int newId = definitions.size() + FIRST_DICTIONARY_ID;
+        dictionary.put(s, newId);
+        definitions.add(s);
+        writeDefinition(buffer, newId, s);
+        return newId;
+    }
+
+    private void writeReference(int ref, String s) {
+        buffer.writeVarLong(ref);
+        if (ref == REF_INLINE) {
+            writeString(buffer, s);
+        }
+    }
+
+    private static void writeHeader(EncodeBuffer out, long baseTime) {
+        out.writeByte(RECORD_HEADER);
+        out.writeBytes(MAGIC_TAIL, 0, MAGIC_TAIL.length);
+        out.writeByte(VERSION);
+        out.writeZigZag(baseTime);
+    }
+
+    private static void writeDefinition(EncodeBuffer out, int id, String s) {
+        out.writeByte(RECORD_DEFINE);
+        out.writeVarLong(id);
+        writeString(out, s);
+    }
+
+    private static void writeString(EncodeBuffer out, String s) {
+        out.writeVarLong(EncodeBuffer.utf8Length(s));
+        out.writeUtf8(s);
+    }
+}
@@ -0,0 +1,243 @@
+package org.theko.logger.encode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.theko.logger.CallerInfo;
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogLevel;
+import org.theko.logger.LoggerOutput;
+
+/**
+ * Decodes log entries written by {@link BinaryLogEncoder}.
+ * <p>
+ * A truncated trailing record, as left behind by a crash, is treated as the end of the stream.
+ * Zero bytes between records, such as the padding a memory-mapped file keeps after a crash, are skipped.
+ * The class can also be run from the command line to render binary logs as text:
+ * <pre>
+ * java org.theko.logger.encode.BinaryLogReader [-p pattern] file...
+ * </pre>
+ */
+public class BinaryLogReader implements Closeable {
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    private final InputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+    private long lastTime = 0;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Constructs a reader over the given input stream.
+     *
+     * @param in The stream containing binary log records.
+     */
+    public BinaryLogReader(InputStream in) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 64 * 1024);
+    }
+
+    /**
+     * Reads the next log entry.
+     *
+     * @return The next entry, or null at the end of the stream.
+     * @throws IOException If the stream cannot be read or is not in the binary log format.
+     */
+    public LogEntry read() throws IOException {
+        try {
+            while (true) {
+                int type = in.read();
+                switch (type) {
+                    case -1:
+                        return null;
+                    case BinaryLogEncoder.RECORD_PADDING:
+                        break;
+                    case BinaryLogEncoder.RECORD_HEADER:
+                        readHeader();
+                        break;
+                    case BinaryLogEncoder.RECORD_DEFINE:
+                        define((int) readVarLong(), readString());
+                        break;
+                    case BinaryLogEncoder.RECORD_ENTRY:
+                        return readEntry();
+                    default:
+                        throw new IOException("Unknown binary log record type: " + type);
+                }
+            }
+        } catch (EOFException e) {
+            return null;  // Truncated tail record
+        }
+    }
+
+    /**
+     * Reads all remaining log entries.
+     *
+     * @return A list of the decoded entries.
+     * @throws IOException If the stream cannot be read.
+     */
+    public List<LogEntry> readAll() throws IOException {
+        List<LogEntry> entries = new ArrayList<>();
+        LogEntry entry;
+        while ((entry = read()) != null) {
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private void readHeader() throws IOException {
+        for (byte b : BinaryLogEncoder.MAGIC_TAIL) {
+            if (readByte() != b) {
+                throw new IOException("Not a binary log stream.");
+            }
+        }
+        int version = readByte();
+        if (version != BinaryLogEncoder.VERSION) {
+            throw new IOException("Unsupported binary log version: " + version);
+        }
+        lastTime = readZigZag();
+        dictionary.clear();
+    }
+
+    private void define(int id, String value) {
+        int index = id - BinaryLogEncoder.FIRST_DICTIONARY_ID;
+        while (dictionary.size() <= index) {
+            dictionary.add(null);
+        }
+        dictionary.set(index, value);
+    }
+
+    private LogEntry readEntry() throws IOException {
+        int levelOrdinal = readByte();
+        if (levelOrdinal >= LEVELS.length) {
+            throw new IOException("Invalid log level ordinal: " + levelOrdinal);
+        }
+        long time = lastTime + readZigZag();
+        lastTime = time;
+        int flags = readByte();
+
+        CallerInfo caller = null;
+        if ((flags & BinaryLogEncoder.FLAG_CALLER) != 0) {
+            String className = readReference();
+            String methodName = readReference();
+            String fileName = readReference();
+            String threadName = readReference();
+            String moduleName = readReference();
+            String moduleVersion = readReference();
+            String classLoaderName = readReference();
+            int lineNumber = (int) readZigZag();
+            caller = new CallerInfo(className, methodName, (flags & BinaryLogEncoder.FLAG_NATIVE) != 0,
+                    moduleName, moduleVersion, classLoaderName, threadName, fileName, lineNumber);
+        }
+
+        int tagCount = (int) readVarLong();
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(readReference());
+        }
+
+        long messageLength = readVarLong();
+        String message = messageLength == 0 ? null : readUtf8((int) (messageLength - 1));
+
+        return new LogEntry(LEVELS[levelOrdinal], time, caller, message, tags);
+    }
+
+    private String readReference() throws IOException {
+        int ref = (int) readVarLong();
+        if (ref == BinaryLogEncoder.REF_NULL) {
+            return null;
+        }
+        if (ref == BinaryLogEncoder.REF_INLINE) {
+            return readString();
+        }
+        int index = ref - BinaryLogEncoder.FIRST_DICTIONARY_ID;
+        if (index >= dictionary.size() || dictionary.get(index) == null) {
+            throw new IOException("Undefined dictionary id: " + ref);
+        }
+        return dictionary.get(index);
+    }
+
+    private String readString() throws IOException {
+        return readUtf8((int) readVarLong());
+    }
+
+    private String readUtf8(int length) throws IOException {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        int read = in.readNBytes(scratch, 0, length);
+        if (read < length) {
+            throw new EOFException();
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private long readVarLong() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed variable-length integer.");
+    }
+
+    private long readZigZag() throws IOException {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Renders binary log files to standard output using a {@link LoggerOutput} pattern.
+     *
+     * @param args {@code [-p pattern] file...}
+     * @throws IOException If a file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        String pattern = LoggerOutput.DETAILED_PATTERN + "\n";
+        List<String> files = new ArrayList<>(Arrays.asList(args));
+        int patternIndex = files.indexOf("-p");
+        if (patternIndex != -1 && patternIndex + 1 < files.size()) {
+            pattern = files.get(patternIndex + 1).replace("\\n", "\n");
+            files.remove(patternIndex + 1);
+            files.remove(patternIndex);
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: BinaryLogReader [-p pattern] file...");
+            return;
+        }
+
+        OutputStream buffered = new BufferedOutputStream(System.out, 64 * 1024);
+        for (String file : files) {
+            try (BinaryLogReader reader = new BinaryLogReader(new FileInputStream(file))) {
+                LogEntry entry;
+                while ((entry = reader.read()) != null) {
+                    buffered.write(LoggerOutput.format(entry, pattern).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        buffered.flush();
+    }
+}
@@ -0,0 +1,201 @@
+package org.theko.logger.encode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer used by the encoders to assemble an entry before
+ * handing it to the output stream in one write. Instances are not thread-safe
+ * and are meant to be reused through a {@link ThreadLocal}.
+ */
+public final class EncodeBuffer {
+    /** Buffers that grew beyond this size are shrunk back on {@link #reset()}. */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final int INITIAL_CAPACITY = 512;
+
+    private byte[] buf;
+    private int len;
+
+    public EncodeBuffer() {
+        this.buf = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Clears the buffer, releasing oversized backing arrays.
+     */
+    public void reset() {
+        if (buf.length > MAX_RETAINED_CAPACITY) {
+            buf = new byte[INITIAL_CAPACITY];
+        }
+        len = 0;
+    }
+
+    public int length() {
+        return len;
+    }
+
+    public byte[] array() {
+        return buf;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, len);
+    }
+
+    public void writeTo(OutputStream os) throws IOException {
+        os.write(buf, 0, len);
+    }
+
+    private void ensure(int extra) {
+        int required = len + extra;
+        if (required > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(required, buf.length << 1));
+        }
+    }
+
+    public void writeByte(int b) {
+        ensure(1);
+        buf[len++] = (byte) b;
+    }
+
+    public void writeBytes(byte[] b, int off, int count) {
+        ensure(count);
+        System.arraycopy(b, off, buf, len, count);
+        len += count;
+    }
+
+    /**
+     * Writes a string that is known to contain only ASCII characters.
+     *
+     * @param s The ASCII string.
+     */
+    public void writeAscii(String s) {
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            buf[len++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * Writes the decimal representation of a long without allocating.
+     *
+     * @param v The value to write.
+     */
+    public void writeDecimal(long v) {
+        if (v == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        if (v < 0) {
+            writeByte('-');
+            v = -v;
+        }
+        ensure(19);
+        int start = len;
+        do {
+            buf[len++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        // Digits were produced in reverse order
+        for (int i = start, j = len - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+    }
+
+    /**
+     * Writes a string as UTF-8. Unpaired surrogates are replaced with '?'.
+     *
+     * @param s The string to write.
+     */
+    public void writeUtf8(String s) {
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                writeByte(c);
+            } else {
+                i = writeNonAscii(s, i, c);
+            }
+        }
+    }
+
+    /**
+     * Computes the number of bytes {@link #writeUtf8(String)} will produce for the string.
+     *
+     * @param s The string to measure.
+     * @return The encoded length in bytes.
+     */
+    public static int utf8Length(String s) {
+        int n = s.length();
+        int bytes = n;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    bytes += 2;  // 4 bytes for the pair of chars
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes a non-ASCII character (or surrogate pair) starting at the given index.
+     *
+     * @return The index of the last char consumed.
+     */
+    int writeNonAscii(String s, int i, char c) {
+        ensure(4);
+        if (c < 0x800) {
+            buf[len++] = (byte) (0xC0 | (c >> 6));
+            buf[len++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(++i));
+            buf[len++] = (byte) (0xF0 | (cp >> 18));
+            buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buf[len++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            buf[len++] = '?';
+        } else {
+            buf[len++] = (byte) (0xE0 | (c >> 12));
+            buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[len++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return i;
+    }
+
+    /**
+     * Writes an unsigned LEB128 variable-length integer.
+     *
+     * @param v The value, treated as unsigned.
+     */
+    public void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[len++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[len++] = (byte) v;
+    }
+
+    /**
+     * Writes a signed value as a zig-zag encoded variable-length integer,
+     * so that small negative numbers stay short.
+     *
+     * @param v The signed value.
+     */
+    public void writeZigZag(long v) {
+        writeVarLong((v << 1) ^ (v >> 63));
+    }
+}
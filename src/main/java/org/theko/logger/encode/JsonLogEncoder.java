@@ -0,0 +1,233 @@
+package org.theko.logger.encode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.theko.logger.CallerInfo;
+import org.theko.logger.ContextMap;
+import org.theko.logger.LogEntry;
+
+/**
+ * Streaming JSON encoder for log entries.
+ * Fields are serialized directly into a reusable per-thread byte buffer,
+ * without building intermediate JSON objects or strings.
+ * <p>
+ * The produced object has the same layout as {@link LogEntry#getJSONObject()}.
+ * In line-delimited mode every object is terminated by a newline (NDJSON).
+ */
+public class JsonLogEncoder implements LogEncoder {
+    /** Shared encoder that writes one object per line. */
+    public static final JsonLogEncoder LINE_DELIMITED = new JsonLogEncoder(true);
+
+    /** Shared encoder that writes objects back-to-back without separators. */
+    public static final JsonLogEncoder CONCATENATED = new JsonLogEncoder(false);
+
+    private static final ThreadLocal<EncodeBuffer> BUFFER = ThreadLocal.withInitial(EncodeBuffer::new);
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final boolean lineDelimited;
+
+    /**
+     * Constructs a JSON encoder.
+     *
+     * @param lineDelimited Whether each object is followed by a newline.
+     */
+    public JsonLogEncoder(boolean lineDelimited) {
+        this.lineDelimited = lineDelimited;
+    }
+
+    public boolean isLineDelimited() {
+        return lineDelimited;
+    }
+
+    @Override
+    public void encode(LogEntry entry, OutputStream os) throws IOException {
+        EncodeBuffer buffer = BUFFER.get();
+        buffer.reset();
+        writeEntry(entry, buffer);
+        if (lineDelimited) {
+            buffer.writeByte('\n');
+        }
+        buffer.writeTo(os);
+    }
+
+    /**
+     * Encodes the log entry into a new byte array.
+     *
+     * @param entry The log entry to encode.
+     * @return The UTF-8 encoded JSON bytes.
+     */
+    @Override
+    public byte[] toBytes(LogEntry entry) {
+        EncodeBuffer buffer = BUFFER.get();
+        buffer.reset();
+        writeEntry(entry, buffer);
+        if (lineDelimited) {
+            buffer.writeByte('\n');
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Writes the log entries as a single JSON array.
+     *
+     * @param entries The log entries to write.
+     * @param os      The output stream to write to.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    public static void writeArray(List<LogEntry> entries, OutputStream os) throws IOException {
+        EncodeBuffer buffer = BUFFER.get();
+        buffer.reset();
+        buffer.writeByte('[');
+        boolean first = true;
+        for (LogEntry entry : entries) {
+            if (!first) {
+                buffer.writeByte(',');
+            }
+            first = false;
+            writeEntry(entry, buffer);
+            // Flush periodically so large exports do not grow the buffer unbounded
+            if (buffer.length() >= 32 * 1024) {
+                buffer.writeTo(os);
+                buffer.reset();
+            }
+        }
+        buffer.writeByte(']');
+        buffer.writeTo(os);
+    }
+
+    /**
+     * Writes the JSON object for a single log entry into the buffer.
+     *
+     * @param entry  The log entry.
+     * @param buffer The destination buffer.
+     */
+    public static void writeEntry(LogEntry entry, EncodeBuffer buffer) {
+        buffer.writeAscii("{\"level\":");
+        writeString(entry.getLevel().toString(), buffer);
+        buffer.writeAscii(",\"time\":");
+        buffer.writeDecimal(entry.getTime());
+        buffer.writeAscii(",\"message\":");
+        writeString(entry.getMessage(), buffer);
+
+        buffer.writeAscii(",\"tags\":[");
+        List<String> tags = entry.getTags();
+        if (tags != null) {
+            for (int i = 0; i < tags.size(); i++) {
+                if (i > 0) {
+                    buffer.writeByte(',');
+                }
+                writeString(tags.get(i), buffer);
+            }
+        }
+        buffer.writeByte(']');
+
+        ContextMap context = entry.getContext();
+        if (!context.isEmpty()) {
+            buffer.writeAscii(",\"context\":{");
+            for (int i = 0; i < context.size(); i++) {
+                if (i > 0) {
+                    buffer.writeByte(',');
+                }
+                writeString(context.keyAt(i), buffer);
+                buffer.writeByte(':');
+                writeString(context.valueAt(i), buffer);
+            }
+            buffer.writeByte('}');
+        }
+
+        CallerInfo caller = entry.getCallerInfo();
+        if (caller != null) {
+            buffer.writeAscii(",\"caller\":{\"className\":");
+            writeString(caller.getClassName(), buffer);
+            buffer.writeAscii(",\"methodName\":");
+            writeString(caller.getMethodName(), buffer);
+            buffer.writeAscii(",\"nativeMethod\":");
+            buffer.writeAscii(caller.isNativeMethod() ? "true" : "false");
+            writeOptionalField("moduleName", caller.getModuleName(), buffer);
+            writeOptionalField("moduleVersion", caller.getModuleVersion(), buffer);
+            writeOptionalField("classLoaderName", caller.getClassLoaderName(), buffer);
+            writeOptionalField("threadName", caller.getThreadName(), buffer);
+            buffer.writeAscii(",\"fileName\":");
+            writeString(caller.getFileName(), buffer);
+            buffer.writeAscii(",\"lineNumber\":");
+            buffer.writeDecimal(caller.getLineNumber());
+            buffer.writeByte('}');
+        }
+        buffer.writeByte('}');
+    }
+
+    private static void writeOptionalField(String name, String value, EncodeBuffer buffer) {
+        if (value != null && !value.isEmpty()) {
+            buffer.writeAscii(",\"");
+            buffer.writeAscii(name);
+            buffer.writeAscii("\":");
+            writeString(value, buffer);
+        }
+    }
+
+    /**
+     * Writes a JSON string literal with escaping, or {@code null} if the value is null.
+     *
+     * @param s      The string to write.
+     * @param buffer The destination buffer.
+     */
+    public static void writeString(String s, EncodeBuffer buffer) {
+        if (s == null) {
+            buffer.writeAscii("null");
+            return;
+        }
+        buffer.writeByte('"');
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                buffer.writeByte(c);
+                continue;
+            }
+            switch (c) {
+                case '"':
+                    buffer.writeAscii("\\\"");
+                    break;
+                case '\\':
+                    buffer.writeAscii("\\\\");
+                    break;
+                case '\n':
+                    buffer.writeAscii("\\n");
+                    break;
+                case '\r':
+                    buffer.writeAscii("\\r");
+                    break;
+                case '\t':
+                    buffer.writeAscii("\\t");
+                    break;
+                case '\b':
+                    buffer.writeAscii("\\b");
+                    break;
+                case '\f':
+                    buffer.writeAscii("\\f");
+                    break;
+                case '\u2028':
+                case '\u2029':
+                    writeUnicodeEscape(c, buffer);
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writeUnicodeEscape(c, buffer);
+                    } else {
+                        i = buffer.writeNonAscii(s, i, c);
+                    }
+            }
+        }
+        buffer.writeByte('"');
+    }
+
+    private static void writeUnicodeEscape(char c, EncodeBuffer buffer) {
+        buffer.writeAscii("\\u");
+        buffer.writeByte(HEX[(c >> 12) & 0xF]);
+        buffer.writeByte(HEX[(c >> 8) & 0xF]);
+        buffer.writeByte(HEX[(c >> 4) & 0xF]);
+        buffer.writeByte(HEX[c & 0xF]);
+    }
+}
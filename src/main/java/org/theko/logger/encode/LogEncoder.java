@@ -0,0 +1,51 @@
+package org.theko.logger.encode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.theko.logger.LogEntry;
+
+/**
+ * Serializes log entries into a byte representation and writes them to an output stream.
+ * Outputs that have an encoder assigned bypass pattern formatting entirely.
+ */
+public interface LogEncoder {
+    /**
+     * Encodes the log entry and writes the resulting bytes to the output stream.
+     * Implementations should issue a single write per entry, so that entries
+     * from different threads are never interleaved.
+     *
+     * @param entry The log entry to encode.
+     * @param os    The output stream to write to.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    void encode(LogEntry entry, OutputStream os) throws IOException;
+
+    /**
+     * Encodes the log entry into a new byte array.
+     *
+     * @param entry The log entry to encode.
+     * @return The encoded bytes.
+     */
+    default byte[] toBytes(LogEntry entry) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        try {
+            encode(entry, bos);
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory encoding failed.", e);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Indicates whether the encoding of an entry depends on the entries written before it.
+     * Stateful encoders must write each entry directly to the stream, so they are excluded
+     * from batched writes.
+     *
+     * @return true if the encoder keeps state between entries.
+     */
+    default boolean isStateful() {
+        return false;
+    }
+}
@@ -0,0 +1,193 @@
+package org.theko.logger.encode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.theko.logger.CallerInfo;
+import org.theko.logger.ContextMap;
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogLevel;
+
+/**
+ * Binary encoder that writes every entry as a self-contained record: strings are inlined
+ * and times are absolute, so each record can be decoded on its own with {@link #decode(byte[], int, int)}.
+ * Records are larger than those of {@link BinaryLogEncoder}, but they can be read out of order
+ * or after older records were dropped, as journals and rings do. Records carry no length;
+ * the container frames them.
+ */
+public class RecordLogEncoder implements LogEncoder {
+    /** Shared stateless instance. */
+    public static final RecordLogEncoder INSTANCE = new RecordLogEncoder();
+
+    private static final ThreadLocal<EncodeBuffer> BUFFER = ThreadLocal.withInitial(EncodeBuffer::new);
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    /** Set if the caller fields are followed by the thread context. */
+    static final int FLAG_CONTEXT = 0x04;
+
+    @Override
+    public void encode(LogEntry entry, OutputStream os) throws IOException {
+        EncodeBuffer buffer = BUFFER.get();
+        buffer.reset();
+        encode(entry, buffer);
+        buffer.writeTo(os);
+    }
+
+    /**
+     * Appends the record of an entry to a buffer.
+     * Layout: level, time, message, tags, flags, then the caller fields and the thread context if present.
+     *
+     * @param entry The entry to encode.
+     * @param out   The buffer to append to.
+     */
+    public static void encode(LogEntry entry, EncodeBuffer out) {
+        out.writeByte(entry.getLevel().ordinal());
+        out.writeZigZag(entry.getTime());
+        writeString(out, entry.getMessage());
+        List<String> tags = entry.getTags();
+        out.writeVarLong(tags == null ? 0 : tags.size() + 1L);
+        if (tags != null) {
+            for (String tag : tags) {
+                writeString(out, tag);
+            }
+        }
+        CallerInfo caller = entry.getCallerInfo();
+        int flags = 0;
+        if (caller != null) {
+            flags = BinaryLogEncoder.FLAG_CALLER | (caller.isNativeMethod() ? BinaryLogEncoder.FLAG_NATIVE : 0);
+        }
+        ContextMap context = entry.getContext();
+        if (!context.isEmpty()) {
+            flags |= FLAG_CONTEXT;
+        }
+        out.writeByte(flags);
+        if (caller != null) {
+            writeString(out, caller.getClassName());
+            writeString(out, caller.getMethodName());
+            writeString(out, caller.getModuleName());
+            writeString(out, caller.getModuleVersion());
+            writeString(out, caller.getClassLoaderName());
+            writeString(out, caller.getThreadName());
+            writeString(out, caller.getFileName());
+            out.writeZigZag(caller.getLineNumber());
+        }
+        if (!context.isEmpty()) {
+            out.writeVarLong(context.size());
+            for (int i = 0; i < context.size(); i++) {
+                writeString(out, context.keyAt(i));
+                writeString(out, context.valueAt(i));
+            }
+        }
+    }
+
+    /**
+     * Decodes a record.
+     *
+     * @param data   The buffer holding the record.
+     * @param offset The offset of the record.
+     * @param length The length of the record.
+     * @return The decoded entry.
+     * @throws IllegalArgumentException If the bytes are not a valid record.
+     */
+    public static LogEntry decode(byte[] data, int offset, int length) {
+        Decoder in = new Decoder(data, offset, offset + length);
+        try {
+            int level = in.readByte();
+            if (level >= LEVELS.length) {
+                throw new IllegalArgumentException("Unknown log level: " + level);
+            }
+            long time = in.readZigZag();
+            String message = in.readString();
+            long tagCount = in.readVarLong();
+            List<String> tags = null;
+            if (tagCount > 0) {
+                tags = new ArrayList<>((int) Math.min(tagCount - 1, 64));
+                for (long i = 1; i < tagCount; i++) {
+                    tags.add(in.readString());
+                }
+            }
+            int flags = in.readByte();
+            CallerInfo caller = null;
+            if ((flags & BinaryLogEncoder.FLAG_CALLER) != 0) {
+                caller = new CallerInfo(in.readString(), in.readString(), (flags & BinaryLogEncoder.FLAG_NATIVE) != 0,
+                        in.readString(), in.readString(), in.readString(), in.readString(), in.readString(), (int) in.readZigZag());
+            }
+            ContextMap context = ContextMap.EMPTY;
+            if ((flags & FLAG_CONTEXT) != 0) {
+                long size = in.readVarLong();
+                for (long i = 0; i < size; i++) {
+                    String key = in.readString();
+                    String value = in.readString();
+                    if (key == null) {
+                        throw new IllegalArgumentException("Context key cannot be null.");
+                    }
+                    context = context.with(key, value);
+                }
+            }
+            return new LogEntry(LEVELS[level], time, caller, message, tags, context);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated log record.", e);
+        }
+    }
+
+    private static void writeString(EncodeBuffer out, String s) {
+        if (s == null) {
+            out.writeVarLong(0);
+            return;
+        }
+        out.writeVarLong(EncodeBuffer.utf8Length(s) + 1L);
+        out.writeUtf8(s);
+    }
+
+    private static final class Decoder {
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        Decoder(byte[] data, int position, int end) {
+            this.data = data;
+            this.position = position;
+            this.end = end;
+        }
+
+        int readByte() {
+            if (position >= end) {
+                throw new IndexOutOfBoundsException();
+            }
+            return data[position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b < 0x80) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed variable-length integer.");
+        }
+
+        long readZigZag() {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String readString() {
+            long length = readVarLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > end - position) {
+                throw new IndexOutOfBoundsException();
+            }
+            String s = new String(data, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.theko.logger.filter;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.theko.logger.CallerInfo;
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogLevel;
+
+/**
+ * Collapses bursts of the same message, logged at the same level and call site, into one summary entry.
+ * <p>
+ * The first entry of a burst is written as usual and the repeats are held back. Once no repeat came
+ * for the window, the burst has ended and a "Repeated N times" entry with the count and time span is
+ * written, at the level, call site and tags of the burst. A burst ends when the same message comes
+ * again after the window, when {@link #flushExpired} finds it, or when everything is flushed.
+ * <p>
+ * At most {@code maxKeys} bursts are tracked; when that many are running, further messages are
+ * written without being deduplicated.
+ */
+public class BurstDeduplicator {
+    public static final long DEFAULT_WINDOW_MS = 1000;
+    public static final int DEFAULT_MAX_KEYS = 1024;
+
+    private final long windowMs;
+    private final int maxKeys;
+    private final Map<Key, Burst> bursts = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a deduplicator.
+     *
+     * @param windowMs How long after the last repeat a burst ends, in milliseconds.
+     * @param maxKeys  The maximum number of bursts tracked at once.
+     */
+    public BurstDeduplicator(long windowMs, int maxKeys) {
+        if (windowMs < 1 || maxKeys < 1) {
+            throw new IllegalArgumentException("Window and max keys must be at least 1.");
+        }
+        this.windowMs = windowMs;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Constructs a deduplicator with a window of one second.
+     */
+    public BurstDeduplicator() {
+        this(DEFAULT_WINDOW_MS, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * Checks whether an entry is written or held back as a repeat.
+     *
+     * @param entry     The log entry.
+     * @param summaries Receives the summary of a burst the entry ends, before the entry itself is written.
+     * @return true if the entry is written, false if it is a repeat.
+     */
+    public boolean accept(LogEntry entry, Consumer<LogEntry> summaries) {
+        Key key = new Key(entry);
+        while (true) {
+            Burst burst = bursts.get(key);
+            if (burst == null) {
+                if (bursts.size() >= maxKeys) {
+                    flushExpired(entry.getTime(), summaries);
+                    if (bursts.size() >= maxKeys) {
+                        return true; // Too many bursts running to track another one
+                    }
+                }
+                burst = new Burst(entry);
+                if (bursts.putIfAbsent(key, burst) == null) {
+                    return true; // First occurrence
+                }
+                continue;
+            }
+            LogEntry summary = null;
+            synchronized (burst) {
+                if (burst.ended) {
+                    continue; // Flushed meanwhile; start a new one
+                }
+                if (entry.getTime() - burst.last <= windowMs) {
+                    burst.repeats++;
+                    burst.last = Math.max(burst.last, entry.getTime());
+                    return false;
+                }
+                if (burst.repeats > 0) {
+                    summary = burst.summary();
+                }
+                burst.restart(entry);
+            }
+            if (summary != null) {
+                summaries.accept(summary); // Outside the lock, as it writes to the outputs
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Ends the bursts without a repeat for the window and hands their summaries over.
+     *
+     * @param now       The current time in milliseconds.
+     * @param summaries Receives the summaries.
+     */
+    public void flushExpired(long now, Consumer<LogEntry> summaries) {
+        flush(now - windowMs, summaries);
+    }
+
+    /**
+     * Ends all bursts and hands their summaries over, such as on shutdown.
+     *
+     * @param summaries Receives the summaries.
+     */
+    public void flushAll(Consumer<LogEntry> summaries) {
+        flush(Long.MAX_VALUE, summaries);
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    private void flush(long lastBefore, Consumer<LogEntry> summaries) {
+        for (Map.Entry<Key, Burst> mapping : bursts.entrySet()) {
+            Burst burst = mapping.getValue();
+            LogEntry summary = null;
+            synchronized (burst) {
+                if (burst.ended || burst.last > lastBefore) {
+                    continue;
+                }
+                burst.ended = true;
+                if (burst.repeats > 0) {
+                    summary = burst.summary();
+                }
+                bursts.remove(mapping.getKey(), burst); // Under the lock, so an accept that finds it ended retries once
+            }
+            if (summary != null) {
+                summaries.accept(summary);
+            }
+        }
+    }
+
+    private static final class Burst {
+        private LogEntry first;
+        private long last;
+        private long repeats;
+        private boolean ended;
+
+        Burst(LogEntry first) {
+            restart(first);
+        }
+
+        void restart(LogEntry entry) {
+            this.first = entry;
+            this.last = entry.getTime();
+            this.repeats = 0;
+        }
+
+        LogEntry summary() {
+            return new LogEntry(first.getLevel(), last, first.getCallerInfo(),
+                    "Repeated " + repeats + " times in " + (last - first.getTime()) + " ms: " + first.getMessage(),
+                    first.getTags(), first.getContext());
+        }
+    }
+
+    private static final class Key {
+        private final LogLevel level;
+        private final String message;
+        private final String className;
+        private final String methodName;
+        private final int line;
+        private final int hash;
+
+        Key(LogEntry entry) {
+            CallerInfo caller = entry.getCallerInfo();
+            this.level = entry.getLevel();
+            this.message = entry.getMessage();
+            this.className = caller != null ? caller.getClassName() : null;
+            this.methodName = caller != null ? caller.getMethodName() : null;
+            this.line = caller != null ? caller.getLineNumber() : -1;
+            this.hash = ((level.hashCode() * 31 + Objects.hashCode(message)) * 31 + Objects.hashCode(className)) * 31 + line;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && level == other.level && line == other.line && Objects.equals(message, other.message)
+                    && Objects.equals(className, other.className) && Objects.equals(methodName, other.methodName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.theko.logger.filter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.theko.logger.LogEntry;
+
+/**
+ * Filters that an entry must all pass. They run cheapest first and stop at the first that rejects the
+ * entry, before it is formatted; filters of the same cost keep their order.
+ */
+public class FilterChain implements LogFilter {
+    private final LogFilter[] filters;
+
+    /**
+     * Constructs a chain.
+     *
+     * @param filters The filters, in configuration order.
+     */
+    public FilterChain(List<LogFilter> filters) {
+        if (filters == null || filters.contains(null)) {
+            throw new IllegalArgumentException("Filters cannot be null.");
+        }
+        LogFilter[] sorted = filters.toArray(new LogFilter[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(LogFilter::getCost)); // Stable
+        this.filters = sorted;
+    }
+
+    /**
+     * Returns a filter for a list of filters: null for none, the filter itself for one, or a chain.
+     *
+     * @param filters The filters.
+     * @return The combined filter, or null.
+     */
+    public static LogFilter of(List<LogFilter> filters) {
+        if (filters.isEmpty()) {
+            return null;
+        }
+        return filters.size() == 1 ? filters.get(0) : new FilterChain(filters);
+    }
+
+    @Override
+    public boolean accept(LogEntry entry) {
+        for (LogFilter filter : filters) {
+            if (!filter.accept(entry)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void reportSuppressed(Consumer<LogEntry> report) {
+        for (LogFilter filter : filters) {
+            filter.reportSuppressed(report);
+        }
+    }
+
+    @Override
+    public int getCost() {
+        return filters.length == 0 ? COST_FIELD : filters[filters.length - 1].getCost();
+    }
+
+    public List<LogFilter> getFilters() {
+        return Arrays.asList(filters.clone());
+    }
+}
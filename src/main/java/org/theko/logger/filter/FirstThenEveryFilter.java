@@ -0,0 +1,46 @@
+package org.theko.logger.filter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.theko.logger.LogEntry;
+
+/**
+ * Writes the first entries of each call site or tag set, then only every Mth one,
+ * so a message repeated in a loop stays visible without flooding the output.
+ */
+public class FirstThenEveryFilter extends KeyedLogFilter<FirstThenEveryFilter.Counter> {
+    private final long first;
+    private final long every;
+
+    /**
+     * Constructs the filter.
+     *
+     * @param key     What entries are counted together.
+     * @param first   The number of entries written before thinning out.
+     * @param every   After those, one entry in this many is written.
+     * @param maxKeys The maximum number of counters kept.
+     */
+    public FirstThenEveryFilter(Key key, long first, long every, int maxKeys) {
+        super(key, maxKeys);
+        if (first < 0 || every < 1) {
+            throw new IllegalArgumentException("First cannot be negative and every must be at least 1.");
+        }
+        this.first = first;
+        this.every = every;
+    }
+
+    @Override
+    protected Counter newState() {
+        return new Counter();
+    }
+
+    @Override
+    protected boolean accept(Counter counter, LogEntry entry) {
+        long n = counter.count.incrementAndGet();
+        return n <= first || (n - first) % every == 0;
+    }
+
+    static final class Counter extends KeyedLogFilter.State {
+        final AtomicLong count = new AtomicLong();
+    }
+}
@@ -0,0 +1,230 @@
+package org.theko.logger.filter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.theko.logger.CallerInfo;
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogLevel;
+
+/**
+ * Base of the filters that keep state per call site or per tag set, and count what they suppress.
+ * <p>
+ * States live in a concurrent map bounded to a maximum number of keys. When it is full, the least
+ * recently used state of a small random sample is evicted, so call sites that stopped logging make room for
+ * new ones; what the evicted ones had suppressed is still reported. Suppressed entries are reported per
+ * key, at the highest level suppressed and with the caller of the last suppressed entry.
+ *
+ * @param <S> The type of the per-key state.
+ */
+public abstract class KeyedLogFilter<S extends KeyedLogFilter.State> implements LogFilter {
+    public static final int DEFAULT_MAX_KEYS = 4096;
+    private static final int EVICTION_SAMPLE = 8;
+
+    /**
+     * What entries share a state.
+     */
+    public enum Key {
+        /** Entries logged at the same class, method and line. */
+        CALL_SITE,
+        /** Entries with the same tags. */
+        TAGS,
+        /** All entries. */
+        NONE
+    }
+
+    private final Key key;
+    private final int maxKeys;
+    private final Map<Object, S> states = new ConcurrentHashMap<>();
+    private final Object[] slots; // Key of each state, for sampling; only changed with new keys, under its lock
+    private final AtomicLong evictedSuppressed = new AtomicLong();
+    private volatile LogEntry lastEvicted; // Last entry suppressed at an evicted key, for the caller of the report
+
+    /**
+     * @param key     What entries share a state.
+     * @param maxKeys The maximum number of states kept.
+     */
+    protected KeyedLogFilter(Key key, int maxKeys) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null.");
+        }
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("Max keys must be at least 1.");
+        }
+        this.key = key;
+        this.maxKeys = maxKeys;
+        this.slots = new Object[maxKeys];
+    }
+
+    /**
+     * Creates the state of a key seen for the first time.
+     */
+    protected abstract S newState();
+
+    /**
+     * Checks whether an entry passes, updating the state of its key.
+     *
+     * @param state The state of the entry's key.
+     * @param entry The log entry.
+     * @return true if the entry is written.
+     */
+    protected abstract boolean accept(S state, LogEntry entry);
+
+    @Override
+    public boolean accept(LogEntry entry) {
+        S state = state(keyOf(entry));
+        state.lastUsed = System.nanoTime();
+        if (accept(state, entry)) {
+            return true;
+        }
+        state.maxSuppressedLevel.accumulateAndGet(entry.getLevel().ordinal(), Math::max);
+        state.lastSuppressed = entry; // Set before the count, so a counted entry always has one to report
+        state.suppressed.incrementAndGet();
+        if (state.evicted) {
+            // Evicted while this was counted; either the eviction took the count or it is moved here
+            long moved = state.suppressed.getAndSet(0);
+            if (moved > 0) {
+                lastEvicted = entry;
+                evictedSuppressed.addAndGet(moved);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void reportSuppressed(Consumer<LogEntry> report) {
+        for (S state : states.values()) {
+            LogEntry last = state.lastSuppressed;
+            long count = state.suppressed.getAndSet(0);
+            int level = state.maxSuppressedLevel.getAndSet(0);
+            if (count > 0 && last != null) {
+                report.accept(new LogEntry(LogLevel.values()[level], System.currentTimeMillis(), last.getCallerInfo(),
+                        "Suppressed " + count + " entries like: " + last.getMessage(), last.getTags(), last.getContext()));
+            }
+        }
+        long evicted = evictedSuppressed.getAndSet(0);
+        LogEntry last = lastEvicted;
+        if (evicted > 0 && last != null) {
+            report.accept(new LogEntry(LogLevel.WARN, System.currentTimeMillis(), last.getCallerInfo(),
+                    "Suppressed " + evicted + " entries at keys no longer tracked", last.getTags(), last.getContext()));
+        }
+    }
+
+    /**
+     * Returns the number of keys with a state.
+     *
+     * @return The number of tracked keys.
+     */
+    public int getTrackedKeys() {
+        return states.size();
+    }
+
+    private S state(Object key) {
+        S state = states.get(key);
+        if (state != null) {
+            return state;
+        }
+        synchronized (slots) { // New keys are rare, and adding them one at a time keeps the bound exact
+            state = states.get(key);
+            if (state != null) {
+                return state;
+            }
+            int slot = states.size();
+            if (slot >= maxKeys) {
+                slot = evict();
+            }
+            state = newState();
+            state.slot = slot;
+            state.lastUsed = System.nanoTime();
+            slots[slot] = key;
+            states.put(key, state);
+            return state;
+        }
+    }
+
+    /**
+     * Evicts the least recently used state of a random sample of the map.
+     *
+     * @return The slot freed.
+     */
+    private int evict() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        S oldest = null;
+        for (int i = 0; i < EVICTION_SAMPLE; i++) {
+            S candidate = states.get(slots[random.nextInt(maxKeys)]);
+            if (oldest == null || candidate.lastUsed < oldest.lastUsed) {
+                oldest = candidate;
+            }
+        }
+        states.remove(slots[oldest.slot]);
+        oldest.evicted = true; // Before the count is taken, so accept moves what it counts after
+        long count = oldest.suppressed.getAndSet(0);
+        if (count > 0) {
+            lastEvicted = oldest.lastSuppressed;
+            evictedSuppressed.addAndGet(count);
+        }
+        return oldest.slot;
+    }
+
+    private Object keyOf(LogEntry entry) {
+        switch (key) {
+            case CALL_SITE:
+                CallerInfo caller = entry.getCallerInfo();
+                return caller == null ? CallSite.UNKNOWN : new CallSite(caller.getClassName(), caller.getMethodName(), caller.getLineNumber());
+            case TAGS:
+                List<String> tags = entry.getTags();
+                return tags == null ? CallSite.UNKNOWN : tags;
+            default:
+                return CallSite.UNKNOWN;
+        }
+    }
+
+    /**
+     * The state of a key. Subclasses add what their decision needs.
+     */
+    public static class State {
+        final AtomicLong suppressed = new AtomicLong();
+        final AtomicInteger maxSuppressedLevel = new AtomicInteger(); // Ordinal of the highest suppressed level
+        volatile long lastUsed;
+        volatile LogEntry lastSuppressed;
+        volatile boolean evicted;
+        int slot; // Index of the key in the slots, set before the state is published
+    }
+
+    private static final class CallSite {
+        static final CallSite UNKNOWN = new CallSite(null, null, -1);
+
+        private final String className;
+        private final String methodName;
+        private final int line;
+        private final int hash;
+
+        CallSite(String className, String methodName, int line) {
+            this.className = className;
+            this.methodName = methodName;
+            this.line = line;
+            this.hash = 31 * (31 * Objects.hashCode(className) + Objects.hashCode(methodName)) + line;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CallSite)) {
+                return false;
+            }
+            CallSite other = (CallSite) o;
+            return hash == other.hash && line == other.line && Objects.equals(className, other.className)
+                    && Objects.equals(methodName, other.methodName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
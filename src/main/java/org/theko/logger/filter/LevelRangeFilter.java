@@ -0,0 +1,38 @@
+package org.theko.logger.filter;
+
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogLevel;
+
+/**
+ * Accepts entries with a level between a minimum and a maximum, both included.
+ * Unlike the preferred level of an output, it can also cut off the levels above a range.
+ */
+public class LevelRangeFilter implements LogFilter {
+    private final int min;
+    private final int max;
+
+    /**
+     * Constructs a level range.
+     *
+     * @param min The lowest accepted level, or null for no lower bound.
+     * @param max The highest accepted level, or null for no upper bound.
+     */
+    public LevelRangeFilter(LogLevel min, LogLevel max) {
+        this.min = min != null ? min.ordinal() : 0;
+        this.max = max != null ? max.ordinal() : Integer.MAX_VALUE;
+        if (this.min > this.max) {
+            throw new IllegalArgumentException("Minimum level cannot be above the maximum level.");
+        }
+    }
+
+    @Override
+    public boolean accept(LogEntry entry) {
+        int level = entry.getLevel().ordinal();
+        return level >= min && level <= max;
+    }
+
+    @Override
+    public int getCost() {
+        return COST_FIELD;
+    }
+}
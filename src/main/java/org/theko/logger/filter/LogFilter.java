@@ -0,0 +1,47 @@
+package org.theko.logger.filter;
+
+import java.util.function.Consumer;
+
+import org.theko.logger.LogEntry;
+
+/**
+ * Decides whether an entry is written to an output, after the output's level accepted it.
+ * Filters are set per output or per routing rule and are called concurrently, so they must be thread-safe.
+ */
+public interface LogFilter {
+    /** Cost of filters that compare a field, such as the level. */
+    int COST_FIELD = 0;
+    /** Cost of filters that look up sets or tries. */
+    int COST_LOOKUP = 1;
+    /** Cost of filters that match regular expressions. */
+    int COST_REGEX = 2;
+    /** Cost of filters that keep state, such as rate limits, which see entries after all others. */
+    int COST_STATEFUL = 3;
+
+    /**
+     * Checks whether an entry passes the filter.
+     *
+     * @param entry The log entry.
+     * @return true if the entry is written, false if it is suppressed.
+     */
+    boolean accept(LogEntry entry);
+
+    /**
+     * Hands entries that report what the filter suppressed since the last call.
+     * {@link org.theko.logger.LoggerOutput} calls this periodically and writes them past the filter.
+     *
+     * @param report Receives the report entries.
+     */
+    default void reportSuppressed(Consumer<LogEntry> report) {
+    }
+
+    /**
+     * Returns how costly the filter is. A {@link FilterChain} runs cheaper filters first, so stateful
+     * filters keep the default: they then only count entries that all other filters let through.
+     *
+     * @return One of the COST constants.
+     */
+    default int getCost() {
+        return COST_STATEFUL;
+    }
+}
@@ -0,0 +1,38 @@
+package org.theko.logger.filter;
+
+import java.util.regex.Pattern;
+
+import org.theko.logger.LogEntry;
+
+/**
+ * Accepts entries whose message contains a match of a regular expression, or, when excluding, rejects them.
+ */
+public class MessageFilter implements LogFilter {
+    private final Pattern pattern;
+    private final boolean exclude;
+
+    /**
+     * Constructs a message filter.
+     *
+     * @param regex   The regular expression searched for in the message.
+     * @param exclude Whether matching entries are rejected rather than accepted.
+     */
+    public MessageFilter(String regex, boolean exclude) {
+        if (regex == null) {
+            throw new IllegalArgumentException("Regex cannot be null.");
+        }
+        this.pattern = Pattern.compile(regex);
+        this.exclude = exclude;
+    }
+
+    @Override
+    public boolean accept(LogEntry entry) {
+        String message = entry.getMessage();
+        return (message != null && pattern.matcher(message).find()) != exclude;
+    }
+
+    @Override
+    public int getCost() {
+        return COST_REGEX;
+    }
+}
@@ -0,0 +1,115 @@
+package org.theko.logger.filter;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.theko.logger.CallerInfo;
+import org.theko.logger.LogEntry;
+
+/**
+ * Accepts entries by the class that logged them, given packages or classes to include and exclude.
+ * A name covers itself and everything below it ("com.example" covers "com.example.db.Pool" but not
+ * "com.examples.Foo"); "com.example.*" is the same as "com.example". The most specific name that
+ * covers a class decides, so a package can be included and one of its subpackages excluded.
+ * Classes no name covers are accepted only if nothing is included.
+ * <p>
+ * The names are kept in a character trie, so a class is matched in one pass over its name.
+ */
+public class PackageFilter implements LogFilter {
+    private static final byte UNSET = 0;
+    private static final byte INCLUDED = 1;
+    private static final byte EXCLUDED = 2;
+
+    private final Node root = new Node();
+    private final boolean acceptUncovered;
+
+    /**
+     * Constructs a package filter.
+     *
+     * @param include The packages or classes to accept entries of, or empty to accept all others.
+     * @param exclude The packages or classes to reject entries of.
+     */
+    public PackageFilter(Collection<String> include, Collection<String> exclude) {
+        if (include == null || exclude == null) {
+            throw new IllegalArgumentException("Packages cannot be null.");
+        }
+        for (String name : include) {
+            insert(name, INCLUDED);
+        }
+        for (String name : exclude) {
+            insert(name, EXCLUDED);
+        }
+        this.acceptUncovered = include.isEmpty();
+    }
+
+    @Override
+    public boolean accept(LogEntry entry) {
+        CallerInfo caller = entry.getCallerInfo();
+        String className = caller != null ? caller.getClassName() : null;
+        if (className == null) {
+            return acceptUncovered;
+        }
+        byte verdict = UNSET;
+        Node node = root;
+        int length = className.length();
+        for (int i = 0; i < length && node != null; i++) {
+            node = node.child(className.charAt(i));
+            if (node != null && node.verdict != UNSET && (i + 1 == length || isSeparator(className.charAt(i + 1)))) {
+                verdict = node.verdict; // A whole package or class name, deeper ones override
+            }
+        }
+        return verdict == UNSET ? acceptUncovered : verdict == INCLUDED;
+    }
+
+    @Override
+    public int getCost() {
+        return COST_LOOKUP;
+    }
+
+    private void insert(String name, byte verdict) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Package name cannot be empty.");
+        }
+        if (name.endsWith(".*")) {
+            name = name.substring(0, name.length() - 2);
+        }
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.childOrCreate(name.charAt(i));
+        }
+        node.verdict = verdict; // Excludes are inserted last, so they win over an include of the same name
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '.' || c == '$';
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private byte verdict = UNSET;
+
+        Node child(char c) {
+            char[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                int n = keys.length;
+                keys = Arrays.copyOf(keys, n + 1);
+                children = Arrays.copyOf(children, n + 1);
+                keys[n] = c;
+                children[n] = child;
+            }
+            return child;
+        }
+    }
+}
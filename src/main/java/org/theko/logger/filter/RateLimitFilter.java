@@ -0,0 +1,61 @@
+package org.theko.logger.filter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.theko.logger.LogEntry;
+
+/**
+ * Limits the rate of entries per call site or per tag set with a token bucket: a key can log
+ * {@code burst} entries at once, then {@code perSecond} entries a second.
+ * <p>
+ * The bucket is kept as the time its next token is due (the generic cell rate algorithm), so taking
+ * a token is a single compare-and-set and needs no refill thread.
+ */
+public class RateLimitFilter extends KeyedLogFilter<RateLimitFilter.Bucket> {
+    private final long interval; // Nanoseconds per token
+    private final long tolerance; // How far ahead of now the due time may run
+
+    /**
+     * Constructs a rate limit.
+     *
+     * @param key       What entries share a bucket.
+     * @param perSecond The sustained number of entries per second.
+     * @param burst     The number of entries logged at once before the rate applies.
+     * @param maxKeys   The maximum number of buckets kept.
+     */
+    public RateLimitFilter(Key key, double perSecond, int burst, int maxKeys) {
+        super(key, maxKeys);
+        if (!(perSecond > 0)) {
+            throw new IllegalArgumentException("Rate must be positive.");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least 1.");
+        }
+        this.interval = Math.max(1, (long) (1_000_000_000L / perSecond));
+        this.tolerance = interval * (burst - 1);
+    }
+
+    @Override
+    protected Bucket newState() {
+        return new Bucket();
+    }
+
+    @Override
+    protected boolean accept(Bucket bucket, LogEntry entry) {
+        long now = System.nanoTime();
+        while (true) {
+            long due = bucket.due.get();
+            long start = due == Long.MIN_VALUE ? now : Math.max(due, now);
+            if (start - now > tolerance) {
+                return false;
+            }
+            if (bucket.due.compareAndSet(due, start + interval)) {
+                return true;
+            }
+        }
+    }
+
+    static final class Bucket extends KeyedLogFilter.State {
+        final AtomicLong due = new AtomicLong(Long.MIN_VALUE); // When the next token is due, in nanoTime
+    }
+}
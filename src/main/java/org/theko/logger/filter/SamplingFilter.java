@@ -0,0 +1,52 @@
+package org.theko.logger.filter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.theko.logger.LogEntry;
+
+/**
+ * Writes a random sample of the entries, each with the same probability.
+ */
+public class SamplingFilter implements LogFilter {
+    private final double probability;
+    private final AtomicLong suppressed = new AtomicLong();
+    private volatile LogEntry lastSuppressed;
+
+    /**
+     * Constructs a sampling filter.
+     *
+     * @param probability The probability an entry is written, from 0 to 1.
+     */
+    public SamplingFilter(double probability) {
+        if (!(probability >= 0 && probability <= 1)) {
+            throw new IllegalArgumentException("Probability must be between 0 and 1.");
+        }
+        this.probability = probability;
+    }
+
+    @Override
+    public boolean accept(LogEntry entry) {
+        if (ThreadLocalRandom.current().nextDouble() < probability) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        lastSuppressed = entry;
+        return false;
+    }
+
+    @Override
+    public void reportSuppressed(Consumer<LogEntry> report) {
+        long count = suppressed.getAndSet(0);
+        LogEntry last = lastSuppressed;
+        if (count > 0 && last != null) {
+            report.accept(new LogEntry(last.getLevel(), System.currentTimeMillis(), last.getCallerInfo(),
+                    "Sampling suppressed " + count + " entries", last.getTags(), last.getContext()));
+        }
+    }
+
+    public double getProbability() {
+        return probability;
+    }
+}
@@ -0,0 +1,62 @@
+package org.theko.logger.filter;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.theko.logger.LogEntry;
+import org.theko.logger.TagDictionary;
+import org.theko.logger.TagSet;
+
+/**
+ * Accepts entries by their tags: an entry must have one of the included tags, if any are given,
+ * and none of the excluded ones. Both sets are kept as bitsets over the ids of the {@link TagDictionary}.
+ */
+public class TagFilter implements LogFilter {
+    private final BitSet include = new BitSet();
+    private final BitSet exclude = new BitSet();
+
+    /**
+     * Constructs a tag filter.
+     *
+     * @param include The tags of which an entry must have one, or empty to accept entries with any tags.
+     * @param exclude The tags an entry must not have.
+     */
+    public TagFilter(Collection<String> include, Collection<String> exclude) {
+        if (include == null || exclude == null) {
+            throw new IllegalArgumentException("Tags cannot be null.");
+        }
+        for (String tag : include) {
+            this.include.set(internOrFail(tag));
+        }
+        for (String tag : exclude) {
+            this.exclude.set(internOrFail(tag));
+        }
+    }
+
+    @Override
+    public boolean accept(LogEntry entry) {
+        TagSet tags = entry.getTagSet();
+        boolean included = include.isEmpty();
+        for (int i = 0; i < tags.idCount(); i++) {
+            int id = tags.idAt(i); // Tags without an id are in neither set
+            if (exclude.get(id)) {
+                return false;
+            }
+            included |= include.get(id);
+        }
+        return included;
+    }
+
+    @Override
+    public int getCost() {
+        return COST_LOOKUP;
+    }
+
+    private static int internOrFail(String tag) {
+        int id = TagDictionary.intern(tag);
+        if (id < 0) {
+            throw new IllegalStateException("Tag dictionary is full.");
+        }
+        return id;
+    }
+}
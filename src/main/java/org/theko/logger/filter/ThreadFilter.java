@@ -0,0 +1,48 @@
+package org.theko.logger.filter;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.theko.logger.CallerInfo;
+import org.theko.logger.LogEntry;
+
+/**
+ * Accepts entries by the name of the thread that logged them, given exact names and/or a regular
+ * expression matching the whole name, or, when excluding, rejects those.
+ */
+public class ThreadFilter implements LogFilter {
+    private final Set<String> names;
+    private final Pattern pattern;
+    private final boolean exclude;
+
+    /**
+     * Constructs a thread filter.
+     *
+     * @param names   The thread names, may be empty.
+     * @param regex   A regular expression for the whole name, or null.
+     * @param exclude Whether entries of matching threads are rejected rather than accepted.
+     */
+    public ThreadFilter(Collection<String> names, String regex, boolean exclude) {
+        if (names == null || (names.isEmpty() && regex == null)) {
+            throw new IllegalArgumentException("Thread names or a regex must be given.");
+        }
+        this.names = new HashSet<>(names);
+        this.pattern = regex != null ? Pattern.compile(regex) : null;
+        this.exclude = exclude;
+    }
+
+    @Override
+    public boolean accept(LogEntry entry) {
+        CallerInfo caller = entry.getCallerInfo();
+        String thread = caller != null ? caller.getThreadName() : null;
+        boolean matches = thread != null && (names.contains(thread) || (pattern != null && pattern.matcher(thread).matches()));
+        return matches != exclude;
+    }
+
+    @Override
+    public int getCost() {
+        return pattern != null ? COST_REGEX : COST_LOOKUP;
+    }
+}
@@ -0,0 +1,39 @@
+package org.theko.logger.out;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Implemented by output streams that can write a batch of already-encoded entries in one operation.
+ * {@link org.theko.logger.LoggerOutput#processBatch(java.util.List)} uses it on the asynchronous path.
+ */
+public interface BatchWritable {
+    /**
+     * Writes all remaining bytes of the given buffers, in order.
+     * The buffers are consumed: their positions are advanced to their limits.
+     *
+     * @param entries The encoded entries, one buffer per entry.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    void writeBatch(ByteBuffer[] entries) throws IOException;
+
+    /**
+     * Writes the remaining bytes of a buffer to a plain output stream, consuming the buffer.
+     * Used as the fallback for streams that cannot write batches.
+     *
+     * @param entry The encoded entry.
+     * @param os    The stream to write to.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    static void writeTo(ByteBuffer entry, OutputStream os) throws IOException {
+        if (entry.hasArray()) {
+            os.write(entry.array(), entry.arrayOffset() + entry.position(), entry.remaining());
+            entry.position(entry.limit());
+        } else {
+            byte[] copy = new byte[entry.remaining()];
+            entry.get(copy);
+            os.write(copy);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.theko.logger.out;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the frames written by {@link BlockCompressedOutputStream} and streams the original bytes back.
+ * A truncated trailing frame, as left behind by a crash, is treated as the end of the stream.
+ * <p>
+ * Wrap it in a reader for text logs, or in a {@link org.theko.logger.encode.BinaryLogReader}
+ * for binary logs. Run from the command line, it decompresses files to standard output.
+ */
+public class BlockCompressedInputStream extends InputStream {
+    private final InputStream in;
+    private final Inflater inflater = new Inflater();
+    private final byte[] header = new byte[BlockCompressedOutputStream.FRAME_HEADER_SIZE];
+    private byte[] stored = new byte[0];
+    private byte[] block = new byte[0];
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    /**
+     * Constructs a reader over a stream of compressed frames.
+     *
+     * @param in The stream containing the frames.
+     */
+    public BlockCompressedInputStream(InputStream in) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 64 * 1024);
+    }
+
+    /**
+     * Checks whether the stream starts with a compressed frame, without consuming it.
+     *
+     * @param in A stream that supports mark/reset.
+     * @return true if the next bytes are a frame header.
+     * @throws IOException If the stream cannot be read.
+     */
+    public static boolean isCompressed(InputStream in) throws IOException {
+        in.mark(4);
+        byte[] magic = in.readNBytes(4);
+        in.reset();
+        return magic.length == 4 && readInt(magic, 0) == BlockCompressedOutputStream.FRAME_MAGIC;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !nextFrame()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !nextFrame()) {
+            return -1;
+        }
+        int count = Math.min(len, limit - position);
+        System.arraycopy(block, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    private boolean nextFrame() throws IOException {
+        while (!eof) {
+            int headerRead = in.readNBytes(header, 0, header.length);
+            if (headerRead < header.length) {
+                eof = true;
+                break;
+            }
+            if (readInt(header, 0) != BlockCompressedOutputStream.FRAME_MAGIC) {
+                throw new IOException("Invalid compressed frame header.");
+            }
+            int rawLength = readInt(header, 4);
+            int storedLength = readInt(header, 8);
+            if (rawLength < 0 || storedLength < 0 || storedLength > rawLength) {
+                throw new IOException("Corrupt compressed frame lengths.");
+            }
+            if (stored.length < storedLength) {
+                stored = new byte[storedLength];
+            }
+            if (in.readNBytes(stored, 0, storedLength) < storedLength) {
+                eof = true;  // Truncated tail frame
+                break;
+            }
+            if (block.length < rawLength) {
+                block = new byte[rawLength];
+            }
+            if (storedLength == rawLength) {
+                System.arraycopy(stored, 0, block, 0, rawLength);
+            } else {
+                inflate(storedLength, rawLength);
+            }
+            position = 0;
+            limit = rawLength;
+            if (limit > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void inflate(int storedLength, int rawLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(stored, 0, storedLength);
+        try {
+            int produced = 0;
+            while (produced < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(block, produced, rawLength - produced);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                produced += n;
+            }
+            if (produced != rawLength) {
+                throw new IOException("Corrupt compressed frame.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed frame.", e);
+        }
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: BlockCompressedInputStream file...");
+            return;
+        }
+        for (String file : args) {
+            try (InputStream is = new BlockCompressedInputStream(new FileInputStream(file))) {
+                is.transferTo(System.out);
+            }
+        }
+        System.out.flush();
+    }
+}
@@ -0,0 +1,196 @@
+package org.theko.logger.out;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream that accumulates bytes into fixed-size blocks and writes every full block
+ * as an independently decompressible frame. Compression runs on a shared background thread,
+ * so the writing thread only copies bytes into the open block.
+ * <p>
+ * Each frame consists of a 12-byte header (the "TKZF" magic, the raw length and the stored length,
+ * all big-endian ints) followed by the zlib-compressed block. Blocks that do not shrink are stored raw,
+ * which is signalled by equal raw and stored lengths. A crash therefore loses at most the open block
+ * and the frames still queued for compression. Use {@link BlockCompressedInputStream} to read frames back.
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    static final int FRAME_MAGIC = 0x544B5A46;  // "TKZF"
+    static final int FRAME_HEADER_SIZE = 12;
+
+    /** Full blocks allowed to wait for compression before writers are held back. */
+    private static final int MAX_PENDING_BLOCKS = 4;
+
+    private static final ExecutorService COMPRESSOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "theko-logger-compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final OutputStream target;
+    private final int blockSize;
+    private final Deflater deflater;  // Only used on the compressor thread
+    private final Semaphore pending = new Semaphore(MAX_PENDING_BLOCKS);
+    private final BlockingQueue<byte[]> freeBlocks = new ArrayBlockingQueue<>(MAX_PENDING_BLOCKS + 1);
+
+    private byte[] block;
+    private int blockLength;
+    private final byte[] frameBuffer;  // Only used on the compressor thread
+    private volatile IOException failure;
+    private boolean closed;
+
+    /**
+     * Constructs a block-compressed stream.
+     *
+     * @param target    The stream that receives the compressed frames.
+     * @param blockSize The uncompressed size of a block in bytes.
+     * @param level     The {@link Deflater} compression level (0-9).
+     */
+    public BlockCompressedOutputStream(OutputStream target, int blockSize, int level) {
+        if (target == null) {
+            throw new IllegalArgumentException("Target stream cannot be null.");
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be greater than 0.");
+        }
+        this.target = target;
+        this.blockSize = blockSize;
+        this.deflater = new Deflater(level);
+        this.block = new byte[blockSize];
+        this.frameBuffer = new byte[FRAME_HEADER_SIZE + blockSize + blockSize / 8 + 64];
+    }
+
+    /**
+     * Constructs a block-compressed stream with the default block size and compression level.
+     *
+     * @param target The stream that receives the compressed frames.
+     */
+    public BlockCompressedOutputStream(OutputStream target) {
+        this(target, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if (blockLength == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int count = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Seals the open block as a frame, waits until all frames are written, and flushes the target.
+     * Frequent flushes produce small frames, which compress worse.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        if (blockLength > 0) {
+            submitBlock();
+        }
+        awaitPending();
+        target.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            deflater.end();
+            target.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("Background compression failed.", e);
+        }
+    }
+
+    private void submitBlock() {
+        pending.acquireUninterruptibly();
+        final byte[] full = block;
+        final int length = blockLength;
+        byte[] next = freeBlocks.poll();
+        block = next != null ? next : new byte[blockSize];
+        blockLength = 0;
+
+        COMPRESSOR.execute(() -> {
+            try {
+                writeFrame(full, length);
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                freeBlocks.offer(full);
+                pending.release();
+            }
+        });
+    }
+
+    private void awaitPending() throws IOException {
+        pending.acquireUninterruptibly(MAX_PENDING_BLOCKS);
+        pending.release(MAX_PENDING_BLOCKS);
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("Background compression failed.", e);
+        }
+    }
+
+    private void writeFrame(byte[] data, int length) throws IOException {
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        int stored = 0;
+        int capacity = Math.min(frameBuffer.length - FRAME_HEADER_SIZE, length);
+        while (!deflater.finished() && stored < capacity) {
+            stored += deflater.deflate(frameBuffer, FRAME_HEADER_SIZE + stored, capacity - stored);
+        }
+
+        if (!deflater.finished() || stored >= length) {
+            // Incompressible block, store it raw
+            System.arraycopy(data, 0, frameBuffer, FRAME_HEADER_SIZE, length);
+            stored = length;
+        }
+        writeInt(frameBuffer, 0, FRAME_MAGIC);
+        writeInt(frameBuffer, 4, length);
+        writeInt(frameBuffer, 8, stored);
+        target.write(frameBuffer, 0, FRAME_HEADER_SIZE + stored);
+    }
+
+    private static void writeInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+}
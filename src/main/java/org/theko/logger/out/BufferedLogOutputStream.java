@@ -0,0 +1,187 @@
+package org.theko.logger.out;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A write buffer for log outputs with size- and time-triggered flushing.
+ * <p>
+ * Bytes are collected until the buffer is full, at which point they are written to the target
+ * in one call. Optionally, a shared flusher thread writes out whatever is buffered every
+ * flush interval, so idle outputs do not hold entries back indefinitely.
+ * Level-triggered flushing is configured on {@link org.theko.logger.LogOutputSettings}.
+ * <p>
+ * Writes never split across a buffer flush unless a single write is larger than the buffer,
+ * so entries reach the target whole. Streams that are still open when the JVM exits are
+ * flushed by a shutdown hook.
+ */
+public class BufferedLogOutputStream extends OutputStream implements BatchWritable {
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "theko-logger-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Set<BufferedLogOutputStream> OPEN_STREAMS = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (BufferedLogOutputStream stream : OPEN_STREAMS) {
+                stream.timedFlush();
+            }
+        }, "theko-logger-flusher-shutdown"));
+    }
+
+    private final OutputStream target;
+    private final boolean closeTarget;
+    private final byte[] buffer;
+    private int count;
+    private ScheduledFuture<?> flushTask;
+    private boolean closed;
+
+    /**
+     * Constructs a buffered log stream.
+     *
+     * @param target          The stream to write to.
+     * @param bufferSize      The buffer size in bytes; the buffer is written out when it fills up.
+     * @param flushIntervalMs The interval of the periodic flush in milliseconds, or 0 to disable it.
+     * @param closeTarget     Whether closing this stream also closes the target.
+     */
+    public BufferedLogOutputStream(OutputStream target, int bufferSize, long flushIntervalMs, boolean closeTarget) {
+        if (target == null) {
+            throw new IllegalArgumentException("Target stream cannot be null.");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be greater than 0.");
+        }
+        this.target = target;
+        this.closeTarget = closeTarget;
+        this.buffer = new byte[bufferSize];
+        if (flushIntervalMs > 0) {
+            this.flushTask = FLUSHER.scheduleWithFixedDelay(this::timedFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        OPEN_STREAMS.add(this);
+    }
+
+    /**
+     * Constructs a buffered log stream that owns its target.
+     *
+     * @param target          The stream to write to.
+     * @param bufferSize      The buffer size in bytes.
+     * @param flushIntervalMs The interval of the periodic flush in milliseconds, or 0 to disable it.
+     */
+    public BufferedLogOutputStream(OutputStream target, int bufferSize, long flushIntervalMs) {
+        this(target, bufferSize, flushIntervalMs, true);
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len > buffer.length - count) {
+            flushBuffer();
+            if (len >= buffer.length) {
+                // Larger than the whole buffer, skip the copy
+                target.write(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * Writes a batch of encoded entries. If the target supports batches, the buffer is written out
+     * first and the batch is passed through, so the entries are not copied into the buffer.
+     */
+    @Override
+    public synchronized void writeBatch(ByteBuffer[] entries) throws IOException {
+        ensureOpen();
+        if (target instanceof BatchWritable) {
+            flushBuffer();
+            ((BatchWritable) target).writeBatch(entries);
+            return;
+        }
+        for (ByteBuffer entry : entries) {
+            BatchWritable.writeTo(entry, this);
+        }
+    }
+
+    /**
+     * Returns the number of bytes waiting in the buffer.
+     *
+     * @return The buffered byte count.
+     */
+    public synchronized int getBufferedCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+        target.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        OPEN_STREAMS.remove(this);
+        try {
+            flushBuffer();
+            target.flush();
+        } finally {
+            closed = true;
+            if (closeTarget) {
+                target.close();
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            target.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private synchronized void timedFlush() {
+        if (closed || count == 0) {
+            return;
+        }
+        try {
+            flushBuffer();
+            target.flush();
+        } catch (IOException e) {
+            e.printStackTrace(); // Log the error to standard output
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.theko.logger.out;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file appender backed by a {@link FileChannel}.
+ * <p>
+ * Single writes behave like a {@link java.io.FileOutputStream} in append mode. Batches of encoded
+ * entries are written with gathering writes, so a whole batch usually costs one system call and
+ * is never copied into an intermediate buffer. Use it as a segment of a {@link RotatingFileOutputStream}
+ * to keep the usual rotation behaviour.
+ * <p>
+ * The file can be preallocated by filling it with zeros up to an expected size when it is opened,
+ * so later writes do not have to grow it. Entries then overwrite the zeros and the file is truncated
+ * to the written length on close. If the process dies before that, the zero padding stays;
+ * {@link org.theko.logger.encode.BinaryLogReader} skips it, and reopening a text log with
+ * preallocation cuts it off, like {@link MappedFileAppender} does.
+ */
+public class ChannelFileAppender extends OutputStream implements BatchWritable {
+    private final FileChannel channel;
+    private final boolean preallocated;
+
+    /**
+     * Opens the file for appending, creating it if necessary.
+     *
+     * @param file The file to append to.
+     * @throws IOException If the file cannot be opened.
+     */
+    public ChannelFileAppender(File file) throws IOException {
+        this(file, 0);
+    }
+
+    /**
+     * Opens the file for appending and preallocates it.
+     *
+     * @param file            The file to append to.
+     * @param preallocateSize The size to fill the file up to in bytes, or 0 to not preallocate.
+     * @throws IOException If the file cannot be opened or preallocated.
+     */
+    public ChannelFileAppender(File file, long preallocateSize) throws IOException {
+        if (preallocateSize <= 0) {
+            this.channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.preallocated = false;
+            return;
+        }
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.preallocated = true;
+        try {
+            long length = MappedFileAppender.trimPadding(channel);
+            ByteBuffer zeros = ByteBuffer.allocateDirect(64 * 1024);
+            for (long position = length; position < preallocateSize; ) {
+                zeros.clear().limit((int) Math.min(zeros.capacity(), preallocateSize - position));
+                position += channel.write(zeros, position);
+            }
+            channel.position(length);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void writeBatch(ByteBuffer[] entries) throws IOException {
+        int first = 0;
+        while (first < entries.length) {
+            channel.write(entries, first, entries.length - first);
+            // Gathering writes may be partial, skip the buffers that were fully written
+            while (first < entries.length && !entries[first].hasRemaining()) {
+                first++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the file, excluding the unused preallocated part.
+     *
+     * @return The file size in bytes.
+     * @throws IOException If the size cannot be determined.
+     */
+    public long size() throws IOException {
+        return preallocated ? channel.position() : channel.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            if (preallocated) {
+                channel.truncate(channel.position());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Forces written data to the storage device.
+     *
+     * @throws IOException If the channel cannot be forced.
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+}
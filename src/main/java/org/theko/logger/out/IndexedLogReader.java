@@ -0,0 +1,100 @@
+package org.theko.logger.out;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogOutputSettings;
+
+/**
+ * Reads the entries of a time range from a set of log files, using their {@link SegmentIndex}
+ * to skip what lies outside the range.
+ * <p>
+ * Files whose complete index has no chunk in the range are not opened. In pattern and JSON files,
+ * the reader seeks to the overlapping chunks and reads only those, plus any part the index does not
+ * cover, such as the end of a file that is still being written or was not closed properly.
+ * Binary files refer to a dictionary built up from their start, so they are read from the start
+ * whenever they may hold entries in the range. Files without an index are read as a whole.
+ * <pre>
+ * IndexedLogReader reader = new IndexedLogReader(rotatingStream.getSegmentFiles(), outputSettings);
+ * List&lt;LogEntry&gt; entries = reader.read(from, to);
+ * </pre>
+ */
+public class IndexedLogReader {
+    private final List<File> segments;
+    private final LogOutputSettings format;
+
+    /**
+     * Constructs a reader over log files.
+     *
+     * @param segments The log files, in the order their entries are reported.
+     * @param format   The output settings the files were written with, for the encoder or patterns.
+     */
+    public IndexedLogReader(List<File> segments, LogOutputSettings format) {
+        if (segments == null || format == null) {
+            throw new IllegalArgumentException("Segments and format cannot be null.");
+        }
+        this.segments = new ArrayList<>(segments);
+        this.format = format;
+    }
+
+    /**
+     * Reads the entries of a time range, in file order.
+     *
+     * @param from The start of the range in milliseconds, inclusive.
+     * @param to   The end of the range in milliseconds, inclusive.
+     * @return The entries in the range.
+     * @throws IOException If a file cannot be read.
+     */
+    public List<LogEntry> read(long from, long to) throws IOException {
+        List<LogEntry> entries = new ArrayList<>();
+        read(from, to, entries::add);
+        return entries;
+    }
+
+    /**
+     * Reads the entries of a time range, in file order, handing each to the consumer.
+     * Files removed by the retention policy while reading are skipped.
+     *
+     * @param from     The start of the range in milliseconds, inclusive.
+     * @param to       The end of the range in milliseconds, inclusive.
+     * @param consumer Receives the entries in the range.
+     * @throws IOException If a file cannot be read.
+     */
+    public void read(long from, long to, Consumer<LogEntry> consumer) throws IOException {
+        SegmentScanner scanner = new SegmentScanner(format);
+        SegmentScanner.EntryVisitor filter = (offset, entry) -> {
+            if (entry.getTime() >= from && entry.getTime() <= to) {
+                consumer.accept(entry);
+            }
+        };
+        for (File segment : segments) {
+            try {
+                readSegment(segment, from, to, scanner, filter);
+            } catch (FileNotFoundException e) {
+                if (segment.exists()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void readSegment(File segment, long from, long to, SegmentScanner scanner, SegmentScanner.EntryVisitor filter) throws IOException {
+        SegmentIndex index = SegmentIndex.read(segment);
+        if (index != null && !index.mayContain(from, to)) {
+            return;
+        }
+        try (InputStream in = SegmentScanner.open(segment)) {
+            List<long[]> ranges = index == null || !scanner.isSeekable()
+                    ? Collections.singletonList(new long[] { 0, Long.MAX_VALUE })
+                    : index.rangesFor(from, to);
+            scanner.scanRanges(in, 0, segment, index, ranges, filter);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.theko.logger.out;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream that opens the stream it writes to on the first write, so outputs that are
+ * configured but never used cost nothing at startup and leave no empty files behind.
+ * <p>
+ * It passes batches and time marks on to the opened stream if it supports them. Closing a stream
+ * that was never opened does nothing. If opening fails, the write fails, and the next write tries again.
+ */
+public class LazyOutputStream extends OutputStream implements BatchWritable, TimeIndexed {
+    private final Opener opener;
+    private volatile OutputStream out;
+    private boolean closed;
+
+    /**
+     * Constructs a stream that is opened on its first write.
+     *
+     * @param opener Opens the stream to write to.
+     */
+    public LazyOutputStream(Opener opener) {
+        if (opener == null) {
+            throw new IllegalArgumentException("Opener cannot be null.");
+        }
+        this.opener = opener;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        open().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        open().write(b, off, len);
+    }
+
+    @Override
+    public void writeBatch(ByteBuffer[] entries) throws IOException {
+        OutputStream out = open();
+        if (out instanceof BatchWritable) {
+            ((BatchWritable) out).writeBatch(entries);
+        } else {
+            for (ByteBuffer entry : entries) {
+                BatchWritable.writeTo(entry, out);
+            }
+        }
+    }
+
+    @Override
+    public void markEntry(long time) {
+        OutputStream out = openForMark();
+        if (out instanceof TimeIndexed) {
+            ((TimeIndexed) out).markEntry(time);
+        }
+    }
+
+    @Override
+    public void markBatch(long[] times) {
+        OutputStream out = openForMark();
+        if (out instanceof TimeIndexed) {
+            ((TimeIndexed) out).markBatch(times);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        OutputStream out = this.out;
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns whether the stream has been opened.
+     *
+     * @return true after the first successful write.
+     */
+    public boolean isOpened() {
+        return out != null;
+    }
+
+    /**
+     * Returns the opened stream.
+     *
+     * @return The stream, or null if it was not opened yet.
+     */
+    public OutputStream getDelegate() {
+        return out;
+    }
+
+    private OutputStream open() throws IOException {
+        OutputStream out = this.out;
+        if (out != null) {
+            return out;
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Stream is closed.");
+            }
+            if (this.out == null) {
+                this.out = opener.open();
+            }
+            return this.out;
+        }
+    }
+
+    /**
+     * Opens the stream for the time mark that precedes a write; a failure is left for the write to report.
+     */
+    private OutputStream openForMark() {
+        try {
+            return open();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Opens the stream a {@link LazyOutputStream} writes to.
+     */
+    public interface Opener {
+        OutputStream open() throws IOException;
+    }
+}
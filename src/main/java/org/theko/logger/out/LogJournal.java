@@ -0,0 +1,331 @@
+package org.theko.logger.out;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import org.theko.logger.LogEntry;
+import org.theko.logger.encode.EncodeBuffer;
+import org.theko.logger.encode.RecordLogEncoder;
+
+/**
+ * A memory-mapped write-ahead journal for entries that are queued but not written yet.
+ * <p>
+ * Each entry is appended as a {@link RecordLogEncoder} record before it is queued; once the outputs
+ * have written a batch, the records are committed. Records left uncommitted when the process dies
+ * are still in the file, and {@link #replay(Consumer)} hands them to the outputs on the next start.
+ * An append costs a memory copy, the operating system writes the pages back, so the journal
+ * survives a crash of the process but not necessarily of the machine.
+ * <p>
+ * The journal is a ring: records are stamped with their position, so records of an earlier lap and
+ * torn records are recognized on recovery. When it is full, appending waits for the next commit.
+ * Entries larger than the ring are queued without being journaled. An existing journal keeps its size.
+ */
+public class LogJournal implements Closeable {
+    public static final int MAGIC = 0x544B574A; // "TKWJ"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_CAPACITY = 16 * 1024 * 1024;
+
+    private static final int HEADER_SIZE = 32; // Magic, version, committed position, capacity
+    private static final int COMMITTED_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int RECORD_HEADER_SIZE = 16; // Length, checksum, position
+    private static final int RECORD_ALIGNMENT = 16;
+    private static final int UNJOURNALED = 0; // Length of a record that only keeps the count
+    private static final int WRAP = -1; // Length of the filler before the end of the ring
+
+    private final FileChannel channel;
+    private final long capacity;
+    private final EncodeBuffer buffer = new EncodeBuffer();
+    private final CRC32C checksum = new CRC32C();
+    private MappedByteBuffer map;
+    private long committed; // Position of the first uncommitted record
+    private long writePosition;
+    private int pending; // Uncommitted records
+    private boolean closed;
+
+    /**
+     * Opens a journal, creating it with the given capacity if the file does not hold one.
+     *
+     * @param file     The journal file.
+     * @param capacity The size of the ring in bytes, rounded down to a multiple of 16.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public LogJournal(File file, int capacity) throws IOException {
+        if (capacity < RECORD_ALIGNMENT * 64) {
+            throw new IllegalArgumentException("Journal capacity must be at least 1 KB.");
+        }
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long existing = readCapacity();
+            this.capacity = existing > 0 ? existing : capacity & -RECORD_ALIGNMENT;
+            this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + this.capacity);
+            if (existing > 0) {
+                recover();
+            } else {
+                initialize();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a journal, creating it with the default capacity if the file does not hold one.
+     *
+     * @param file The journal file.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public LogJournal(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Appends an entry, waiting for a commit if the journal is full. Does nothing once closed.
+     *
+     * @param entry The entry to append.
+     */
+    public synchronized void append(LogEntry entry) {
+        if (closed) {
+            return;
+        }
+        buffer.reset();
+        RecordLogEncoder.encode(entry, buffer);
+        int length = buffer.length();
+        long size = align(RECORD_HEADER_SIZE + length);
+        if (size > capacity) {
+            length = UNJOURNALED;
+            size = RECORD_HEADER_SIZE;
+        }
+        long remaining = capacity - writePosition % capacity;
+        long wrap = size > remaining ? remaining : 0;
+        boolean interrupted = false;
+        while (writePosition + wrap + size - committed > capacity && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true; // The entry is queued regardless, so keep the count in step
+            }
+            remaining = capacity - writePosition % capacity;
+            wrap = size > remaining ? remaining : 0;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (closed) {
+            return;
+        }
+        if (wrap > 0) {
+            writeRecordHeader(writePosition, WRAP, 0);
+            writePosition += wrap;
+        }
+        int offset = physical(writePosition);
+        int crc = 0;
+        if (length > 0) {
+            map.position(offset + RECORD_HEADER_SIZE);
+            map.put(buffer.array(), 0, length);
+            checksum.reset();
+            checksum.update(buffer.array(), 0, length);
+            crc = (int) checksum.getValue();
+        }
+        writeRecordHeader(writePosition, length, crc); // Last, so a torn record never looks complete
+        writePosition += size;
+        pending++;
+    }
+
+    /**
+     * Commits the oldest records, after their entries were written to the outputs.
+     *
+     * @param records The number of records to commit, in append order.
+     */
+    public synchronized void commit(int records) {
+        if (closed) {
+            return;
+        }
+        records = Math.min(records, pending);
+        for (int i = 0; i < records; i++) {
+            committed = next(committed);
+        }
+        pending -= records;
+        map.putLong(COMMITTED_OFFSET, committed);
+        notifyAll();
+    }
+
+    /**
+     * Hands the entries left uncommitted by the previous run to the consumer, then commits them.
+     *
+     * @param consumer Receives the entries in append order, if there are any.
+     * @return The number of entries replayed.
+     */
+    public synchronized int replay(Consumer<List<LogEntry>> consumer) {
+        if (closed || pending == 0) {
+            return 0;
+        }
+        List<LogEntry> entries = new ArrayList<>(pending);
+        long position = committed;
+        for (int i = 0; i < pending; i++) {
+            position = skipWrap(position);
+            int offset = physical(position);
+            int length = map.getInt(offset);
+            if (length > 0) {
+                byte[] record = new byte[length];
+                map.position(offset + RECORD_HEADER_SIZE);
+                map.get(record);
+                try {
+                    entries.add(RecordLogEncoder.decode(record, 0, length));
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // Log the error to standard output
+                }
+            }
+            position = next(position);
+        }
+        if (!entries.isEmpty()) {
+            consumer.accept(entries);
+        }
+        commit(pending);
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of appended records that are not committed yet.
+     *
+     * @return The number of uncommitted records.
+     */
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    /**
+     * Writes the journal back to the storage device and unmaps it. Uncommitted records stay in the file.
+     * Producers waiting for space return without journaling their entries.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        notifyAll();
+        map.force();
+        MappedFileAppender.unmap(map);
+        map = null;
+        channel.close();
+    }
+
+    /**
+     * Reads the capacity of an existing journal from its header.
+     *
+     * @return The capacity, or 0 if the file does not hold a journal.
+     */
+    private long readCapacity() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return 0;
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        try {
+            long existing = header.getLong(CAPACITY_OFFSET);
+            boolean valid = header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && existing > 0 && existing % RECORD_ALIGNMENT == 0 && existing <= channel.size() - HEADER_SIZE;
+            return valid ? existing : 0;
+        } finally {
+            MappedFileAppender.unmap(header);
+        }
+    }
+
+    private void initialize() {
+        for (int i = 0; i < HEADER_SIZE + capacity; i += 8) {
+            map.putLong(i, 0);
+        }
+        // Positions start one lap in, so the zeroed ring holds no record stamped with a valid position
+        committed = capacity;
+        writePosition = capacity;
+        map.putLong(COMMITTED_OFFSET, committed);
+        map.putLong(CAPACITY_OFFSET, capacity);
+        map.putInt(4, VERSION);
+        map.putInt(0, MAGIC);
+    }
+
+    /**
+     * Finds the uncommitted records: they follow the committed position for as long as they are
+     * stamped with their own position and pass the checksum.
+     */
+    private void recover() {
+        committed = map.getLong(COMMITTED_OFFSET);
+        long position = committed;
+        while (true) {
+            long record = skipWrap(position);
+            if (record < 0) {
+                break;
+            }
+            int offset = physical(record);
+            int length = map.getInt(offset);
+            long size = align(RECORD_HEADER_SIZE + Math.max(length, 0));
+            if (length < 0 || size > capacity - offset + HEADER_SIZE || record + size - committed > capacity) {
+                break;
+            }
+            if (length > 0) {
+                byte[] data = new byte[length];
+                map.position(offset + RECORD_HEADER_SIZE);
+                map.get(data);
+                checksum.reset();
+                checksum.update(data, 0, length);
+                if ((int) checksum.getValue() != map.getInt(offset + 4)) {
+                    break;
+                }
+            }
+            position = record + size;
+            pending++;
+        }
+        writePosition = position;
+    }
+
+    /**
+     * Skips the wrap filler at a position, if there is one.
+     *
+     * @return The position of the record, or -1 if no valid record is stamped there.
+     */
+    private long skipWrap(long position) {
+        int offset = physical(position);
+        if (map.getLong(offset + 8) != position) {
+            return -1;
+        }
+        if (map.getInt(offset) == WRAP) {
+            position += capacity - position % capacity;
+            if (map.getLong(physical(position) + 8) != position) {
+                return -1;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Returns the position after the record at a position, skipping a wrap filler first.
+     */
+    private long next(long position) {
+        position = skipWrap(position);
+        return position + align(RECORD_HEADER_SIZE + Math.max(map.getInt(physical(position)), 0));
+    }
+
+    private void writeRecordHeader(long position, int length, int crc) {
+        int offset = physical(position);
+        map.putLong(offset + 8, position);
+        map.putInt(offset + 4, crc);
+        map.putInt(offset, length);
+    }
+
+    private int physical(long position) {
+        return (int) (HEADER_SIZE + position % capacity);
+    }
+
+    private static long align(long size) {
+        return (size + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+    }
+}
@@ -0,0 +1,129 @@
+package org.theko.logger.out;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogLevel;
+
+/**
+ * The conditions of a {@link LogSearch}. An entry matches if it meets all conditions that are set.
+ * <pre>
+ * LogQuery query = new LogQuery()
+ *         .between(from, to)
+ *         .minLevel(LogLevel.WARN)
+ *         .contains("timeout");
+ * </pre>
+ */
+public class LogQuery {
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private LogLevel minLevel;
+    private String tag;
+    private String text;
+    private Pattern regex;
+
+    /**
+     * Limits the search to a time range.
+     *
+     * @param from The start of the range in milliseconds, inclusive.
+     * @param to   The end of the range in milliseconds, inclusive.
+     * @return This query.
+     */
+    public LogQuery between(long from, long to) {
+        if (from > to) {
+            throw new IllegalArgumentException("The start of the range cannot be after its end.");
+        }
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * Limits the search to entries at or above a level.
+     *
+     * @param minLevel The lowest level to match, or null for all levels.
+     * @return This query.
+     */
+    public LogQuery minLevel(LogLevel minLevel) {
+        this.minLevel = minLevel;
+        return this;
+    }
+
+    /**
+     * Limits the search to entries with a tag.
+     *
+     * @param tag The tag, or null for any.
+     * @return This query.
+     */
+    public LogQuery tag(String tag) {
+        this.tag = tag;
+        return this;
+    }
+
+    /**
+     * Limits the search to entries whose message contains a text.
+     *
+     * @param text The text, or null for any message.
+     * @return This query.
+     */
+    public LogQuery contains(String text) {
+        this.text = text;
+        return this;
+    }
+
+    /**
+     * Limits the search to entries whose message contains a match of a regular expression.
+     *
+     * @param regex The regular expression, or null for any message.
+     * @return This query.
+     */
+    public LogQuery matches(Pattern regex) {
+        this.regex = regex;
+        return this;
+    }
+
+    /**
+     * Limits the search to entries whose message contains a match of a regular expression.
+     *
+     * @param regex The regular expression, or null for any message.
+     * @return This query.
+     */
+    public LogQuery matches(String regex) {
+        return matches(regex == null ? null : Pattern.compile(regex));
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    /**
+     * Checks an entry against the conditions.
+     *
+     * @param entry The entry to check.
+     * @return true if the entry matches.
+     */
+    public boolean test(LogEntry entry) {
+        if (entry.getTime() < from || entry.getTime() > to) {
+            return false;
+        }
+        if (minLevel != null && entry.getLevel().ordinal() < minLevel.ordinal()) {
+            return false;
+        }
+        if (tag != null) {
+            List<String> tags = entry.getTags();
+            if (tags == null || !tags.contains(tag)) {
+                return false;
+            }
+        }
+        String message = entry.getMessage();
+        if (text != null && (message == null || !message.contains(text))) {
+            return false;
+        }
+        return regex == null || (message != null && regex.matcher(message).find());
+    }
+}
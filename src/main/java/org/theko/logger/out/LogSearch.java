@@ -0,0 +1,433 @@
+package org.theko.logger.out;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogLevel;
+import org.theko.logger.LogOutputSettings;
+import org.theko.logger.LoggerOutput;
+import org.theko.logger.encode.BinaryLogEncoder;
+
+/**
+ * Searches a log directory written by {@link RotatingFileOutputStream} or a file output.
+ * <p>
+ * The log files ("*.log") and archives ("archived_*") are scanned in parallel on a fork/join pool:
+ * uncompressed files are memory-mapped, compressed files and archives are decompressed while scanning.
+ * The {@link SegmentIndex} of a file, if there is one, is used to skip the parts outside the time range,
+ * and large indexed files are split into several tasks at chunk boundaries. Lines are parsed back into
+ * entries with the patterns or encoder of the given output settings.
+ * <p>
+ * Matches are handed to the consumer in timestamp order, on the calling thread. A match is passed on
+ * as soon as no file still being scanned can hold an earlier one, which is known for files with a complete
+ * index; other files hold back the matches until they are done.
+ * The class can also be run from the command line:
+ * <pre>
+ * java org.theko.logger.out.LogSearch [-p pattern | -json | -binary] [-from time] [-to time]
+ *     [-level level] [-tag tag] [-contains text] [-regex regex] directory
+ * </pre>
+ */
+public class LogSearch {
+    /** Indexed files are split into tasks of about this many bytes. */
+    private static final long SPLIT_BYTES = 4 * 1024 * 1024;
+
+    private final File directory;
+    private final LogOutputSettings format;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a search over a directory, using the common fork/join pool.
+     *
+     * @param directory The log directory.
+     * @param format    The output settings the files were written with, for the encoder or patterns.
+     */
+    public LogSearch(File directory, LogOutputSettings format) {
+        this(directory, format, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a search over a directory.
+     *
+     * @param directory The log directory.
+     * @param format    The output settings the files were written with, for the encoder or patterns.
+     * @param pool      The pool that scans the files.
+     */
+    public LogSearch(File directory, LogOutputSettings format, ForkJoinPool pool) {
+        if (directory == null || format == null || pool == null) {
+            throw new IllegalArgumentException("Directory, format and pool cannot be null.");
+        }
+        this.directory = directory;
+        this.format = format;
+        this.pool = pool;
+        new SegmentScanner(format); // Fails early on formats that cannot be read back
+    }
+
+    /**
+     * Returns the files to search: archives by modification time, then log files by name,
+     * which is the order {@link RotatingFileOutputStream} created them in.
+     *
+     * @return The files in chronological order.
+     */
+    public List<File> getFiles() {
+        File[] archives = directory.listFiles((dir, name) -> name.startsWith("archived_") && !name.endsWith(".tmp"));
+        File[] logs = directory.listFiles((dir, name) -> !name.startsWith("archived_") && name.endsWith(".log"));
+        List<File> files = new ArrayList<>();
+        if (archives != null) {
+            Arrays.sort(archives, Comparator.comparingLong(File::lastModified));
+            files.addAll(Arrays.asList(archives));
+        }
+        if (logs != null) {
+            Arrays.sort(logs, Comparator.comparing(File::getName));
+            files.addAll(Arrays.asList(logs));
+        }
+        return files;
+    }
+
+    /**
+     * Searches the directory and returns the matches in timestamp order.
+     *
+     * @param query The search conditions.
+     * @return The matching entries.
+     * @throws IOException If a file cannot be read.
+     */
+    public List<LogEntry> search(LogQuery query) throws IOException {
+        List<LogEntry> matches = new ArrayList<>();
+        search(query, matches::add);
+        return matches;
+    }
+
+    /**
+     * Searches the directory, handing the matches to the consumer in timestamp order.
+     * Entries with the same time keep the order of the files and of the entries in them.
+     *
+     * @param query    The search conditions.
+     * @param consumer Receives the matches on the calling thread.
+     * @throws IOException If a file cannot be read.
+     */
+    public void search(LogQuery query, Consumer<LogEntry> consumer) throws IOException {
+        List<File> files = getFiles();
+        BlockingQueue<FileTask> done = new LinkedBlockingQueue<>();
+        List<FileTask> pending = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            FileTask task = new FileTask(files.get(i), i, query, done);
+            pending.add(task);
+            pool.execute(task);
+        }
+
+        PriorityQueue<Match> matches = new PriorityQueue<>();
+        try {
+            while (!pending.isEmpty()) {
+                FileTask task;
+                try {
+                    task = done.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Search interrupted.", e);
+                }
+                pending.remove(task);
+                if (task.error != null) {
+                    throw task.error;
+                }
+                matches.addAll(task.matches);
+
+                long watermark = Long.MAX_VALUE; // No file still being scanned has a match before it
+                for (FileTask other : pending) {
+                    watermark = Math.min(watermark, other.lowerBound);
+                }
+                while (!matches.isEmpty() && (pending.isEmpty() || matches.peek().entry.getTime() < watermark)) {
+                    consumer.accept(matches.poll().entry);
+                }
+            }
+        } finally {
+            for (FileTask task : pending) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /** A matching entry, ordered by time, then by file and position. */
+    private static final class Match implements Comparable<Match> {
+        final LogEntry entry;
+        final int file;
+        final int sequence;
+
+        Match(LogEntry entry, int file, int sequence) {
+            this.entry = entry;
+            this.file = file;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            int order = Long.compare(entry.getTime(), other.entry.getTime());
+            if (order == 0) {
+                order = Integer.compare(file, other.file);
+            }
+            return order != 0 ? order : Integer.compare(sequence, other.sequence);
+        }
+    }
+
+    /** Scans one file, splitting it into range tasks if it is large and indexed. */
+    private final class FileTask extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+        private final int fileNumber;
+        private final LogQuery query;
+        private final BlockingQueue<FileTask> done;
+        private final SegmentIndex index;
+        final long lowerBound; // No match of this file is earlier
+        List<Match> matches = Collections.emptyList();
+        IOException error;
+
+        FileTask(File file, int fileNumber, LogQuery query, BlockingQueue<FileTask> done) {
+            this.file = file;
+            this.fileNumber = fileNumber;
+            this.query = query;
+            this.done = done;
+            SegmentIndex index = null;
+            try {
+                index = SegmentIndex.read(file);
+            } catch (IOException e) {
+                // Scanned as a whole
+            }
+            this.index = index;
+            this.lowerBound = lowerBound(index, query);
+        }
+
+        @Override
+        protected Void compute() {
+            try {
+                matches = scanFile();
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                if (file.exists()) {
+                    error = e;
+                } // Otherwise removed by the retention policy meanwhile
+            } catch (IOException e) {
+                error = e;
+            } catch (UncheckedIOException e) {
+                error = e.getCause();
+            } catch (RuntimeException e) {
+                error = new IOException("Failed to search " + file.getName(), e);
+            } finally {
+                done.add(this);
+            }
+            return null;
+        }
+
+        private List<Match> scanFile() throws IOException {
+            if (index != null && !index.mayContain(query.getFrom(), query.getTo())) {
+                return Collections.emptyList();
+            }
+            boolean seekable = !(format.getEncoder() instanceof BinaryLogEncoder);
+            List<long[]> ranges = index == null || !seekable
+                    ? Collections.singletonList(new long[] { 0, Long.MAX_VALUE })
+                    : index.rangesFor(query.getFrom(), query.getTo());
+
+            List<List<long[]>> pieces = split(ranges);
+            List<LogEntry> entries;
+            if (pieces.size() == 1) {
+                entries = scanRanges(file, index, ranges, query);
+            } else {
+                List<RangeTask> tasks = new ArrayList<>();
+                for (List<long[]> piece : pieces) {
+                    tasks.add(new RangeTask(file, index, piece, query));
+                }
+                invokeAll(tasks);
+                entries = new ArrayList<>();
+                for (RangeTask task : tasks) {
+                    entries.addAll(task.join());
+                }
+            }
+
+            List<Match> result = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                result.add(new Match(entries.get(i), fileNumber, i));
+            }
+            return result;
+        }
+    }
+
+    /** Scans some byte ranges of an indexed file. */
+    private final class RangeTask extends RecursiveTask<List<LogEntry>> {
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+        private final SegmentIndex index;
+        private final List<long[]> ranges;
+        private final LogQuery query;
+
+        RangeTask(File file, SegmentIndex index, List<long[]> ranges, LogQuery query) {
+            this.file = file;
+            this.index = index;
+            this.ranges = ranges;
+            this.query = query;
+        }
+
+        @Override
+        protected List<LogEntry> compute() {
+            try {
+                return scanRanges(file, index, ranges, query);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private List<LogEntry> scanRanges(File file, SegmentIndex index, List<long[]> ranges, LogQuery query) throws IOException {
+        SegmentScanner scanner = new SegmentScanner(format);
+        List<LogEntry> entries = new ArrayList<>();
+        long start = ranges.get(0)[0];
+        try (InputStream in = SegmentScanner.openMapped(file, start)) {
+            scanner.scanRanges(in, start, file, index, ranges, (offset, entry) -> {
+                if (query.test(entry)) {
+                    entries.add(entry);
+                }
+            });
+        }
+        return entries;
+    }
+
+    /**
+     * Groups ranges into pieces of about {@link #SPLIT_BYTES}. Ranges reaching to the end of the file
+     * have an unknown size and end the last piece.
+     */
+    private static List<List<long[]>> split(List<long[]> ranges) {
+        List<List<long[]>> pieces = new ArrayList<>();
+        List<long[]> piece = new ArrayList<>();
+        long pieceBytes = 0;
+        for (long[] range : ranges) {
+            piece.add(range);
+            pieceBytes += range[1] - range[0];
+            if (pieceBytes >= SPLIT_BYTES && range[1] != Long.MAX_VALUE) {
+                pieces.add(piece);
+                piece = new ArrayList<>();
+                pieceBytes = 0;
+            }
+        }
+        if (!piece.isEmpty()) {
+            pieces.add(piece);
+        }
+        return pieces;
+    }
+
+    /**
+     * Returns the earliest time a match of the file can have. It is only known for files
+     * whose complete index covers them without gaps; bytes before the first chunk are
+     * taken to be a segment header.
+     */
+    private static long lowerBound(SegmentIndex index, LogQuery query) {
+        if (index == null || !index.isComplete() || index.getChunks().isEmpty()) {
+            return Long.MIN_VALUE;
+        }
+        long bound = Long.MAX_VALUE;
+        long position = index.getChunks().get(0).getStart();
+        for (SegmentIndex.Chunk chunk : index.getChunks()) {
+            if (chunk.getStart() != position) {
+                return Long.MIN_VALUE; // Not indexed in between
+            }
+            if (chunk.overlaps(query.getFrom(), query.getTo())) {
+                bound = Math.min(bound, chunk.getMinTime());
+            }
+            position = chunk.getEnd();
+        }
+        if (position != index.getEnd()) {
+            return Long.MIN_VALUE;
+        }
+        return Math.max(bound, query.getFrom());
+    }
+
+    public static void main(String[] args) throws IOException {
+        LogOutputSettings format = new LogOutputSettings("search", null); // Default patterns unless -p is given
+        String outputPattern = LoggerOutput.DETAILED_PATTERN + "\n";
+        LogQuery query = new LogQuery();
+        long from = Long.MIN_VALUE, to = Long.MAX_VALUE;
+        String directory = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-p":
+                        format.setPattern(args[++i].replace("\\n", "\n"));
+                        outputPattern = format.getPattern(LogLevel.INFO);
+                        break;
+                    case "-json":
+                        format.setAsJsonOutput(true);
+                        break;
+                    case "-binary":
+                        format.setEncoder(new BinaryLogEncoder());
+                        break;
+                    case "-from":
+                        from = parseTime(args[++i]);
+                        break;
+                    case "-to":
+                        to = parseTime(args[++i]);
+                        break;
+                    case "-level":
+                        query.minLevel(LogLevel.fromString(args[++i]));
+                        break;
+                    case "-tag":
+                        query.tag(args[++i]);
+                        break;
+                    case "-contains":
+                        query.contains(args[++i]);
+                        break;
+                    case "-regex":
+                        query.matches(args[++i]);
+                        break;
+                    default:
+                        directory = args[i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            directory = null;
+        }
+        if (directory == null) {
+            System.err.println("Usage: LogSearch [-p pattern | -json | -binary] [-from time] [-to time] "
+                    + "[-level level] [-tag tag] [-contains text] [-regex regex] directory");
+            return;
+        }
+        query.between(from, to);
+
+        OutputStream buffered = new BufferedOutputStream(System.out, 64 * 1024);
+        String pattern = outputPattern;
+        new LogSearch(new File(directory), format).search(query, entry -> {
+            try {
+                buffered.write(LoggerOutput.format(entry, pattern).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        buffered.flush();
+    }
+
+    /**
+     * Parses a time given as epoch milliseconds or as a local date-time such as "2024-01-31T12:00:00".
+     */
+    private static long parseTime(String time) {
+        if (time.matches("-?\\d+")) {
+            return Long.parseLong(time);
+        }
+        return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,405 @@
+package org.theko.logger.out;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogOutputSettings;
+import org.theko.logger.encode.BinaryLogEncoder;
+
+/**
+ * Follows the log files of a {@link RotatingFileOutputStream} directory and returns the new entries in batches.
+ * <p>
+ * The tailer reads the current file with positional {@link FileChannel} reads and waits for changes with a
+ * {@link WatchService}. It moves on to the next file once that file has data and the current one is finished:
+ * its index is complete, or it has not grown for the rotation grace period, as buffered segments are flushed
+ * by the janitor shortly after rotation. Without a checkpoint, tailing starts at the oldest log file.
+ * <p>
+ * The position (file name and offset) is saved to the checkpoint file by {@link #commit()}, so a restarted tailer
+ * resumes after the last committed batch. If the file of the checkpoint was removed or archived meanwhile,
+ * tailing resumes at the next log file.
+ * <p>
+ * Entries are expected to be written whole, as {@link org.theko.logger.LoggerOutput} does, so an entry is
+ * returned once its last line is complete. Pattern and JSON files are supported; binary and compressed files
+ * can only be decoded from their start and are not.
+ */
+public class LogTailer implements Closeable {
+    public static final int DEFAULT_MAX_BATCH_BYTES = 256 * 1024;
+    public static final long DEFAULT_ROTATION_GRACE_MS = 500;
+
+    /** Memory-mapped writes do not cause change events, so waiting is limited to this. */
+    private static final long RECHECK_INTERVAL_MS = 1000;
+
+    private final File directory;
+    private final File checkpointFile;
+    private final SegmentScanner scanner;
+    private final WatchService watcher;
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private long rotationGraceMillis = DEFAULT_ROTATION_GRACE_MS;
+    private File currentFile;
+    private FileChannel channel;
+    private long offset; // Of the first byte not returned yet
+    private long lastGrowthTime;
+    private long lastSize = -1;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a tailer and restores the position from the checkpoint file, if it exists.
+     *
+     * @param directory      The log directory.
+     * @param format         The output settings the files are written with, for the encoder or patterns.
+     * @param checkpointFile The file the position is saved to, or null to not keep one.
+     * @throws IOException If the directory cannot be watched or the checkpoint cannot be read.
+     */
+    public LogTailer(File directory, LogOutputSettings format, File checkpointFile) throws IOException {
+        if (directory == null || format == null) {
+            throw new IllegalArgumentException("Directory and format cannot be null.");
+        }
+        if (format.getEncoder() instanceof BinaryLogEncoder) {
+            throw new IllegalArgumentException("Binary log files cannot be tailed.");
+        }
+        this.directory = directory;
+        this.checkpointFile = checkpointFile;
+        this.scanner = new SegmentScanner(format);
+        this.watcher = FileSystems.getDefault().newWatchService();
+        directory.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        loadCheckpoint();
+    }
+
+    /**
+     * Sets how many bytes are read at most for one batch. Longer entries are still read whole, and a batch
+     * that reaches the limit ends before its last entry, so the lines of a multi-line entry stay together.
+     *
+     * @param maxBatchBytes The batch limit in bytes.
+     */
+    public synchronized void setMaxBatchBytes(int maxBatchBytes) {
+        if (maxBatchBytes <= 0) {
+            throw new IllegalArgumentException("Max batch bytes must be greater than 0.");
+        }
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Sets how long a file must not have grown after the next file got data before it is considered finished.
+     *
+     * @param rotationGraceMillis The grace period in milliseconds.
+     */
+    public synchronized void setRotationGrace(long rotationGraceMillis) {
+        if (rotationGraceMillis < 0) {
+            throw new IllegalArgumentException("Rotation grace cannot be negative.");
+        }
+        this.rotationGraceMillis = rotationGraceMillis;
+    }
+
+    /**
+     * Returns the next batch of entries, waiting for new ones up to the timeout.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of the timeout.
+     * @return The entries in file order; empty if there were none within the timeout or the tailer was closed.
+     * @throws IOException          If a file cannot be read.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public synchronized List<LogEntry> poll(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!closed) {
+            List<LogEntry> batch = readAvailable();
+            if (!batch.isEmpty()) {
+                return batch;
+            }
+            if (advanceIfRotated()) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            WatchKey key;
+            try {
+                key = watcher.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(RECHECK_INTERVAL_MS)), TimeUnit.NANOSECONDS);
+            } catch (ClosedWatchServiceException e) {
+                break;
+            }
+            if (key != null) {
+                key.pollEvents(); // Any change is a reason to look again
+                key.reset();
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Hands batches to the consumer and commits after each one, until the tailer is closed.
+     *
+     * @param consumer Receives the batches.
+     * @throws IOException          If a file cannot be read or the checkpoint cannot be written.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void run(Consumer<List<LogEntry>> consumer) throws IOException, InterruptedException {
+        while (!closed) {
+            List<LogEntry> batch = poll(RECHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (!batch.isEmpty()) {
+                consumer.accept(batch);
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Saves the position after the last returned batch to the checkpoint file.
+     * The file is replaced atomically, so a crash leaves either the old or the new checkpoint.
+     *
+     * @throws IOException If the checkpoint cannot be written.
+     */
+    public synchronized void commit() throws IOException {
+        if (checkpointFile == null || currentFile == null) {
+            return;
+        }
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("segment", currentFile.getName());
+        checkpoint.setProperty("offset", Long.toString(offset));
+        File tempFile = new File(checkpointFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            checkpoint.store(out, "Log tailer checkpoint");
+            out.flush();
+        }
+        Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the file being tailed.
+     *
+     * @return The current file, or null if no log file was found yet.
+     */
+    public synchronized File getCurrentFile() {
+        return currentFile;
+    }
+
+    /**
+     * Returns the offset in the current file after the last returned batch.
+     *
+     * @return The offset in bytes.
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watcher.close();
+        synchronized (this) {
+            closeChannel();
+        }
+    }
+
+    private void loadCheckpoint() throws IOException {
+        if (checkpointFile == null || !checkpointFile.isFile()) {
+            return;
+        }
+        Properties checkpoint = new Properties();
+        try (InputStream in = new FileInputStream(checkpointFile)) {
+            checkpoint.load(in);
+        }
+        String segment = checkpoint.getProperty("segment");
+        if (segment == null) {
+            return;
+        }
+        File file = new File(directory, segment);
+        if (file.isFile()) {
+            long savedOffset = Long.parseLong(checkpoint.getProperty("offset", "0"));
+            open(file, savedOffset <= file.length() ? savedOffset : 0);
+        } else {
+            File next = nextLogFile(segment);
+            if (next != null) {
+                open(next, 0);
+            }
+        }
+    }
+
+    /**
+     * Reads the complete entries written after the offset, up to the batch limit.
+     */
+    private List<LogEntry> readAvailable() throws IOException {
+        if (currentFile == null) {
+            File first = nextLogFile(null);
+            if (first == null) {
+                return Collections.emptyList();
+            }
+            open(first, 0);
+        }
+        long size;
+        try {
+            size = channel.size();
+        } catch (IOException e) {
+            return Collections.emptyList(); // Removed, advanceIfRotated moves on
+        }
+        if (size != lastSize) {
+            lastSize = size;
+            lastGrowthTime = System.currentTimeMillis();
+        }
+        if (size <= offset) {
+            return Collections.emptyList();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - offset, maxBatchBytes));
+        long start = offset;
+        while (true) {
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                // Positional reads, the channel position is not used
+            }
+            int dataLength = dataLength(buffer.array(), buffer.position());
+            boolean atEnd = dataLength < buffer.position() || start + buffer.position() >= size;
+            int limit = completeLength(buffer.array(), dataLength);
+            if (limit > 0) {
+                List<LogEntry> batch = new ArrayList<>();
+                long[] lastStart = { -1 };
+                scanner.scan(new ByteArrayInputStream(buffer.array(), 0, limit), start, start + limit, (entryOffset, entry) -> {
+                    batch.add(entry);
+                    lastStart[0] = entryOffset;
+                });
+                boolean complete = true;
+                if (atEnd || batch.isEmpty()) {
+                    offset = start + limit;
+                } else if (lastStart[0] > start) {
+                    // The batch was cut at its size limit; the last entry may go on with lines after the cut
+                    batch.remove(batch.size() - 1);
+                    offset = lastStart[0];
+                } else {
+                    complete = false; // A single entry fills the whole batch and may go on after it
+                }
+                if (complete) {
+                    lastGrowthTime = System.currentTimeMillis(); // Mapped files grow without changing their size
+                    return batch;
+                }
+            } else if (atEnd) {
+                return Collections.emptyList();
+            }
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.array(), 0, buffer.position());
+        }
+    }
+
+    /**
+     * Returns the length of the data before the zero padding of mapped and preallocated files.
+     */
+    private static int dataLength(byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            if (data[i] == 0) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the length of the data that ends with a complete line.
+     */
+    private static int completeLength(byte[] data, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (data[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether anything was written to a file, before the zero padding it may start with.
+     */
+    private static boolean hasData(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Moves on to the next log file if the current one is finished or was removed.
+     *
+     * @return true if the tailer moved to another file.
+     */
+    private boolean advanceIfRotated() throws IOException {
+        if (currentFile == null) {
+            return false;
+        }
+        File next = nextLogFile(currentFile.getName());
+        if (next == null) {
+            return false;
+        }
+        boolean removed = !currentFile.exists();
+        if (!removed) {
+            if (!hasData(next)) {
+                return false; // Not written yet, so the current file may still be
+            }
+            SegmentIndex index = SegmentIndex.read(currentFile);
+            boolean finished = (index != null && index.isComplete() && index.getEnd() <= offset)
+                    || System.currentTimeMillis() - lastGrowthTime >= rotationGraceMillis;
+            if (!finished) {
+                return false;
+            }
+        }
+        open(next, 0);
+        return true;
+    }
+
+    /**
+     * Returns the oldest log file whose name sorts after the given one.
+     */
+    private File nextLogFile(String after) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("log_") && name.endsWith(".log")
+                && (after == null || name.compareTo(after) > 0));
+        if (files == null || files.length == 0) {
+            return null;
+        }
+        Arrays.sort(files);
+        return files[0];
+    }
+
+    private void open(File file, long position) throws IOException {
+        closeChannel();
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            channel = null;
+            currentFile = null; // Removed meanwhile, start over with the oldest file
+            return;
+        }
+        currentFile = file;
+        offset = position;
+        lastSize = -1;
+        lastGrowthTime = System.currentTimeMillis();
+        scanner.setReferenceTime(RotatingFileOutputStream.getCreationTime(file));
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
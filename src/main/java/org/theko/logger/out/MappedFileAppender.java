@@ -0,0 +1,258 @@
+package org.theko.logger.out;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.theko.logger.encode.BinaryLogEncoder;
+
+/**
+ * A file appender that copies entries into a memory-mapped region of the log file
+ * and leaves the write-back to the operating system, so a write costs a memory copy
+ * instead of a system call.
+ * <p>
+ * When the region fills up, the next window is mapped after it. On close the file is truncated
+ * to the bytes actually written. If the process dies before that, the file keeps the zero padding
+ * of the last window; {@link org.theko.logger.encode.BinaryLogReader} skips it, and reopening a text
+ * log cuts it off, so new entries follow the old ones without a gap.
+ * Use it as a segment of a {@link RotatingFileOutputStream} to keep the usual rotation behaviour.
+ */
+public class MappedFileAppender extends OutputStream implements BatchWritable {
+    public static final int DEFAULT_REGION_SIZE = 8 * 1024 * 1024;
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Unmapping is left to the garbage collector
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final FileChannel channel;
+    private final int regionSize;
+    private MappedByteBuffer region;
+    private long regionStart;  // File offset of the mapped window
+    private boolean closed;
+
+    /**
+     * Opens the file for appending and maps the first window after its current end,
+     * without the zero padding a crash left behind.
+     *
+     * @param file       The file to append to.
+     * @param regionSize The size of each mapped window in bytes.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public MappedFileAppender(File file, int regionSize) throws IOException {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("Region size must be greater than 0.");
+        }
+        this.regionSize = regionSize;
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            map(trimPadding(channel));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the file for appending with the default region size.
+     *
+     * @param file The file to append to.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public MappedFileAppender(File file) throws IOException {
+        this(file, DEFAULT_REGION_SIZE);
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        if (!region.hasRemaining()) {
+            map(regionStart + region.position());
+        }
+        region.put((byte) b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (!region.hasRemaining()) {
+                map(regionStart + region.position());
+            }
+            int count = Math.min(len, region.remaining());
+            region.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public synchronized void writeBatch(ByteBuffer[] entries) throws IOException {
+        ensureOpen();
+        for (ByteBuffer entry : entries) {
+            while (entry.hasRemaining()) {
+                if (!region.hasRemaining()) {
+                    map(regionStart + region.position());
+                }
+                if (entry.remaining() <= region.remaining()) {
+                    region.put(entry);
+                } else {
+                    ByteBuffer slice = entry.duplicate();
+                    slice.limit(slice.position() + region.remaining());
+                    region.put(slice);
+                    entry.position(slice.position());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the file, excluding the unused part of the mapped window.
+     *
+     * @return The logical file length.
+     */
+    public synchronized long size() {
+        return regionStart + region.position();
+    }
+
+    /**
+     * The operating system writes mapped pages back on its own, so flushing is a no-op.
+     * Use {@link #sync()} to force the data to the storage device.
+     */
+    @Override
+    public void flush() {
+        // Nothing to do, see javadoc
+    }
+
+    /**
+     * Forces the written part of the mapped window to the storage device.
+     */
+    public synchronized void sync() {
+        if (!closed) {
+            region.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long length = regionStart + region.position();
+        region.force();
+        unmap(region);
+        region = null;
+        try {
+            channel.truncate(length);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Cuts off the zeros at the end of a file, left by a mapped or preallocated writer that did not
+     * close it. Binary logs are left as they are: their records can end in zero bytes, and their
+     * readers skip padding anyway.
+     *
+     * @return The length of the written data.
+     */
+    static long trimPadding(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0 || isBinaryLog(channel)) {
+            return size;
+        }
+        ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+        long end = size;
+        while (end > 0) {
+            long start = Math.max(0, end - chunk.capacity());
+            chunk.clear().limit((int) (end - start));
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk, start + chunk.position()) < 0) {
+                    break;
+                }
+            }
+            int i = chunk.position() - 1;
+            while (i >= 0 && chunk.get(i) == 0) {
+                i--;
+            }
+            if (i >= 0) {
+                end = start + i + 1;
+                break;
+            }
+            end = start;
+        }
+        if (end < size) {
+            channel.truncate(end);
+        }
+        return end;
+    }
+
+    private static boolean isBinaryLog(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(1 + BinaryLogEncoder.MAGIC_TAIL.length);
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, magic.position()) < 0) {
+                return false; // Too short for a header
+            }
+        }
+        if (magic.get(0) != BinaryLogEncoder.RECORD_HEADER) {
+            return false;
+        }
+        for (int i = 0; i < BinaryLogEncoder.MAGIC_TAIL.length; i++) {
+            if (magic.get(i + 1) != BinaryLogEncoder.MAGIC_TAIL[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void map(long start) throws IOException {
+        if (region != null) {
+            unmap(region);
+        }
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, regionSize);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Appender closed.");
+        }
+    }
+
+    /**
+     * Releases a mapping eagerly, so the file can be truncated or renamed on every platform.
+     * Falls back to the garbage collector if the JDK does not allow it.
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.theko.logger.out;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file through memory-mapped windows, so reading costs memory accesses instead of
+ * system calls and copies. Skipping only moves the position. Closing releases the mapping
+ * and the channel.
+ */
+final class MappedInputStream extends InputStream {
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long end;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    /**
+     * Constructs a stream over a part of a file.
+     *
+     * @param channel  The channel to map, closed with this stream.
+     * @param position The offset to start reading at.
+     * @param end      The length of the file.
+     */
+    MappedInputStream(FileChannel channel, long position, long end) {
+        this.channel = channel;
+        this.position = Math.min(position, end);
+        this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureWindow()) {
+            return -1;
+        }
+        return window.get((int) (position++ - windowStart)) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+        int offset = (int) (position - windowStart);
+        int count = Math.min(len, window.limit() - offset);
+        window.position(offset);
+        window.get(b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (window != null) {
+            MappedFileAppender.unmap(window);
+            window = null;
+        }
+        channel.close();
+    }
+
+    /**
+     * Maps the window holding the current position.
+     *
+     * @return false at the end of the file.
+     */
+    private boolean ensureWindow() throws IOException {
+        if (position >= end) {
+            return false;
+        }
+        if (window != null && position >= windowStart && position < windowStart + window.limit()) {
+            return true;
+        }
+        if (window != null) {
+            MappedFileAppender.unmap(window);
+        }
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, end - windowStart));
+        return true;
+    }
+}
@@ -1,27 +1,167 @@
 package org.theko.logger.out;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
-public class RotatingFileOutputStream extends OutputStream {
+/**
+ * Writes logs into a directory of files, starting a new file when the current one
+ * reaches the maximum size or age, or, with {@link #setCalendarRotation(ChronoUnit, ZoneId)},
+ * at every full hour or midnight.
+ * <p>
+ * Rotation only swaps the stream writers use. A shared janitor thread opens the next file
+ * ahead of time under a temporary name, names it after the time writing to it started once a
+ * writer has taken it, and closes the finished file and applies the retention policy afterwards,
+ * so writers do not wait for the file system. The janitor works in rounds rather than
+ * being woken by writers, as waking a thread can cost more than the swap itself.
+ * <p>
+ * File names carry the time the file was created and sort chronologically. Times in a zone other than
+ * the system default, see {@link #setCalendarRotation(ChronoUnit, ZoneId)}, carry its offset, so readers
+ * can tell when a file was created without knowing the zone. The directory is listed
+ * once on construction; after that the finished files are tracked in an in-memory catalog.
+ * Files beyond the file limit or the maximum age are either archived (gzip-compressed and renamed with
+ * an "archived_" prefix), removed, or left alone, see {@link #setArchiveExpired(boolean)} and
+ * {@link #setRemoveExpired(boolean)}. The total size budget is a hard limit: the oldest files, archives
+ * included, are deleted until the directory fits.
+ * <p>
+ * With {@link #setIndexing(int, long)}, every file gets a sparse time index next to it,
+ * see {@link SegmentIndex}. Entry times come from {@link TimeIndexed#markEntry(long)}.
+ */
+public class RotatingFileOutputStream extends OutputStream implements BatchWritable, TimeIndexed {
+    /**
+     * Opens the stream that writes a single log file (segment).
+     * It lets compressed or channel-based writers keep the rotation behaviour of this class.
+     */
+    public interface SegmentFactory {
+        OutputStream open(File file) throws IOException;
+    }
+
+    /** A log file that is opened and ready to be written. */
+    private static final class Segment {
+        volatile File file; // Changes once, when a file opened ahead of time is named
+        final long initialSize;
+        final OutputStream stream;
+        SegmentIndex.Writer index; // Null if the file is not indexed
+        long finalSize; // Set by the writer when the segment is finished
+        long startTime; // Set by the writer when it starts using the segment
+        boolean named; // Guarded by the segment
+
+        Segment(File file, long initialSize, OutputStream stream, boolean named) {
+            this.file = file;
+            this.initialSize = initialSize;
+            this.stream = stream;
+            this.named = named;
+        }
+    }
+
+    /** A finished or archived file in the catalog. */
+    private static final class CatalogEntry {
+        File file;
+        long size;
+        final long finishedAt;
+        boolean archived;
+
+        CatalogEntry(File file, long size, long finishedAt, boolean archived) {
+            this.file = file;
+            this.size = size;
+            this.finishedAt = finishedAt;
+            this.archived = archived;
+        }
+    }
+
+    /** Opens segments as plain appending file streams. */
+    public static final SegmentFactory PLAIN_SEGMENTS = file -> new FileOutputStream(file, true);
+
+    /** The delay between janitor rounds in milliseconds. */
+    private static final long JANITOR_INTERVAL_MS = 50;
+
+    private static final long NO_PENDING_TIME = Long.MIN_VALUE;
+
+    private static final String ARCHIVE_PREFIX = "archived_";
+    private static final String PREPARED_SUFFIX = ".next"; // Files opened ahead of time, not yet named
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+    private static final DateTimeFormatter ZONED_FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ssZ");
+
+    private static final ScheduledExecutorService JANITOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "theko-logger-janitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Set<RotatingFileOutputStream> OPEN_STREAMS = ConcurrentHashMap.newKeySet();
+
+    static {
+        JANITOR.scheduleWithFixedDelay(RotatingFileOutputStream::janitorRound,
+                JANITOR_INTERVAL_MS, JANITOR_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private final SegmentFactory segmentFactory;
+    private Segment currentSegment;
     private OutputStream currentStream;
-    private File currentFile;
     private long maxSize;
     private long expireOffsetMillis;
+    private ChronoUnit calendarUnit; // Hours or days, null to rotate by expireOffsetMillis
+    private volatile ZoneId zone = ZoneId.systemDefault();
     private long lastRotationTime;
+    private long nextRotationTime; // Precomputed, checked on every write
+    private long currentSize; // Bytes in the current file, counted instead of asking the file system
     private String logDirectory;
     private String logFilePrefix;
     private int maxFiles; // Max files count
     private File logDirFile;
+    private Supplier<byte[]> segmentHeader; // Written at the start of every rotated file
+    private volatile boolean archiveExpired = false;
+    private volatile boolean removeExpired = true;
+    private volatile long maxAgeMillis = 0; // 0 for no limit
+    private volatile long maxTotalSize = 0; // 0 for no limit
+    // Segments are handed between writers and the janitor under this, which writers already hold
+    private Segment nextSegment; // Opened by the janitor, taken by writers, guarded by this
+    private final Deque<Segment> finishedSegments = new ArrayDeque<>(); // Closed by the janitor, guarded by this
+    private final Deque<Segment> unnamedSegments = new ArrayDeque<>(); // Named by the janitor, guarded by this
+    private final Object janitorLock = new Object(); // Never taken by writers
+    private final Deque<CatalogEntry> catalog = new ArrayDeque<>(); // Oldest first, guarded by janitorLock
+    private boolean closed; // Guarded by janitorLock
+    private volatile int indexChunkEntries = 0; // 0 to disable indexing
+    private volatile long indexChunkBytes = SegmentIndex.DEFAULT_CHUNK_BYTES;
+    private long pendingTime = NO_PENDING_TIME; // Announced for the next write
+    private long[] pendingTimes; // Announced for the next batch
+    private final Object namingLock = new Object();
+    private String lastTimestamp; // Of the last file name handed out
+    private int sameSecondCount;
+    private int preparedCount; // Guarded by namingLock
 
     public RotatingFileOutputStream(String logDirectory, long maxSize, String expireOffset, int maxFiles) {
+        this(logDirectory, maxSize, expireOffset, maxFiles, PLAIN_SEGMENTS);
+    }
+
+    public RotatingFileOutputStream(String logDirectory, long maxSize, String expireOffset, int maxFiles, SegmentFactory segmentFactory) {
         if (logDirectory == null || logDirectory.isEmpty()) {
             throw new IllegalArgumentException("Log directory cannot be null or empty.");
         }
@@ -31,25 +171,29 @@ public class RotatingFileOutputStream extends OutputStream {
         if (maxFiles <= 0) {
             throw new IllegalArgumentException("Max files must be greater than 0.");
         }
-        
+        if (segmentFactory == null) {
+            throw new IllegalArgumentException("Segment factory cannot be null.");
+        }
+
+        this.segmentFactory = segmentFactory;
         this.logDirectory = logDirectory;
         this.maxSize = maxSize;
         this.logFilePrefix = "log_";
         this.expireOffsetMillis = parseExpireOffset(expireOffset);
-        this.lastRotationTime = System.currentTimeMillis();
         this.maxFiles = maxFiles;
         this.logDirFile = new File(logDirectory);
-        
+
         if (!logDirFile.exists() && !logDirFile.mkdirs()) {
             throw new RuntimeException("Failed to create log directory.");
         }
 
+        loadCatalog();
         try {
-            this.currentFile = getNewLogFile();
-            this.currentStream = new FileOutputStream(currentFile, true);
+            useSegment(openSegment(continuedOrNewLogFile(), true));
         } catch (IOException e) {
             throw new RuntimeException("Failed to open log file.", e);
         }
+        OPEN_STREAMS.add(this);
     }
 
     @Override
@@ -57,7 +201,9 @@ public class RotatingFileOutputStream extends OutputStream {
         if (shouldRotate()) {
             rotate();
         }
+        indexPendingEntry();
         currentStream.write(b);
+        currentSize++;
     }
 
     @Override
@@ -65,48 +211,681 @@ public class RotatingFileOutputStream extends OutputStream {
         if (shouldRotate()) {
             rotate();
         }
+        indexPendingEntry();
         currentStream.write(b, off, len);
+        currentSize += len;
+    }
+
+    /**
+     * Writes a batch of encoded entries into the current file. Rotation is checked once per batch,
+     * so a batch never spans two files. Segments that support batches receive it in one call.
+     */
+    @Override
+    public synchronized void writeBatch(ByteBuffer[] entries) throws IOException {
+        if (shouldRotate()) {
+            rotate();
+        }
+        long[] times = pendingTimes;
+        pendingTimes = null;
+        pendingTime = NO_PENDING_TIME;
+        if (times != null && times.length == entries.length && currentSegment.index != null) {
+            long offset = currentSize;
+            try {
+                for (int i = 0; i < entries.length; i++) {
+                    currentSegment.index.entry(offset, times[i]);
+                    offset += entries[i].remaining();
+                }
+            } catch (IOException e) {
+                dropIndex(e);
+            }
+        }
+        for (ByteBuffer entry : entries) {
+            currentSize += entry.remaining();
+        }
+        if (currentStream instanceof BatchWritable) {
+            ((BatchWritable) currentStream).writeBatch(entries);
+            return;
+        }
+        for (ByteBuffer entry : entries) {
+            BatchWritable.writeTo(entry, currentStream);
+        }
+    }
+
+    @Override
+    public synchronized void markEntry(long time) {
+        pendingTime = time;
+    }
+
+    @Override
+    public synchronized void markBatch(long[] times) {
+        pendingTimes = times;
+    }
+
+    /**
+     * Adds the announced entry to the index of the current file. Called after the rotation check,
+     * so the entry is indexed in the file it is written to.
+     */
+    private void indexPendingEntry() {
+        if (pendingTime == NO_PENDING_TIME) {
+            return;
+        }
+        long time = pendingTime;
+        pendingTime = NO_PENDING_TIME;
+        if (currentSegment.index != null) {
+            try {
+                currentSegment.index.entry(currentSize, time);
+            } catch (IOException e) {
+                dropIndex(e);
+            }
+        }
+    }
+
+    /**
+     * Stops indexing the current file after the index could not be written. The entries
+     * written so far stay indexed, the rest of the file is left to be scanned.
+     */
+    private void dropIndex(IOException e) {
+        e.printStackTrace(); // Log the error to standard output
+        currentSegment.index.abandon();
+        currentSegment.index = null;
     }
 
     private boolean shouldRotate() {
-        long currentTime = System.currentTimeMillis();
-        boolean isTimeExpired = (currentTime - lastRotationTime) >= expireOffsetMillis;
-        boolean isSizeExceeded = currentFile.length() >= maxSize;
-        return isTimeExpired || isSizeExceeded;
+        return currentSize >= maxSize || System.currentTimeMillis() >= nextRotationTime;
+    }
+
+    /**
+     * Opens a log file. The file length is taken before the segment is opened, since mapped and
+     * preallocated segments extend the file past its content; those report their own content length,
+     * which leaves out the padding a crash may have left.
+     */
+    private Segment openSegment(File file, boolean named) throws IOException {
+        long initialSize = file.length();
+        OutputStream stream = segmentFactory.open(file);
+        if (stream instanceof MappedFileAppender) {
+            initialSize = ((MappedFileAppender) stream).size();
+        } else if (stream instanceof ChannelFileAppender) {
+            initialSize = ((ChannelFileAppender) stream).size();
+        }
+        Segment segment = new Segment(file, initialSize, stream, named);
+        if (indexChunkEntries > 0) {
+            segment.index = openIndex(file, initialSize);
+        }
+        return segment;
+    }
+
+    /**
+     * Opens the index of a log file. A file that cannot be indexed is still written.
+     *
+     * @return The index writer, or null if it could not be opened.
+     */
+    private SegmentIndex.Writer openIndex(File file, long size) {
+        try {
+            return new SegmentIndex.Writer(SegmentIndex.indexFile(file), size, indexChunkEntries, indexChunkBytes);
+        } catch (IOException e) {
+            e.printStackTrace(); // Log the error to standard output
+            return null;
+        }
+    }
+
+    /**
+     * Makes the segment the one writers use. The size counter is seeded from its initial length;
+     * for compressed segments the counter holds the uncompressed bytes.
+     */
+    private void useSegment(Segment segment) {
+        currentSegment = segment;
+        currentSize = segment.initialSize;
+        currentStream = segment.stream;
+        lastRotationTime = System.currentTimeMillis();
+        nextRotationTime = rotationDeadline(lastRotationTime);
+    }
+
+    /**
+     * Returns when a file started at the given time has to be rotated: at the next calendar boundary
+     * in calendar mode, otherwise after the expire offset.
+     */
+    private long rotationDeadline(long startTime) {
+        if (calendarUnit != null) {
+            ZonedDateTime periodStart = Instant.ofEpochMilli(startTime).atZone(zone).truncatedTo(calendarUnit);
+            return periodStart.plus(1, calendarUnit).toInstant().toEpochMilli();
+        }
+        long deadline = startTime + expireOffsetMillis;
+        return deadline < startTime ? Long.MAX_VALUE : deadline; // Overflow
     }
 
     private void rotate() {
+        Segment next = nextSegment;
+        nextSegment = null;
         try {
-            currentStream.close();
-            archiveOrRemoveOldFile(currentFile);
-            currentFile = getNewLogFile();
-            currentStream = new FileOutputStream(currentFile, true);
-            lastRotationTime = System.currentTimeMillis();
-            checkAndRemoveOldFiles();
+            if (next == null) {
+                // The janitor has not caught up; it names this one too, so files are named in the order they were written
+                next = openSegment(preparedFile(), false);
+            }
         } catch (IOException e) {
             throw new RuntimeException("Failed to rotate log file.", e);
         }
+        if (next.index == null && indexChunkEntries > 0) {
+            next.index = openIndex(next.file, next.initialSize); // Opened before indexing was enabled
+        }
+        currentSegment.finalSize = currentSize;
+        finishedSegments.add(currentSegment);
+        useSegment(next);
+        if (!next.named) {
+            next.startTime = lastRotationTime;
+            unnamedSegments.add(next);
+        }
+        if (segmentHeader != null) {
+            byte[] header = segmentHeader.get();
+            try {
+                currentStream.write(header);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to rotate log file.", e);
+            }
+            currentSize += header.length;
+        }
+    }
+
+    /**
+     * Names a file opened ahead of time after the time writing to it started. Open files can be renamed
+     * on most systems; where they cannot, the file keeps its temporary name until the next start.
+     */
+    private void nameSegment(Segment segment) {
+        synchronized (segment) {
+            if (segment.named) {
+                return;
+            }
+            segment.named = true;
+            File file = getLogFile(segment.startTime);
+            if (!segment.file.renameTo(file)) {
+                System.err.println("Failed to name log file: " + segment.file.getName());
+                return;
+            }
+            if (segment.index != null && !SegmentIndex.indexFile(segment.file).renameTo(SegmentIndex.indexFile(file))) {
+                System.err.println("Failed to name log index: " + SegmentIndex.indexFile(segment.file).getName());
+            }
+            segment.file = file;
+        }
+    }
+
+    /**
+     * Closes and deletes a file opened ahead of time. Nothing is written to it before it is named.
+     */
+    private static void discardPrepared(Segment prepared) {
+        try {
+            prepared.stream.close();
+        } catch (IOException e) {
+            e.printStackTrace(); // Log the error to standard output
+        }
+        if (prepared.index != null) {
+            prepared.index.abandon();
+            deleteIndex(prepared.file);
+        }
+        prepared.file.delete();
+    }
+
+    private static void janitorRound() {
+        for (RotatingFileOutputStream stream : OPEN_STREAMS) {
+            try {
+                stream.tidy();
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // Log the error to standard output
+            }
+        }
+    }
+
+    /**
+     * Runs one janitor round for this stream: opens the next file if the last one was used,
+     * closes the finished files and applies the retention policy.
+     */
+    private void tidy() {
+        synchronized (janitorLock) {
+            if (closed) {
+                return;
+            }
+            boolean prepared;
+            synchronized (this) {
+                prepared = nextSegment != null;
+            }
+            if (!prepared) {
+                try {
+                    Segment segment = openSegment(preparedFile(), false); // Outside the lock, writers go on meanwhile
+                    synchronized (this) {
+                        nextSegment = segment; // Only the janitor sets it, so it is still empty
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace(); // Log the error to standard output
+                }
+            }
+            nameSegments();
+            closeFinishedSegments();
+            applyRetention();
+        }
+    }
+
+    private void nameSegments() {
+        for (Segment segment : takeSegments(unnamedSegments)) {
+            nameSegment(segment);
+        }
+    }
+
+    private void closeFinishedSegments() {
+        for (Segment segment : takeSegments(finishedSegments)) {
+            nameSegment(segment); // Finished before the janitor came round to it
+            try {
+                segment.stream.close();
+            } catch (IOException e) {
+                e.printStackTrace(); // Log the error to standard output
+            }
+            finishIndex(segment, segment.finalSize);
+            // Mapped and preallocated files can be longer than what was written, compressed ones shorter
+            long size = Math.min(segment.file.length(), segment.finalSize);
+            catalog.addLast(new CatalogEntry(segment.file, size, System.currentTimeMillis(), false));
+        }
+    }
+
+    /**
+     * Takes the segments writers handed over since the last janitor round.
+     */
+    private synchronized List<Segment> takeSegments(Deque<Segment> segments) {
+        List<Segment> taken = new ArrayList<>(segments);
+        segments.clear();
+        return taken;
+    }
+
+    private static void finishIndex(Segment segment, long finalSize) {
+        if (segment.index == null) {
+            return;
+        }
+        try {
+            segment.index.finish(finalSize);
+        } catch (IOException e) {
+            e.printStackTrace(); // Log the error to standard output
+        }
+        segment.index = null;
+    }
+
+    /**
+     * Sets whether expired files are gzip-compressed and kept with an "archived_" prefix.
+     * Archiving takes precedence over removal.
+     *
+     * @param archiveExpired true to archive expired files
+     */
+    public void setArchiveExpired(boolean archiveExpired) {
+        this.archiveExpired = archiveExpired;
+    }
+
+    /**
+     * Sets whether expired files are deleted. If neither archiving nor removal
+     * is enabled, expired files are left in place.
+     *
+     * @param removeExpired true to delete expired files
+     */
+    public void setRemoveExpired(boolean removeExpired) {
+        this.removeExpired = removeExpired;
+    }
+
+    /**
+     * Sets how long a file is kept after it was finished before it expires.
+     * Expired files are archived or removed like files beyond the file limit.
+     *
+     * @param maxAge the maximum age in the expire offset format (e.g. "30d"), or null for no limit
+     */
+    public void setMaxAge(String maxAge) {
+        this.maxAgeMillis = maxAge == null ? 0 : parseExpireOffset(maxAge);
+    }
+
+    /**
+     * Sets the budget for the total size of the log files and archives in the directory.
+     * When it is exceeded, the oldest files are deleted regardless of the archiving settings.
+     *
+     * @param maxTotalSize the budget in bytes, or 0 for no limit
+     */
+    public void setMaxTotalSize(long maxTotalSize) {
+        if (maxTotalSize < 0) {
+            throw new IllegalArgumentException("Max total size cannot be negative.");
+        }
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    /**
+     * Aligns time-based rotation to the calendar: files are rotated at every full hour or at midnight
+     * in the given zone, instead of after the expire offset. File names use the same zone, with its offset
+     * unless it is the system default.
+     *
+     * @param unit {@link ChronoUnit#HOURS} or {@link ChronoUnit#DAYS}, or null to rotate by the expire offset
+     * @param zone the time zone of the boundaries, or null for the system default
+     */
+    public synchronized void setCalendarRotation(ChronoUnit unit, ZoneId zone) {
+        if (unit != null && unit != ChronoUnit.HOURS && unit != ChronoUnit.DAYS) {
+            throw new IllegalArgumentException("Calendar rotation supports hours and days only.");
+        }
+        this.calendarUnit = unit;
+        this.zone = zone != null ? zone : ZoneId.systemDefault();
+        this.nextRotationTime = rotationDeadline(lastRotationTime);
+    }
+
+    /**
+     * Enables the sparse time index of the log files. The file being written is indexed from its
+     * current end on. A chunk of the index ends after the given number of entries or bytes.
+     *
+     * @param chunkEntries the maximum number of entries per chunk, or 0 to stop indexing new files
+     * @param chunkBytes   the maximum number of bytes per chunk
+     */
+    public synchronized void setIndexing(int chunkEntries, long chunkBytes) {
+        if (chunkEntries < 0 || chunkBytes <= 0) {
+            throw new IllegalArgumentException("Chunk limits must be greater than 0.");
+        }
+        this.indexChunkBytes = chunkBytes;
+        this.indexChunkEntries = chunkEntries;
+        if (chunkEntries > 0 && currentSegment.index == null) {
+            synchronized (currentSegment) { // So the janitor does not rename the file meanwhile
+                currentSegment.index = openIndex(currentSegment.file, currentSize);
+            }
+        }
+    }
+
+    /**
+     * Sets the supplier of bytes written at the start of every new file after a rotation.
+     * Stateful formats use it to make each rotated file readable on its own.
+     *
+     * @param segmentHeader the header supplier, or null for none
+     */
+    public synchronized void setSegmentHeader(Supplier<byte[]> segmentHeader) {
+        this.segmentHeader = segmentHeader;
+    }
+
+    /**
+     * Returns the log files that are not archived, oldest first, ending with the file being written.
+     * Files that were just rotated may be missing until the janitor has closed them.
+     *
+     * @return The log files in chronological order.
+     */
+    public List<File> getSegmentFiles() {
+        List<File> files = new ArrayList<>();
+        synchronized (janitorLock) {
+            for (CatalogEntry entry : catalog) {
+                if (!entry.archived) {
+                    files.add(entry.file);
+                }
+            }
+        }
+        synchronized (this) {
+            files.add(currentSegment.file);
+        }
+        return files;
+    }
+
+    /**
+     * Returns the time a log file was created, taken from its name, or its modification time
+     * if the name does not carry one. Archived files are recognized too. Names without an offset
+     * are in the system default zone.
+     *
+     * @param file a log file written by this class
+     * @return The creation time in milliseconds.
+     */
+    public static long getCreationTime(File file) {
+        String name = file.getName();
+        if (name.startsWith(ARCHIVE_PREFIX) && name.contains("log_")) {
+            name = name.substring(name.indexOf("log_"));
+        }
+        int start = "log_".length();
+        int end = start + "yyyy-MM-dd_HH-mm-ss".length();
+        if (name.startsWith("log_") && name.length() >= end) {
+            try {
+                LocalDateTime time = LocalDateTime.parse(name.substring(start, end), FILE_TIME_FORMAT);
+                ZoneId zone = ZoneId.systemDefault();
+                if (name.length() >= end + 5 && (name.charAt(end) == '+' || name.charAt(end) == '-')) {
+                    zone = ZoneOffset.of(name.substring(end, end + 5));
+                }
+                return time.atZone(zone).toInstant().toEpochMilli();
+            } catch (DateTimeException e) {
+                // Not named by this class
+            }
+        }
+        return file.lastModified();
+    }
+
+    /**
+     * Returns the newest log file if it was started within the current second, so a quick restart
+     * continues it, or a new file otherwise.
+     */
+    private File continuedOrNewLogFile() {
+        String timestamp = formatFileTime(System.currentTimeMillis());
+        CatalogEntry newest = catalog.peekLast();
+        String sameSecondPrefix = logFilePrefix + timestamp;
+        if (newest != null && !newest.archived && newest.file.getName().startsWith(sameSecondPrefix)) {
+            catalog.removeLast();
+            String name = newest.file.getName();
+            String counter = name.substring(sameSecondPrefix.length(), name.length() - ".log".length());
+            synchronized (namingLock) {
+                // Later files of this second must sort after the continued one
+                lastTimestamp = timestamp;
+                sameSecondCount = counter.isEmpty() ? 0 : Integer.parseInt(counter.substring(1));
+            }
+            return newest.file;
+        }
+        return getLogFile(System.currentTimeMillis());
+    }
+
+    /**
+     * Fills the catalog from the directory. This is the only directory listing; existing archives
+     * come first, ordered by modification time, then the log files in name order. Files opened
+     * ahead of time by a process that did not close its stream are deleted if they were never written,
+     * and named after their modification time otherwise.
+     */
+    private void loadCatalog() {
+        File[] prepared = logDirFile.listFiles((dir, name) -> name.startsWith(logFilePrefix) && name.endsWith(PREPARED_SUFFIX));
+        if (prepared != null) {
+            for (File file : prepared) {
+                if (!hasContent(file)) {
+                    delete(file);
+                } else if (!file.renameTo(getLogFile(file.lastModified()))) {
+                    System.err.println("Failed to name log file: " + file.getName());
+                }
+                deleteIndex(file); // Its index may not cover what was written last
+            }
+        }
+        File[] archives = logDirFile.listFiles((dir, name) -> name.startsWith(ARCHIVE_PREFIX));
+        File[] files = logDirFile.listFiles((dir, name) -> name.startsWith(logFilePrefix) && name.endsWith(".log"));
+        synchronized (janitorLock) {
+            if (archives != null) {
+                Arrays.sort(archives, Comparator.comparingLong(File::lastModified));
+                for (File archive : archives) {
+                    catalog.addLast(new CatalogEntry(archive, archive.length(), archive.lastModified(), true));
+                }
+            }
+            if (files != null) {
+                Arrays.sort(files, Comparator.comparing(File::getName));
+                for (File file : files) {
+                    catalog.addLast(new CatalogEntry(file, file.length(), file.lastModified(), false));
+                }
+            }
+        }
     }
 
-    private void archiveOrRemoveOldFile(File file) {
-        File archiveFile = new File(logDirectory, "archived_" + file.getName());
+    /**
+     * Expires the oldest files beyond the file limit or the maximum age, then deletes the oldest
+     * files until the total size fits the budget. Runs under the janitor lock. Files being written
+     * or opened ahead of time are never touched.
+     */
+    private void applyRetention() {
+        boolean archive = archiveExpired;
+        boolean remove = removeExpired;
+        long maxAge = maxAgeMillis;
+        long now = System.currentTimeMillis();
+
+        int liveCount = 1; // The file being written
+        for (CatalogEntry entry : catalog) {
+            if (!entry.archived) {
+                liveCount++;
+            }
+        }
+        if (archive || remove) {
+            for (Iterator<CatalogEntry> it = catalog.iterator(); it.hasNext(); ) {
+                CatalogEntry entry = it.next();
+                if (entry.archived) {
+                    continue;
+                }
+                boolean tooMany = liveCount > maxFiles;
+                boolean tooOld = maxAge > 0 && now - entry.finishedAt > maxAge;
+                if (!tooMany && !tooOld) {
+                    continue;
+                }
+                try {
+                    if (archive) {
+                        File archiveFile = archive(entry.file);
+                        entry.file = archiveFile;
+                        entry.size = archiveFile.length();
+                        entry.archived = true;
+                    } else {
+                        delete(entry.file);
+                        it.remove();
+                    }
+                    liveCount--;
+                } catch (IOException e) {
+                    e.printStackTrace(); // Log the error to standard output
+                }
+            }
+        }
+
+        long budget = maxTotalSize;
+        if (budget > 0) {
+            long totalSize = 0;
+            for (CatalogEntry entry : catalog) {
+                totalSize += entry.size;
+            }
+            File activeFile;
+            long activeSize;
+            Segment prepared;
+            synchronized (this) {
+                activeFile = currentSegment.file;
+                activeSize = currentSize;
+                prepared = nextSegment;
+            }
+            // Written bytes rather than the file length, which includes mapped windows and preallocation
+            totalSize += Math.min(activeSize, activeFile.length());
+            if (prepared != null) {
+                totalSize += prepared.initialSize;
+            }
+            while (totalSize > budget && !catalog.isEmpty()) {
+                CatalogEntry oldest = catalog.removeFirst();
+                delete(oldest.file);
+                totalSize -= oldest.size;
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            System.err.println("Failed to delete old log file: " + file.getName());
+        }
+        deleteIndex(file);
+    }
+
+    private static void deleteIndex(File file) {
+        File indexFile = SegmentIndex.indexFile(file);
+        if (indexFile.exists() && !indexFile.delete()) {
+            System.err.println("Failed to delete log index: " + indexFile.getName());
+        }
+    }
+
+    /**
+     * Archives a file into a gzip-compressed copy. The copy is written under a temporary name
+     * first, so an interrupted archival never leaves a partial archive behind.
+     *
+     * @return The archive file.
+     */
+    private File archive(File file) throws IOException {
+        File archiveFile = new File(logDirectory, ARCHIVE_PREFIX + file.getName() + ".gz");
         int count = 1;
         while (archiveFile.exists()) {
-            archiveFile = new File(logDirectory, "archived_" + count + "_" + file.getName());
+            archiveFile = new File(logDirectory, ARCHIVE_PREFIX + count + "_" + file.getName() + ".gz");
             count++;
         }
-        boolean renamed = file.renameTo(archiveFile);
-        if (renamed) {
-            System.out.println("Archived old log file: " + archiveFile.getName());
-        } else {
-            System.err.println("Failed to archive log file: " + file.getName());
+        if (isBlockCompressed(file)) {
+            // Already compressed, only rename
+            archiveFile = new File(logDirectory, archiveFile.getName().substring(0, archiveFile.getName().length() - 3));
+            if (!file.renameTo(archiveFile)) {
+                throw new IOException("Failed to archive log file: " + file.getName());
+            }
+            deleteIndex(file);
+            return archiveFile;
+        }
+        File tempFile = new File(logDirectory, archiveFile.getName() + ".tmp");
+        try (InputStream in = new FileInputStream(file);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(tempFile), 64 * 1024)) {
+            in.transferTo(out);
         }
+        if (!tempFile.renameTo(archiveFile)) {
+            tempFile.delete();
+            throw new IOException("Failed to archive log file: " + file.getName());
+        }
+        if (!file.delete()) {
+            System.err.println("Failed to delete archived log file: " + file.getName());
+        }
+        deleteIndex(file); // Archives are scanned as a whole
+        return archiveFile;
     }
 
-    private File getNewLogFile() {
-        String timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
-        String fileName = logFilePrefix + timestamp + ".log";
-        return new File(logDirectory, fileName);
+    /**
+     * Checks whether anything was written to a file; mapped and preallocated files start with zeros.
+     */
+    private static boolean hasContent(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            int b = in.read();
+            return b > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isBlockCompressed(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 16)) {
+            return BlockCompressedInputStream.isCompressed(in);
+        }
+    }
+
+    /**
+     * Names a new log file after the given time. Files created within the same second
+     * get a zero-padded counter, so names keep sorting chronologically. Called by writers
+     * and the janitor, hence the separate lock.
+     */
+    private File getLogFile(long time) {
+        String timestamp = formatFileTime(time);
+        synchronized (namingLock) {
+            sameSecondCount = timestamp.equals(lastTimestamp) ? sameSecondCount + 1 : 0;
+            lastTimestamp = timestamp;
+            File file = logFile(timestamp, sameSecondCount);
+            while (file.exists()) {
+                file = logFile(timestamp, ++sameSecondCount);
+            }
+            return file;
+        }
+    }
+
+    private String formatFileTime(long time) {
+        ZoneId zone = this.zone;
+        DateTimeFormatter format = zone.equals(ZoneId.systemDefault()) ? FILE_TIME_FORMAT : ZONED_FILE_TIME_FORMAT;
+        return format.format(Instant.ofEpochMilli(time).atZone(zone));
+    }
+
+    /**
+     * Names a file opened ahead of time. Log file listings skip it until it is renamed.
+     */
+    private File preparedFile() {
+        synchronized (namingLock) {
+            File file;
+            do {
+                file = new File(logDirectory, logFilePrefix + "prepared_" + preparedCount++ + PREPARED_SUFFIX);
+            } while (file.exists());
+            return file;
+        }
+    }
+
+    private File logFile(String timestamp, int count) {
+        // "." sorts before "_", so the file without a counter comes first
+        String suffix = count == 0 ? "" : String.format("_%03d", count);
+        return new File(logDirectory, logFilePrefix + timestamp + suffix + ".log");
     }
 
     private long parseExpireOffset(String expireOffset) {
@@ -129,34 +908,50 @@ public class RotatingFileOutputStream extends OutputStream {
         return expireMillis;
     }
 
-    private void checkAndRemoveOldFiles() {
-        File[] files = logDirFile.listFiles((dir, name) -> name.startsWith(logFilePrefix));
-        if (files != null && files.length > maxFiles) {
-            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
-            int filesToDelete = files.length - maxFiles;
-            for (int i = 0; i < filesToDelete; i++) {
-                boolean deleted = files[i].delete();
-                if (deleted) {
-                    System.out.println("Deleted old log file: " + files[i].getName());
-                } else {
-                    System.err.println("Failed to delete old log file: " + files[i].getName());
-                }
-            }
-        }
-    }
-
+    /**
+     * Closes the current file and does the janitor's remaining work for this stream.
+     * The file opened ahead of time is deleted, as nothing was written to it.
+     */
     @Override
     public void close() throws IOException {
-        if (currentStream != null) {
-            currentStream.close();
+        synchronized (this) {
+            if (currentStream != null) {
+                currentStream.close();
+                finishIndex(currentSegment, currentSize);
+            }
+        }
+        OPEN_STREAMS.remove(this);
+        synchronized (janitorLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Segment prepared;
+            synchronized (this) {
+                prepared = nextSegment;
+                nextSegment = null;
+            }
+            if (prepared != null) {
+                discardPrepared(prepared);
+            }
+            nameSegments();
+            closeFinishedSegments();
+            applyRetention();
         }
     }
 
     @Override
-    public void flush() throws IOException {
+    public synchronized void flush() throws IOException {
         if (currentStream != null) {
             currentStream.flush();
         }
+        if (currentSegment != null && currentSegment.index != null) {
+            try {
+                currentSegment.index.flush();
+            } catch (IOException e) {
+                dropIndex(e);
+            }
+        }
     }
 
     public static void main(String[] args) throws IOException {
@@ -0,0 +1,391 @@
+package org.theko.logger.out;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.theko.logger.LogOutputSettings;
+
+/**
+ * The sparse time index of a log file (segment), kept next to it as "&lt;segment&gt;.idx".
+ * <p>
+ * The segment is divided into chunks of a configured number of entries or bytes, whichever comes first.
+ * For every chunk the index holds its byte range and the earliest and latest entry time in it,
+ * so a reader can seek straight to the chunks that overlap a time range. Offsets are positions
+ * in the uncompressed log data, so they refer to the same bytes for every kind of segment.
+ * <p>
+ * The file starts with the "TKIX" magic and a version byte, followed by fixed-size big-endian records
+ * of start offset, end offset, minimum time and maximum time. A record with a start offset of -1 marks
+ * the segment as complete and holds its final length. Records are appended as chunks are finished,
+ * so after a crash the index only lacks the last chunks, and a torn record at the end is ignored.
+ * The part of the segment after the last chunk is reported as not indexed, and a lost index
+ * can be rebuilt with {@link #rebuild(File, LogOutputSettings, int, long)}.
+ */
+public class SegmentIndex {
+    public static final int MAGIC = 0x544B4958; // "TKIX"
+    public static final int VERSION = 1;
+    public static final String FILE_SUFFIX = ".idx";
+
+    public static final int DEFAULT_CHUNK_ENTRIES = 1000;
+    public static final long DEFAULT_CHUNK_BYTES = 64 * 1024;
+
+    static final int HEADER_SIZE = 5;
+    static final int RECORD_SIZE = 32;
+    private static final long COMPLETE_MARKER = -1;
+
+    /** A byte range of the segment and the time range of the entries starting in it. */
+    public static final class Chunk {
+        private final long start;
+        private final long end;
+        private final long minTime;
+        private final long maxTime;
+
+        Chunk(long start, long end, long minTime, long maxTime) {
+            this.start = start;
+            this.end = end;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getMinTime() {
+            return minTime;
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        /**
+         * Checks whether any entry of the chunk may lie in the time range.
+         *
+         * @param from The start of the range, inclusive.
+         * @param to   The end of the range, inclusive.
+         * @return true if the time ranges overlap.
+         */
+        public boolean overlaps(long from, long to) {
+            return minTime <= to && maxTime >= from;
+        }
+    }
+
+    private final List<Chunk> chunks;
+    private final boolean complete;
+    private final long end;
+
+    private SegmentIndex(List<Chunk> chunks, boolean complete, long end) {
+        this.chunks = Collections.unmodifiableList(chunks);
+        this.complete = complete;
+        this.end = end;
+    }
+
+    /**
+     * Returns the index file of a segment.
+     *
+     * @param segment The log file.
+     * @return The index file next to it.
+     */
+    public static File indexFile(File segment) {
+        return new File(segment.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Reads the index of a segment. Records after a torn or inconsistent record are ignored.
+     *
+     * @param segment The log file.
+     * @return The index, or null if the segment has no readable index.
+     * @throws IOException If the index exists but cannot be read.
+     */
+    public static SegmentIndex read(File segment) throws IOException {
+        File file = indexFile(segment);
+        if (!file.isFile()) {
+            return null;
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        boolean complete = false;
+        long end = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 16 * 1024)) {
+            byte[] header = in.readNBytes(HEADER_SIZE);
+            if (header.length < HEADER_SIZE || ByteBuffer.wrap(header).getInt() != MAGIC || header[4] != VERSION) {
+                return null;
+            }
+            byte[] record = new byte[RECORD_SIZE];
+            while (in.readNBytes(record, 0, RECORD_SIZE) == RECORD_SIZE) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                long start = buffer.getLong();
+                long chunkEnd = buffer.getLong();
+                if (start == COMPLETE_MARKER) {
+                    if (chunkEnd < end) {
+                        break;
+                    }
+                    complete = true;
+                    end = chunkEnd;
+                    continue;
+                }
+                if (start < end || chunkEnd < start) {
+                    break; // Not written by this format, the rest is not trusted
+                }
+                complete = false; // Continued after a restart
+                chunks.add(new Chunk(start, chunkEnd, buffer.getLong(), buffer.getLong()));
+                end = chunkEnd;
+            }
+        }
+        return new SegmentIndex(chunks, complete, end);
+    }
+
+    /**
+     * Rebuilds the index of a segment by scanning it, replacing the existing index.
+     * Only use it on segments that are no longer written to.
+     *
+     * @param segment       The log file.
+     * @param format        The output settings the segment was written with, for its encoder or patterns.
+     * @param chunkEntries  The maximum number of entries per chunk.
+     * @param chunkBytes    The maximum number of bytes per chunk.
+     * @return The new index.
+     * @throws IOException If the segment cannot be read or the index cannot be written.
+     */
+    public static SegmentIndex rebuild(File segment, LogOutputSettings format, int chunkEntries, long chunkBytes) throws IOException {
+        File indexFile = indexFile(segment);
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        tempFile.delete();
+        SegmentScanner scanner = new SegmentScanner(format);
+        scanner.setReferenceTime(RotatingFileOutputStream.getCreationTime(segment));
+        Writer writer = new Writer(tempFile, 0, chunkEntries, chunkBytes);
+        long length;
+        try (InputStream in = SegmentScanner.open(segment)) {
+            length = scanner.scan(in, 0, Long.MAX_VALUE, (offset, entry) -> writer.entry(offset, entry.getTime()));
+        } catch (IOException | RuntimeException e) {
+            writer.abandon();
+            tempFile.delete();
+            throw e;
+        }
+        writer.finish(length);
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return read(segment);
+    }
+
+    /**
+     * Returns the chunks in file order.
+     *
+     * @return The indexed chunks.
+     */
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Returns whether the segment was closed normally, so the index covers all of it.
+     *
+     * @return true if the index is complete.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the offset up to which the segment is indexed; for a complete index, the segment length.
+     *
+     * @return The end of the indexed part.
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Checks whether the segment may hold entries in the time range.
+     *
+     * @param from The start of the range, inclusive.
+     * @param to   The end of the range, inclusive.
+     * @return false only if the index is complete and no chunk overlaps the range.
+     */
+    public boolean mayContain(long from, long to) {
+        if (!complete) {
+            return true;
+        }
+        for (Chunk chunk : chunks) {
+            if (chunk.overlaps(from, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the byte ranges to read for a time range: the overlapping chunks, gaps between chunks
+     * and, unless the index is complete, the part after the last chunk. Adjacent ranges are merged.
+     *
+     * @param from The start of the range, inclusive.
+     * @param to   The end of the range, inclusive.
+     * @return Pairs of start and end offsets; an end of {@link Long#MAX_VALUE} means the end of the segment.
+     */
+    public List<long[]> rangesFor(long from, long to) {
+        List<long[]> ranges = new ArrayList<>();
+        long position = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.start > position) {
+                addRange(ranges, position, chunk.start); // Not indexed
+            }
+            if (chunk.overlaps(from, to)) {
+                addRange(ranges, chunk.start, chunk.end);
+            }
+            position = chunk.end;
+        }
+        if (!complete) {
+            addRange(ranges, position, Long.MAX_VALUE);
+        } else if (end > position) {
+            addRange(ranges, position, end);
+        }
+        return ranges;
+    }
+
+    private static void addRange(List<long[]> ranges, long start, long end) {
+        if (!ranges.isEmpty()) {
+            long[] last = ranges.get(ranges.size() - 1);
+            if (last[1] == start) {
+                last[1] = end;
+                return;
+            }
+        }
+        ranges.add(new long[] { start, end });
+    }
+
+    /**
+     * Appends chunk records to the index of a segment while it is written.
+     * Records are buffered and written out when the buffer fills up, on {@link #flush()} and on {@link #finish(long)}.
+     */
+    static final class Writer {
+        private final FileChannel channel;
+        private final int chunkEntries;
+        private final long chunkBytes;
+        private final ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * 128);
+        private int entries; // In the open chunk
+        private long chunkStart;
+        private long minTime;
+        private long maxTime;
+
+        /**
+         * Opens the index of a segment for appending. A torn record at the end is cut off. If the segment
+         * is empty, any index left behind for a file of the same name is discarded.
+         *
+         * @param file         The index file.
+         * @param initialSize  The segment length at which writing continues.
+         * @param chunkEntries The maximum number of entries per chunk.
+         * @param chunkBytes   The maximum number of bytes per chunk.
+         */
+        Writer(File file, long initialSize, int chunkEntries, long chunkBytes) throws IOException {
+            if (chunkEntries <= 0 || chunkBytes <= 0) {
+                throw new IllegalArgumentException("Chunk limits must be greater than 0.");
+            }
+            this.chunkEntries = chunkEntries;
+            this.chunkBytes = chunkBytes;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                long size = channel.size();
+                if (initialSize == 0 || size < HEADER_SIZE) {
+                    channel.truncate(0);
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    header.putInt(MAGIC).put((byte) VERSION).flip();
+                    while (header.hasRemaining()) {
+                        channel.write(header);
+                    }
+                } else {
+                    long whole = HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+                    channel.truncate(whole);
+                    channel.position(whole);
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Adds an entry. The open chunk is finished first if it is full.
+         *
+         * @param offset The offset of the entry in the segment.
+         * @param time   The entry time.
+         */
+        void entry(long offset, long time) throws IOException {
+            if (entries > 0 && (entries >= chunkEntries || offset - chunkStart >= chunkBytes)) {
+                finishChunk(offset);
+            }
+            if (entries == 0) {
+                chunkStart = offset;
+                minTime = time;
+                maxTime = time;
+            } else {
+                minTime = Math.min(minTime, time);
+                maxTime = Math.max(maxTime, time);
+            }
+            entries++;
+        }
+
+        /**
+         * Writes out the buffered records. The open chunk stays open.
+         */
+        void flush() throws IOException {
+            records.flip();
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            records.clear();
+        }
+
+        /**
+         * Finishes the open chunk, marks the index complete and closes it.
+         *
+         * @param end The final length of the segment.
+         */
+        void finish(long end) throws IOException {
+            try {
+                finishChunk(end);
+                addRecord(COMPLETE_MARKER, end, 0, 0);
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+
+        /**
+         * Closes the index without finishing it, after the segment could not be written.
+         */
+        void abandon() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // The index is incomplete either way
+            }
+        }
+
+        private void finishChunk(long end) throws IOException {
+            if (entries == 0) {
+                return;
+            }
+            addRecord(chunkStart, end, minTime, maxTime);
+            entries = 0;
+        }
+
+        private void addRecord(long start, long end, long min, long max) throws IOException {
+            if (records.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            records.putLong(start).putLong(end).putLong(min).putLong(max);
+        }
+    }
+}
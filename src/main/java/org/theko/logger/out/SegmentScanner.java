@@ -0,0 +1,324 @@
+package org.theko.logger.out;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogOutputSettings;
+import org.theko.logger.LogPatternParser;
+import org.theko.logger.encode.BinaryLogEncoder;
+import org.theko.logger.encode.BinaryLogReader;
+import org.theko.logger.encode.JsonLogEncoder;
+import org.theko.logger.encode.LogEncoder;
+
+/**
+ * Reads log entries back from a segment, in the format of the output that wrote it:
+ * pattern lines, line-delimited JSON or the binary format. Text formats can be read from
+ * any entry boundary; the binary format only from the start of the segment, as entries
+ * refer to the dictionary built up before them. Instances are not thread-safe.
+ */
+final class SegmentScanner {
+    interface EntryVisitor {
+        void visit(long offset, LogEntry entry) throws IOException;
+    }
+
+    private final LogEncoder encoder;
+    private final LogPatternParser parser; // For pattern lines only
+    private byte[] line = new byte[1024];
+    private int lineLength;
+
+    SegmentScanner(LogOutputSettings format) {
+        this.encoder = format.getEncoder();
+        if (encoder != null && !(encoder instanceof BinaryLogEncoder)
+                && !(encoder instanceof JsonLogEncoder && ((JsonLogEncoder) encoder).isLineDelimited())) {
+            throw new IllegalArgumentException("Unsupported log format: " + encoder.getClass().getName());
+        }
+        this.parser = encoder == null ? LogPatternParser.forOutput(format) : null;
+    }
+
+    /**
+     * Returns whether the segments can be read from an entry boundary other than the start.
+     */
+    boolean isSeekable() {
+        return !(encoder instanceof BinaryLogEncoder);
+    }
+
+    /**
+     * Sets the time that pattern lines with a date-less time are resolved against.
+     */
+    void setReferenceTime(long referenceTime) {
+        if (parser != null) {
+            parser.setReferenceTime(referenceTime);
+        }
+    }
+
+    /**
+     * Opens a segment for reading, decompressing block-compressed segments and gzip archives.
+     */
+    static InputStream open(File segment) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(segment), 64 * 1024);
+        try {
+            if (BlockCompressedInputStream.isCompressed(in)) {
+                return new BlockCompressedInputStream(in);
+            }
+            if (isGzip(in)) {
+                return new BufferedInputStream(new GZIPInputStream(in, 64 * 1024), 64 * 1024);
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a segment for reading at the given offset. Uncompressed segments are memory-mapped,
+     * compressed ones are decompressed up to the offset.
+     */
+    static InputStream openMapped(File segment, long position) throws IOException {
+        FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) > 0) {
+                // Read the first bytes to tell the format
+            }
+            magic.flip();
+            boolean compressed = (magic.remaining() == 4 && magic.getInt(0) == BlockCompressedOutputStream.FRAME_MAGIC)
+                    || (magic.remaining() >= 2 && (magic.get(0) & 0xFF) == 0x1F && (magic.get(1) & 0xFF) == 0x8B);
+            if (!compressed) {
+                return new MappedInputStream(channel, position, channel.size());
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        InputStream in = open(segment);
+        if (!skipFully(in, position)) {
+            in.close();
+            throw new EOFException("Segment is shorter than the offset: " + segment.getName());
+        }
+        return in;
+    }
+
+    private static boolean isGzip(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        return first == 0x1F && second == 0x8B;
+    }
+
+    /**
+     * Skips bytes, reading through streams that cannot skip.
+     *
+     * @return false if the data ended first.
+     */
+    static boolean skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    return false;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the entries in the given byte ranges of a segment, as returned by {@link SegmentIndex#rangesFor(long, long)}.
+     * Date-less times are resolved against the creation time of the segment, or the first time of the chunk
+     * a range starts at.
+     *
+     * @param in       The segment data.
+     * @param position The offset the stream is at, at most the start of the first range.
+     * @param segment  The segment file.
+     * @param index    The index of the segment, or null.
+     * @param ranges   The ranges in file order.
+     * @param visitor  Receives the entries.
+     */
+    void scanRanges(InputStream in, long position, File segment, SegmentIndex index, List<long[]> ranges, EntryVisitor visitor) throws IOException {
+        setReferenceTime(RotatingFileOutputStream.getCreationTime(segment));
+        for (long[] range : ranges) {
+            if (!skipFully(in, range[0] - position)) {
+                return; // The segment is shorter than its index
+            }
+            if (index != null) {
+                for (SegmentIndex.Chunk chunk : index.getChunks()) {
+                    if (chunk.getStart() == range[0]) {
+                        setReferenceTime(chunk.getMinTime());
+                        break;
+                    }
+                }
+            }
+            position = scan(in, range[0], range[1], visitor);
+            if (position < range[1]) {
+                return; // End of the data
+            }
+        }
+    }
+
+    /**
+     * Reads the entries that start between the two offsets.
+     *
+     * @param in       The segment data, positioned at the start offset.
+     * @param position The start offset, an entry boundary.
+     * @param end      The end offset, an entry boundary, or {@link Long#MAX_VALUE} to read to the end.
+     * @param visitor  Receives every entry with its offset.
+     * @return The offset where reading stopped: the end offset or the end of the data.
+     */
+    long scan(InputStream in, long position, long end, EntryVisitor visitor) throws IOException {
+        if (!isSeekable()) {
+            if (position != 0) {
+                throw new IllegalArgumentException("Binary segments can only be read from the start.");
+            }
+            return scanBinary(in, visitor);
+        }
+
+        long offset = position;
+        long pendingOffset = 0;
+        LogEntry pending = null;
+        StringBuilder continuation = null;
+        while (offset < end) {
+            int consumed = readLine(in);
+            if (consumed < 0) {
+                break;
+            }
+            if (lineLength > 0 && line[0] == 0) {
+                break; // Zero padding left by a mapped or preallocated segment
+            }
+            String text = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+            LogEntry entry = parseLine(text);
+            if (entry != null) {
+                if (pending != null) {
+                    visitor.visit(pendingOffset, withContinuation(pending, continuation));
+                }
+                pending = entry;
+                pendingOffset = offset;
+                continuation = null;
+            } else if (pending != null) {
+                // A further line of a multi-line message
+                if (continuation == null) {
+                    continuation = new StringBuilder();
+                }
+                continuation.append('\n').append(text);
+            }
+            offset += consumed;
+        }
+        if (pending != null) {
+            visitor.visit(pendingOffset, withContinuation(pending, continuation));
+        }
+        return offset;
+    }
+
+    private long scanBinary(InputStream in, EntryVisitor visitor) throws IOException {
+        CountingInputStream counter = new CountingInputStream(in);
+        BinaryLogReader reader = new BinaryLogReader(counter);
+        LogEntry entry;
+        // The reader reads ahead, so the offsets are approximate; they only have to grow
+        while ((entry = reader.read()) != null) {
+            visitor.visit(counter.count, entry);
+        }
+        return counter.count;
+    }
+
+    private LogEntry parseLine(String text) {
+        if (parser != null) {
+            return parser.parse(text);
+        }
+        return JsonLines.parse(text);
+    }
+
+    private static LogEntry withContinuation(LogEntry entry, StringBuilder continuation) {
+        if (continuation == null) {
+            return entry;
+        }
+        return new LogEntry(entry.getLevel(), entry.getTime(), entry.getCallerInfo(),
+                entry.getMessage() + continuation, entry.getTags(), entry.getContext());
+    }
+
+    /**
+     * Reads a line into the line buffer, without the line terminator.
+     *
+     * @return The number of bytes consumed, or -1 at the end of the data.
+     */
+    private int readLine(InputStream in) throws IOException {
+        lineLength = 0;
+        int consumed = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            consumed++;
+            if (b == '\n') {
+                break;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = (byte) b;
+        }
+        if (consumed == 0) {
+            return -1;
+        }
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        return consumed;
+    }
+
+    /** Kept apart so org.json is only loaded for JSON segments. */
+    private static final class JsonLines {
+        static LogEntry parse(String text) {
+            if (text.isEmpty()) {
+                return null;
+            }
+            try {
+                return LogEntry.fromJSONObject(new JSONObject(text));
+            } catch (JSONException | IllegalArgumentException e) {
+                return null; // Torn line
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
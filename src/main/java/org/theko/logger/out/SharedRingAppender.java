@@ -0,0 +1,221 @@
+package org.theko.logger.out;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes records into a memory-mapped ring file that another process reads with {@link SharedRingReader}.
+ * <p>
+ * Every write call becomes one record, so with an encoder such as
+ * {@link org.theko.logger.encode.RecordLogEncoder} every entry is one record. Writing costs a memory
+ * copy and never blocks or performs I/O: when the ring is full, the oldest records are overwritten,
+ * and readers that fell behind skip them and count them as lost. Placing the file in {@code /dev/shm}
+ * keeps it in memory.
+ * <p>
+ * The header holds the counters readers synchronize on: the write position, the position of the
+ * oldest intact record and the sequence number of the next record. Records that do not fit in half
+ * the ring are dropped and counted. The file is recreated when the appender is opened, and is left in
+ * place on close so readers can finish it.
+ */
+public class SharedRingAppender extends OutputStream implements BatchWritable {
+    public static final int MAGIC = 0x544B5352; // "TKSR"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+    // Header layout, the counters on their own cache line
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int CAPACITY_OFFSET = 8;
+    static final int EPOCH_OFFSET = 16; // Changes whenever the ring is recreated
+    static final int WRITE_OFFSET = 64;
+    static final int TAIL_OFFSET = 72;
+    static final int SEQUENCE_OFFSET = 80;
+    static final int DROPPED_OFFSET = 88;
+    static final int HEADER_SIZE = 128;
+
+    static final int RECORD_HEADER_SIZE = 16; // Length, reserved, sequence
+    static final int RECORD_ALIGNMENT = 8;
+    static final int WRAP = -1; // Length of the filler before the end of the ring
+
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final long capacity;
+    private MappedByteBuffer map;
+    private long writePosition;
+    private long tail;
+    private long sequence;
+    private long dropped;
+    private boolean closed;
+
+    /**
+     * Creates the ring file, replacing what it held.
+     *
+     * @param file     The ring file, usually in {@code /dev/shm}.
+     * @param capacity The size of the ring in bytes, rounded down to a multiple of 8.
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    public SharedRingAppender(File file, int capacity) throws IOException {
+        if (capacity < 4096) {
+            throw new IllegalArgumentException("Ring capacity must be at least 4 KB.");
+        }
+        this.capacity = capacity & -RECORD_ALIGNMENT;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Readers of the old ring see the epoch change before any of the new data
+            if (channel.size() >= HEADER_SIZE) {
+                MappedByteBuffer old = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                LONGS.setVolatile(old, EPOCH_OFFSET, 0L);
+                MappedFileAppender.unmap(old);
+            }
+            channel.truncate(HEADER_SIZE);
+            this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + this.capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        map.order(ByteOrder.nativeOrder());
+        map.putInt(VERSION_OFFSET, VERSION);
+        map.putLong(CAPACITY_OFFSET, this.capacity);
+        LONGS.setVolatile(map, WRITE_OFFSET, 0L);
+        LONGS.setVolatile(map, TAIL_OFFSET, 0L);
+        LONGS.setVolatile(map, SEQUENCE_OFFSET, 0L);
+        LONGS.setVolatile(map, DROPPED_OFFSET, 0L);
+        map.putInt(MAGIC_OFFSET, MAGIC);
+        LONGS.setVolatile(map, EPOCH_OFFSET, System.nanoTime() | 1);
+    }
+
+    /**
+     * Creates the ring file with the default capacity, replacing what it held.
+     *
+     * @param file The ring file, usually in {@code /dev/shm}.
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    public SharedRingAppender(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        append(ByteBuffer.wrap(b, off, len));
+        publish();
+    }
+
+    @Override
+    public synchronized void writeBatch(ByteBuffer[] entries) throws IOException {
+        ensureOpen();
+        for (ByteBuffer entry : entries) {
+            append(entry.duplicate());
+        }
+        publish(); // Readers see the whole batch at once
+    }
+
+    /**
+     * Returns the number of records dropped for not fitting in half the ring.
+     *
+     * @return The number of dropped records.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Records are visible to readers as soon as they are written, so there is nothing to flush.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Unmaps the ring. The file stays, so readers can consume the remaining records.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        MappedFileAppender.unmap(map);
+        map = null;
+        channel.close();
+    }
+
+    private void append(ByteBuffer record) {
+        int length = record.remaining();
+        long size = align(RECORD_HEADER_SIZE + length);
+        if (size > capacity / 2) {
+            LONGS.setRelease(map, DROPPED_OFFSET, ++dropped);
+            return;
+        }
+        long remaining = capacity - writePosition % capacity;
+        long wrap = size > remaining ? remaining : 0;
+        long end = writePosition + wrap + size;
+        if (end - tail > capacity) {
+            while (end - tail > capacity) {
+                tail = next(tail);
+            }
+            // Published before the bytes are overwritten, so readers can tell what they copied is stale
+            LONGS.setVolatile(map, TAIL_OFFSET, tail);
+            VarHandle.storeStoreFence();
+        }
+        if (wrap > 0) {
+            map.putInt(physical(writePosition), WRAP); // Fits, as records are aligned
+            writePosition += wrap;
+        }
+        int offset = physical(writePosition);
+        map.putInt(offset, length);
+        map.putInt(offset + 4, 0);
+        map.putLong(offset + 8, sequence++);
+        map.position(offset + RECORD_HEADER_SIZE);
+        map.put(record);
+        writePosition += size;
+    }
+
+    /**
+     * Makes the appended records visible to readers.
+     */
+    private void publish() {
+        LONGS.setRelease(map, SEQUENCE_OFFSET, sequence);
+        LONGS.setRelease(map, WRITE_OFFSET, writePosition);
+    }
+
+    /**
+     * Returns the position after the record at a position, including the wrap filler before it.
+     */
+    private long next(long position) {
+        int offset = physical(position);
+        if (map.getInt(offset) == WRAP) {
+            position += capacity - position % capacity;
+            offset = physical(position);
+        }
+        return position + align(RECORD_HEADER_SIZE + map.getInt(offset));
+    }
+
+    private int physical(long position) {
+        return (int) (HEADER_SIZE + position % capacity);
+    }
+
+    static long align(long size) {
+        return (size + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Ring is closed.");
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.theko.logger.out;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import org.theko.logger.LogEntry;
+import org.theko.logger.LoggerOutput;
+import org.theko.logger.encode.RecordLogEncoder;
+
+/**
+ * Reads the records of a {@link SharedRingAppender} ring from another process, without
+ * affecting the writer: the ring is mapped read-only and the reader keeps its own position.
+ * <p>
+ * Records the writer overwrote before they were read, including ones overwritten while being
+ * copied, are skipped and counted by {@link #getLost()}. When the writer recreates the ring,
+ * the reader starts over at its oldest record. Instances are not thread-safe.
+ * The class can also be run as a sidecar that renders the entries of a ring as text:
+ * <pre>
+ * java org.theko.logger.out.SharedRingReader [-p pattern] file
+ * </pre>
+ */
+public class SharedRingReader implements Closeable {
+    private final File file;
+    private final boolean fromOldest;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private long capacity;
+    private long epoch;
+    private long position;
+    private long sequence; // Expected sequence number of the record at the position
+    private long lost;
+    private byte[] record = new byte[512];
+
+    /**
+     * Opens a ring for reading.
+     *
+     * @param file       The ring file.
+     * @param fromOldest Whether to start at the oldest record in the ring rather than after the newest.
+     * @throws IOException If the file cannot be opened.
+     */
+    public SharedRingReader(File file, boolean fromOldest) throws IOException {
+        this.file = file;
+        this.fromOldest = fromOldest;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Hands the records written since the last call to the visitor.
+     *
+     * @param visitor Receives each record; the array is reused, only the first {@code length} bytes belong to it.
+     * @return The number of records read, 0 if there was none or the ring is not ready.
+     * @throws IOException If the ring cannot be mapped.
+     */
+    public int readRecords(RecordVisitor visitor) throws IOException {
+        if (!attach()) {
+            return 0;
+        }
+        long write = (long) SharedRingAppender.LONGS.getAcquire(map, SharedRingAppender.WRITE_OFFSET);
+        int count = 0;
+        while (position < write) {
+            long tail = (long) SharedRingAppender.LONGS.getAcquire(map, SharedRingAppender.TAIL_OFFSET);
+            if (position < tail) {
+                resync(tail);
+                continue;
+            }
+            int offset = physical(position);
+            int length = map.getInt(offset);
+            if (length == SharedRingAppender.WRAP) {
+                position += capacity - position % capacity;
+                continue;
+            }
+            long recordSequence = map.getLong(offset + 8);
+            if (length < 0 || SharedRingAppender.RECORD_HEADER_SIZE + (long) length > SharedRingAppender.HEADER_SIZE + capacity - offset) {
+                tail = (long) SharedRingAppender.LONGS.getAcquire(map, SharedRingAppender.TAIL_OFFSET);
+                if (tail <= position) {
+                    break; // Not overwritten, so the ring is damaged; try again on the next call
+                }
+                resync(tail); // Overwritten while reading the header
+                continue;
+            }
+            if (record.length < length) {
+                record = new byte[Math.max(length, record.length * 2)];
+            }
+            map.position(offset + SharedRingAppender.RECORD_HEADER_SIZE);
+            map.get(record, 0, length);
+            VarHandle.loadLoadFence();
+            if (position < (long) SharedRingAppender.LONGS.getAcquire(map, SharedRingAppender.TAIL_OFFSET)) {
+                continue; // Overwritten while copying, resynchronized on the next iteration
+            }
+            if (recordSequence > sequence) {
+                lost += recordSequence - sequence;
+            }
+            sequence = recordSequence + 1;
+            position += SharedRingAppender.align(SharedRingAppender.RECORD_HEADER_SIZE + length);
+            visitor.visit(record, length);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Hands the entries written since the last call to the consumer. The writer must use
+     * {@link RecordLogEncoder}; records that cannot be decoded are skipped.
+     *
+     * @param consumer Receives the entries in write order.
+     * @return The number of entries read.
+     * @throws IOException If the ring cannot be mapped.
+     */
+    public int read(Consumer<LogEntry> consumer) throws IOException {
+        int[] count = new int[1];
+        readRecords((data, length) -> {
+            try {
+                consumer.accept(RecordLogEncoder.decode(data, 0, length));
+                count[0]++;
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace(); // Log the error to standard output
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Returns the number of records overwritten before this reader got to them.
+     *
+     * @return The number of lost records.
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * Returns the number of records the writer dropped for being too large.
+     *
+     * @return The number of dropped records, or 0 if the ring is not ready.
+     */
+    public long getDropped() {
+        return map == null ? 0 : (long) SharedRingAppender.LONGS.getAcquire(map, SharedRingAppender.DROPPED_OFFSET);
+    }
+
+    @Override
+    public void close() throws IOException {
+        unmap();
+        channel.close();
+    }
+
+    /**
+     * Maps the ring, and maps it again if the writer recreated it.
+     *
+     * @return false if the ring is not initialized.
+     */
+    private boolean attach() throws IOException {
+        if (map != null && (long) SharedRingAppender.LONGS.getAcquire(map, SharedRingAppender.EPOCH_OFFSET) == epoch) {
+            return true;
+        }
+        unmap();
+        if (channel.size() < SharedRingAppender.HEADER_SIZE) {
+            return false;
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SharedRingAppender.HEADER_SIZE);
+        header.order(ByteOrder.nativeOrder());
+        long newEpoch = (long) SharedRingAppender.LONGS.getAcquire(header, SharedRingAppender.EPOCH_OFFSET);
+        long newCapacity = header.getLong(SharedRingAppender.CAPACITY_OFFSET);
+        boolean valid = newEpoch != 0 && header.getInt(SharedRingAppender.MAGIC_OFFSET) == SharedRingAppender.MAGIC
+                && header.getInt(SharedRingAppender.VERSION_OFFSET) == SharedRingAppender.VERSION
+                && newCapacity > 0 && channel.size() >= SharedRingAppender.HEADER_SIZE + newCapacity;
+        MappedFileAppender.unmap(header);
+        if (!valid) {
+            channel.close();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ); // The file may have been replaced
+            return false;
+        }
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, SharedRingAppender.HEADER_SIZE + newCapacity);
+        map.order(ByteOrder.nativeOrder());
+        capacity = newCapacity;
+        epoch = newEpoch;
+        if (fromOldest) {
+            sequence = 0; // Sequence numbers start over with the ring
+            resync((long) SharedRingAppender.LONGS.getAcquire(map, SharedRingAppender.TAIL_OFFSET));
+        } else {
+            sequence = (long) SharedRingAppender.LONGS.getAcquire(map, SharedRingAppender.SEQUENCE_OFFSET);
+            position = (long) SharedRingAppender.LONGS.getAcquire(map, SharedRingAppender.WRITE_OFFSET);
+        }
+        return true;
+    }
+
+    /**
+     * Moves to the oldest intact record, counting what was skipped when its sequence number is read.
+     */
+    private void resync(long tail) {
+        position = tail;
+        int offset = physical(position);
+        if (map.getInt(offset) == SharedRingAppender.WRAP) {
+            offset = physical(position + capacity - position % capacity);
+        }
+        long tailSequence = map.getLong(offset + 8);
+        if (position < (long) SharedRingAppender.LONGS.getAcquire(map, SharedRingAppender.WRITE_OFFSET) && tailSequence > sequence) {
+            lost += tailSequence - sequence;
+            sequence = tailSequence;
+        }
+    }
+
+    private void unmap() {
+        if (map != null) {
+            MappedFileAppender.unmap(map);
+            map = null;
+        }
+    }
+
+    private int physical(long position) {
+        return (int) (SharedRingAppender.HEADER_SIZE + position % capacity);
+    }
+
+    /**
+     * Receives the raw records of a ring.
+     */
+    public interface RecordVisitor {
+        void visit(byte[] data, int length);
+    }
+
+    /**
+     * Renders the entries of a ring to standard output until the process is stopped.
+     *
+     * @param args {@code [-p pattern] file}
+     * @throws IOException          If the ring cannot be read.
+     * @throws InterruptedException If interrupted while waiting for entries.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String pattern = LoggerOutput.DETAILED_PATTERN + "\n";
+        String path = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-p") && i + 1 < args.length) {
+                pattern = args[++i].replace("\\n", "\n");
+            } else {
+                path = args[i];
+            }
+        }
+        if (path == null) {
+            System.err.println("Usage: SharedRingReader [-p pattern] file");
+            System.exit(1);
+        }
+        String entryPattern = pattern;
+        OutputStream out = new BufferedOutputStream(System.out, 64 * 1024);
+        try (SharedRingReader reader = new SharedRingReader(new File(path), true)) {
+            long reportedLost = 0;
+            while (true) {
+                int count = reader.read(entry -> {
+                    try {
+                        out.write(LoggerOutput.format(entry, entryPattern).getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        e.printStackTrace(); // Log the error to standard output
+                    }
+                });
+                if (reader.getLost() != reportedLost) {
+                    System.err.println("Lost " + (reader.getLost() - reportedLost) + " entries.");
+                    reportedLost = reader.getLost();
+                }
+                if (count == 0) {
+                    out.flush();
+                    Thread.sleep(1); // Polling the counters keeps the writer free of any signalling
+                }
+            }
+        }
+    }
+}
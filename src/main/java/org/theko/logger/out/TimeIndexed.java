@@ -0,0 +1,25 @@
+package org.theko.logger.out;
+
+/**
+ * Implemented by output streams that keep a time index of the entries written to them.
+ * <p>
+ * The writer announces the time of the next entry, then writes it. Both calls must be made
+ * while holding the stream's monitor, so entries from other threads cannot come in between.
+ * {@link org.theko.logger.LoggerOutput} does this for every output that implements the interface.
+ */
+public interface TimeIndexed {
+    /**
+     * Announces the time of the entry written by the next write call.
+     *
+     * @param time The entry time in milliseconds.
+     */
+    void markEntry(long time);
+
+    /**
+     * Announces the times of the entries written by the next {@link BatchWritable#writeBatch} call,
+     * one time per buffer.
+     *
+     * @param times The entry times in milliseconds.
+     */
+    void markBatch(long[] times);
+}
@@ -0,0 +1,81 @@
+package featuretest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.theko.logger.DefaultLogger;
+import org.theko.logger.ExtendedLogger;
+import org.theko.logger.LogLevel;
+import org.theko.logger.LogOutputSettings;
+import org.theko.logger.LoggerOutput;
+import org.theko.logger.LoggerRegistry;
+import org.theko.logger.NamedLogger;
+import org.theko.logger.timer.Benchmark;
+
+/**
+ * Compares the cost of a debug call on a named logger with an empty method call: once while no
+ * logger logs DEBUG, so the guard folds the call away, and once while another logger does, so the
+ * logger's own level rejects it. Then enables DEBUG for the logger to check the guard is invalidated.
+ */
+public class DisabledLevelBenchmark {
+    private static final NamedLogger LOG = LoggerRegistry.getLogger(DisabledLevelBenchmark.class);
+    private static final int CALLS = 10_000_000;
+    private static final int RUNS = 20;
+    private static final double MAX_RATIO = 3.0;
+
+    private static int sink;
+
+    public static void main(String[] args) {
+        LogOutputSettings output = new LogOutputSettings("console", System.out, LogOutputSettings.getDefaultPatternsMap(), LogLevel.DEBUG);
+        DefaultLogger backend = new DefaultLogger(new LoggerOutput(output));
+        Map<String, LogLevel> levels = new HashMap<>();
+        levels.put(LoggerRegistry.ROOT, LogLevel.INFO);
+        Map<String, ExtendedLogger> backends = new HashMap<>();
+        backends.put(LoggerRegistry.ROOT, backend);
+        LoggerRegistry.getDefault().configure(levels, backends);
+
+        long empty = measure("Empty method", () -> {
+            for (int i = 0; i < CALLS; i++) {
+                empty(i);
+            }
+        });
+        long folded = measure("Debug, disabled everywhere", () -> {
+            for (int i = 0; i < CALLS; i++) {
+                LOG.debug("Disabled");
+                sink += i;
+            }
+        });
+        LoggerRegistry.getDefault().setLevel("some.other.Class", LogLevel.DEBUG);
+        measure("Debug, disabled for this logger", () -> {
+            for (int i = 0; i < CALLS; i++) {
+                LOG.debug("Disabled");
+                sink += i;
+            }
+        });
+
+        LoggerRegistry.getDefault().setLevel(DisabledLevelBenchmark.class.getName(), LogLevel.DEBUG);
+        boolean invalidated = LOG.debug("Enabled after the guard was invalidated") != null;
+
+        if (!invalidated) {
+            System.out.println("FAIL: the level change was missed");
+        } else if (folded > empty * MAX_RATIO + 1) {
+            System.out.println("FAIL: a call disabled everywhere costs more than " + MAX_RATIO + " empty calls");
+        } else {
+            System.out.println("OK");
+        }
+    }
+
+    private static void empty(int i) {
+        sink += i;
+    }
+
+    /**
+     * Returns the best per-call time in picoseconds, after the warm-up runs.
+     */
+    private static long measure(String name, Runnable loop) {
+        Benchmark.run(loop, RUNS); // Warm up and compile
+        long best = Benchmark.run(loop, RUNS).getMinTime() * 1000 / CALLS;
+        System.out.printf("%-32s %6d ps per call%n", name, best);
+        return best;
+    }
+}
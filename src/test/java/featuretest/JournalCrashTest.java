@@ -0,0 +1,122 @@
+package featuretest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.theko.logger.AsyncLogger;
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogLevel;
+import org.theko.logger.LogOutputSettings;
+import org.theko.logger.LoggerOutput;
+import org.theko.logger.out.BufferedLogOutputStream;
+import org.theko.logger.out.LogJournal;
+
+/**
+ * Logs through a journaled async logger into a buffered file in a child process, kills it once every
+ * entry is committed, and checks that each entry is either in the file or replayed from the journal.
+ */
+public class JournalCrashTest {
+    private static final int ENTRIES = 1_000;
+    private static final String PATTERN = "{message}\n";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("child")) {
+            runChild(new File(args[1]));
+            return;
+        }
+        File dir = Files.createTempDirectory("journal-crash").toFile();
+        File logFile = new File(dir, "app.log");
+        File journalFile = new File(dir, "async.journal");
+        List<Integer> found = new ArrayList<>();
+        int replayed = 0;
+
+        try {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    JournalCrashTest.class.getName(), "child", dir.getPath())
+                    .redirectErrorStream(true)
+                    .start();
+            boolean ready = false;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while (!ready && (line = reader.readLine()) != null) {
+                    ready = line.equals("READY");
+                    if (!ready) {
+                        System.out.println("child: " + line);
+                    }
+                }
+            }
+            child.destroyForcibly(); // Killed without shutdown hooks, like a crash
+            child.waitFor(10, TimeUnit.SECONDS);
+            if (!ready) {
+                System.out.println("FAIL: the child did not log its entries");
+                return;
+            }
+
+            for (String line : Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8)) {
+                found.add(Integer.parseInt(line.substring("Entry ".length())));
+            }
+            int written = found.size();
+            try (LogJournal journal = new LogJournal(journalFile)) {
+                replayed = journal.replay(entries -> {
+                    for (LogEntry entry : entries) {
+                        found.add(Integer.parseInt(entry.getMessage().substring("Entry ".length())));
+                    }
+                });
+            }
+            System.out.println("In the file: " + written + ", replayed: " + replayed + ", of " + ENTRIES);
+        } finally {
+            deleteDirectory(dir);
+        }
+
+        boolean[] seen = new boolean[ENTRIES];
+        boolean once = found.size() == ENTRIES;
+        for (int i = 0; once && i < found.size(); i++) {
+            int number = found.get(i);
+            once = number >= 0 && number < ENTRIES && !seen[number];
+            if (once) {
+                seen[number] = true;
+            }
+        }
+        System.out.println(once ? "OK" : "FAIL: entries lost or written twice across the crash");
+    }
+
+    private static void runChild(File dir) throws Exception {
+        // Buffered like a configured file output, with a flush interval the crash comes well before
+        BufferedLogOutputStream file = new BufferedLogOutputStream(new FileOutputStream(new File(dir, "app.log")),
+                BufferedLogOutputStream.DEFAULT_BUFFER_SIZE, 60_000);
+        LoggerOutput output = new LoggerOutput(new LogOutputSettings("file", file,
+                LogOutputSettings.getMapFromSinglePattern(PATTERN), LogLevel.DEBUG));
+        LogJournal journal = new LogJournal(new File(dir, "async.journal"));
+        AsyncLogger logger = new AsyncLogger(output);
+        logger.setJournal(journal);
+        for (int i = 0; i < ENTRIES; i++) {
+            logger.info("Entry " + i);
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (journal.getPending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        System.out.println(journal.getPending() == 0 ? "READY" : "Entries not committed: " + journal.getPending());
+        System.out.flush();
+        Thread.sleep(60_000); // Until killed
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
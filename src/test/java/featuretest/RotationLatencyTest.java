@@ -0,0 +1,118 @@
+package featuretest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.theko.logger.out.ChannelFileAppender;
+import org.theko.logger.out.RotatingFileOutputStream;
+
+/**
+ * Writes log lines at a steady rate into a small rotating file and compares the tail latency
+ * of writes at rotation boundaries with the tail latency of the writes in between.
+ * Pass "preallocate" to use preallocated channel segments instead of plain streams.
+ */
+public class RotationLatencyTest {
+    private static final int WARMUP_WRITES = 20_000; // Paced like the measured writes, so the janitor keeps up as under a steady load
+    private static final int WRITES = 100_000;
+    private static final long WRITE_INTERVAL_NANOS = 100_000; // 10,000 lines per second
+    private static final long MAX_SIZE = 128 * 1024; // A rotation about every 125 ms
+    private static final int NEAR_ROTATION_WRITES = 8; // The rotation write and the first writes to the new file
+    private static final double MAX_ROTATION_RATIO = 20.0;
+
+    public static void main(String[] args) throws IOException {
+        boolean preallocate = args.length > 0 && args[0].equals("preallocate");
+        File logDir = Files.createTempDirectory("rotation-latency").toFile();
+        RotatingFileOutputStream.SegmentFactory segmentFactory = preallocate
+                ? file -> new ChannelFileAppender(file, MAX_SIZE)
+                : RotatingFileOutputStream.PLAIN_SEGMENTS;
+
+        byte[] line = "[2024:01:01 12:00:00:000] [INFO] | [main] | [featuretest.RotationLatencyTest.main] -> Sustained load\n".getBytes();
+        long[] latencies = new long[WRITES];
+        boolean[] rotated = new boolean[WRITES];
+        boolean[] nearRotation = new boolean[WRITES];
+        int rotations = 0;
+        int nearCount = 0;
+
+        try (RotatingFileOutputStream stream = new RotatingFileOutputStream(logDir.getPath(), MAX_SIZE, "1d", 4, segmentFactory)) {
+            // The stream rotates before a write once the file has reached the maximum size
+            long size = 0;
+            long nextWrite = System.nanoTime();
+            for (int i = -WARMUP_WRITES; i < WRITES; i++) {
+                nextWrite += WRITE_INTERVAL_NANOS;
+                while (System.nanoTime() < nextWrite) {
+                    Thread.onSpinWait(); // Keep the writer on the CPU, sleeping would add wake-up latency
+                }
+                boolean rotates = size >= MAX_SIZE;
+                size = rotates ? line.length : size + line.length;
+                long start = System.nanoTime();
+                stream.write(line);
+                long latency = System.nanoTime() - start;
+                if (i >= 0) {
+                    latencies[i] = latency;
+                    rotated[i] = rotates;
+                    if (rotates) {
+                        rotations++;
+                    }
+                }
+            }
+            for (int i = 0, sinceRotation = NEAR_ROTATION_WRITES; i < WRITES; i++) {
+                sinceRotation = rotated[i] ? 0 : sinceRotation + 1;
+                nearRotation[i] = sinceRotation < NEAR_ROTATION_WRITES;
+                if (nearRotation[i]) {
+                    nearCount++;
+                }
+            }
+        } finally {
+            deleteDirectory(logDir);
+        }
+
+        long[] near = new long[nearCount];
+        long[] steady = new long[WRITES - nearCount];
+        for (int i = 0, n = 0, m = 0; i < WRITES; i++) {
+            if (nearRotation[i]) {
+                near[n++] = latencies[i];
+            } else {
+                steady[m++] = latencies[i];
+            }
+        }
+        Arrays.sort(near);
+        Arrays.sort(steady);
+
+        System.out.println("Segments: " + (preallocate ? "preallocated channel" : "plain stream"));
+        System.out.println("Writes: " + WRITES + ", rotations: " + rotations);
+        System.out.printf("Steady writes:        p50 %6d ns, p99 %6d ns, p99.9 %7d ns, max %8d ns%n",
+                percentile(steady, 50), percentile(steady, 99), percentile(steady, 99.9), steady[steady.length - 1]);
+        System.out.printf("Near rotation writes: p50 %6d ns, p99 %6d ns, p99.9 %7d ns, max %8d ns%n",
+                percentile(near, 50), percentile(near, 99), percentile(near, 99.9), near[near.length - 1]);
+        if (rotations == 0) {
+            System.out.println("FAIL: the stream did not rotate");
+            return;
+        }
+
+        // Rotation writes touch objects the writer has not used for a while and are the first write into
+        // a new file, so some slack is allowed (3x to 15x here), but not the cost of creating and opening
+        // a file on even one of them (200x to 300x here)
+        double ratio = (double) percentile(near, 99.9) / percentile(steady, 99.9);
+        System.out.printf("p99.9 near rotations: %.1fx the p99.9 of steady writes%n", ratio);
+        System.out.println(ratio <= MAX_ROTATION_RATIO
+                ? "OK: no spike at rotation boundaries."
+                : "FAIL: rotation writes stand out from the p99.9 of steady writes.");
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
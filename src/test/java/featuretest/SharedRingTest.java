@@ -0,0 +1,97 @@
+package featuretest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.theko.logger.CallerInfo;
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogLevel;
+import org.theko.logger.LogOutputSettings;
+import org.theko.logger.LoggerOutput;
+import org.theko.logger.encode.RecordLogEncoder;
+import org.theko.logger.out.SharedRingAppender;
+import org.theko.logger.out.SharedRingReader;
+
+/**
+ * Writes entries into a shared-memory ring while a second JVM reads them, and checks that the
+ * reader gets every entry in order or accounts for it as lost to an overrun.
+ */
+public class SharedRingTest {
+    private static final int ENTRIES = 200_000;
+    private static final int CAPACITY = 1024 * 1024;
+    private static final long TIMEOUT_MS = 60_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("read")) {
+            read(new File(args[1]));
+            return;
+        }
+        File shm = new File("/dev/shm");
+        File ring = Files.createTempFile(shm.isDirectory() ? shm.toPath() : null, "shared-ring", ".ring").toFile();
+        try (SharedRingAppender appender = new SharedRingAppender(ring, CAPACITY)) {
+            LogOutputSettings settings = new LogOutputSettings("ring", appender, LogOutputSettings.getDefaultPatternsMap(), LogLevel.DEBUG);
+            settings.setEncoder(RecordLogEncoder.INSTANCE);
+            LoggerOutput output = new LoggerOutput(settings);
+
+            String java = new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath();
+            Process reader = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    SharedRingTest.class.getName(), "read", ring.getPath())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            BufferedReader readerOut = new BufferedReader(new InputStreamReader(reader.getInputStream()));
+            if (!"READY".equals(readerOut.readLine())) {
+                System.out.println("FAIL: the reader did not start");
+                return;
+            }
+
+            CallerInfo caller = new CallerInfo(new Throwable().getStackTrace()[0], Thread.currentThread().getName());
+            long start = System.nanoTime();
+            for (int i = 0; i < ENTRIES; i++) {
+                output.processToOut(new LogEntry(LogLevel.INFO, System.currentTimeMillis(), caller, "Entry " + i, Arrays.asList("RING")));
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("Writer: %d entries in %d ms, %d ns per entry%n", ENTRIES, elapsed / 1_000_000, elapsed / ENTRIES);
+
+            String result = readerOut.readLine();
+            reader.waitFor();
+            System.out.println("Reader: " + result);
+            String[] fields = result == null ? new String[0] : result.split(" ");
+            boolean ok = fields.length == 3 && Long.parseLong(fields[0]) + Long.parseLong(fields[1]) == ENTRIES
+                    && Long.parseLong(fields[0]) > 0 && fields[2].equals("ordered");
+            System.out.println(ok ? "OK" : "FAIL: entries missing, duplicated or out of order");
+        } finally {
+            ring.delete();
+        }
+    }
+
+    /**
+     * Runs in the second JVM: reads until the last entry arrives and prints "received lost ordered|unordered".
+     */
+    private static void read(File ring) throws IOException, InterruptedException {
+        long[] state = { 0, -1, 1 }; // Received, last number, ordered
+        try (SharedRingReader reader = new SharedRingReader(ring, true)) {
+            System.out.println("READY");
+            System.out.flush();
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (state[1] < ENTRIES - 1 && System.currentTimeMillis() < deadline) {
+                int count = reader.read(entry -> {
+                    long number = Long.parseLong(entry.getMessage().substring("Entry ".length()));
+                    if (number <= state[1] || !entry.getTags().equals(Arrays.asList("RING"))
+                            || !entry.getCallerInfo().getMethodName().equals("main")) {
+                        state[2] = 0;
+                    }
+                    state[0]++;
+                    state[1] = number;
+                });
+                if (count == 0) {
+                    Thread.sleep(1);
+                }
+            }
+            System.out.println(state[0] + " " + reader.getLost() + " " + (state[2] == 1 ? "ordered" : "unordered"));
+        }
+    }
+}
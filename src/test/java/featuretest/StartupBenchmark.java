@@ -0,0 +1,133 @@
+package featuretest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.theko.logger.LoggerConfig;
+import org.theko.logger.LoggerRegistry;
+
+/**
+ * Measures the time from process start to the first logged entry, with a configuration of many file
+ * outputs of which only one receives the entry, once with outputs opened lazily and once eagerly.
+ * Checks that lazy outputs leave no files behind for outputs that got no entry.
+ */
+public class StartupBenchmark {
+    private static final int OUTPUTS = 20;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("child")) {
+            child(args[1]);
+            return;
+        }
+        File dir = Files.createTempDirectory("startup-benchmark").toFile();
+        try {
+            long[] lazy = measure(dir, true);
+            long[] eager = measure(dir, false);
+            System.out.printf("Lazy:  %d ms to the first entry (%d ms loading), %d files%n", lazy[0], lazy[1], lazy[2]);
+            System.out.printf("Eager: %d ms to the first entry (%d ms loading), %d files%n", eager[0], eager[1], eager[2]);
+            System.out.println(lazy[2] == 1 && eager[2] == OUTPUTS ? "OK" : "FAIL: unexpected number of log files");
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * Runs the child process several times and returns the median times and the number of files created.
+     */
+    private static long[] measure(File dir, boolean lazy) throws IOException, InterruptedException {
+        long[] total = new long[RUNS];
+        long[] load = new long[RUNS];
+        long files = 0;
+        for (int run = 0; run < RUNS; run++) {
+            File logDir = new File(dir, "logs");
+            File config = new File(dir, "config.json");
+            Files.writeString(config.toPath(), createConfig(logDir, lazy).toString());
+
+            String java = new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath();
+            Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    StartupBenchmark.class.getName(), "child", config.getPath())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            String result;
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+                result = out.readLine();
+            }
+            child.waitFor();
+            String[] fields = result == null ? new String[0] : result.split(" ");
+            if (fields.length != 2) {
+                throw new IllegalStateException("The child process failed: " + result);
+            }
+            total[run] = Long.parseLong(fields[0]);
+            load[run] = Long.parseLong(fields[1]);
+            files = countFiles(logDir);
+            deleteDirectory(logDir);
+        }
+        Arrays.sort(total);
+        Arrays.sort(load);
+        return new long[] { total[RUNS / 2], load[RUNS / 2], files };
+    }
+
+    /**
+     * Runs in the child process: loads the configuration, logs one entry and prints
+     * "total load", the milliseconds since the JVM started and those spent loading.
+     */
+    private static void child(String configPath) {
+        long loadStart = System.nanoTime();
+        LoggerConfig config = new LoggerConfig(configPath);
+        config.load();
+        long loadMillis = (System.nanoTime() - loadStart) / 1_000_000;
+        LoggerRegistry.getLogger(StartupBenchmark.class).info("First entry");
+        long total = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println(total + " " + loadMillis);
+        config.getLoggerOutput().close();
+    }
+
+    /**
+     * Creates a configuration where only the first of the file outputs accepts INFO entries.
+     */
+    private static JSONObject createConfig(File logDir, boolean lazy) {
+        JSONArray outputs = new JSONArray();
+        for (int i = 0; i < OUTPUTS; i++) {
+            JSONObject output = new JSONObject();
+            output.put("name", "out-" + i);
+            output.put("target", "file");
+            output.put("filePath", new File(logDir, "out-" + i).getPath() + File.separator);
+            output.put("level", i == 0 ? "INFO" : "ERROR");
+            output.put("lazy", lazy);
+            if (i % 2 == 1) {
+                output.put("rotation", new JSONObject().put("maxSizeMB", 1).put("maxFiles", 2));
+            }
+            outputs.put(output);
+        }
+        return new JSONObject().put("logger", new JSONObject()).put("outputs", outputs);
+    }
+
+    private static long countFiles(File dir) throws IOException {
+        if (!dir.exists()) {
+            return 0;
+        }
+        return Files.walk(dir.toPath()).filter(Files::isRegularFile).count();
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDirectory(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+}
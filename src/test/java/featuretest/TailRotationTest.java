@@ -0,0 +1,93 @@
+package featuretest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.theko.logger.LogEntry;
+import org.theko.logger.LogLevel;
+import org.theko.logger.LogOutputSettings;
+import org.theko.logger.LoggerOutput;
+import org.theko.logger.out.LogTailer;
+import org.theko.logger.out.RotatingFileOutputStream;
+
+/**
+ * Tails a small rotating log while it is written, restarting the tailer from its checkpoint
+ * halfway, and checks that every entry arrives exactly once and in order.
+ */
+public class TailRotationTest {
+    private static final int ENTRIES = 20_000;
+    private static final long MAX_SIZE = 64 * 1024; // About 14 rotations
+    private static final String PATTERN = "[{time yyyy:MM:dd HH:mm:ss:SSS}] [{level}] {message}\n";
+
+    public static void main(String[] args) throws Exception {
+        File logDir = Files.createTempDirectory("tail-rotation").toFile();
+        File checkpoint = new File(logDir.getParentFile(), logDir.getName() + ".checkpoint");
+        LogOutputSettings format = new LogOutputSettings("tail", null, LogOutputSettings.getMapFromSinglePattern(PATTERN));
+        List<Integer> received = new ArrayList<>();
+        int rotations = 0;
+
+        try (RotatingFileOutputStream stream = new RotatingFileOutputStream(logDir.getPath(), MAX_SIZE, "1d", 1000)) {
+            LoggerOutput output = new LoggerOutput(new LogOutputSettings("tail", stream, LogOutputSettings.getMapFromSinglePattern(PATTERN), LogLevel.DEBUG));
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < ENTRIES; i++) {
+                    output.processToOut(new LogEntry(LogLevel.INFO, System.currentTimeMillis(), "Entry " + i));
+                    if (i % 100 == 0) {
+                        try {
+                            stream.flush();
+                            Thread.sleep(1);
+                        } catch (IOException | InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }, "tail-test-writer");
+            writer.start();
+
+            // The first tailer stops halfway, the second resumes from the checkpoint
+            String lastFile = null;
+            for (int run = 0; run < 2; run++) {
+                try (LogTailer tailer = new LogTailer(logDir, format, checkpoint)) {
+                    tailer.setRotationGrace(100);
+                    long deadline = System.currentTimeMillis() + 30_000;
+                    int target = run == 0 ? ENTRIES / 2 : ENTRIES;
+                    while (received.size() < target && System.currentTimeMillis() < deadline) {
+                        for (LogEntry entry : tailer.poll(200, TimeUnit.MILLISECONDS)) {
+                            received.add(Integer.parseInt(entry.getMessage().substring("Entry ".length())));
+                        }
+                        tailer.commit();
+                        String file = tailer.getCurrentFile() == null ? null : tailer.getCurrentFile().getName();
+                        if (file != null && lastFile != null && !file.equals(lastFile)) {
+                            rotations++;
+                        }
+                        lastFile = file;
+                    }
+                }
+            }
+            writer.join();
+        } finally {
+            checkpoint.delete();
+            deleteDirectory(logDir);
+        }
+
+        System.out.println("Received: " + received.size() + " of " + ENTRIES + ", files followed: " + rotations);
+        boolean ordered = received.size() == ENTRIES;
+        for (int i = 0; ordered && i < ENTRIES; i++) {
+            ordered = received.get(i) == i;
+        }
+        System.out.println(ordered && rotations > 0 ? "OK" : "FAIL: entries missing, duplicated or out of order");
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}